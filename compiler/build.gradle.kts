@@ -50,6 +50,12 @@ tasks.compileJava {
     )
 }
 
+tasks.compileTestJava {
+    options.compilerArgs = options.compilerArgs + listOf(
+        "--add-exports", "java.desktop/com.sun.media.sound=ALL-UNNAMED"
+    )
+}
+
 tasks.processResources {
     filesMatching("mellowd-compiler-metadata.properties") {
         expand("projectVersion" to project.version)
@@ -57,8 +63,25 @@ tasks.processResources {
 }
 
 tasks.named<Test>("test") {
-    // Use JUnit Platform for unit tests.
-    useJUnitPlatform()
+    // Use JUnit Platform for unit tests. Benchmarks only print timings, they are run by the benchmark task.
+    useJUnitPlatform {
+        excludeTags("benchmark")
+    }
+    // The WAV renderer uses the soft synth directly
+    jvmArgs("--add-exports", "java.desktop/com.sun.media.sound=ALL-UNNAMED")
+}
+
+tasks.register<Test>("benchmark") {
+    description = "Runs the benchmarks tagged in the unit tests and prints their timings."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("benchmark")
+    }
+    jvmArgs("--add-exports", "java.desktop/com.sun.media.sound=ALL-UNNAMED")
+    testLogging.showStandardStreams = true
+    outputs.upToDateWhen { false }
 }
 
 val doccoMode = "linear" /* linear, parallel, classic */
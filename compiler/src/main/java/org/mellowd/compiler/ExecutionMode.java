@@ -0,0 +1,19 @@
+package org.mellowd.compiler;
+
+/**
+ * How {@link MellowD#execute()} runs the code in each block.
+ */
+public enum ExecutionMode {
+    /**
+     * Each block runs concurrently on the {@link MellowD}'s execution service and
+     * blocks wait on each other at sync points.
+     */
+    THREADED,
+
+    /**
+     * All blocks run on the calling thread. Each block runs until it reaches a sync
+     * point and the sync is resolved once every block in it has arrived. Blocks are
+     * resumed in state time order which makes the execution deterministic.
+     */
+    COOPERATIVE
+}
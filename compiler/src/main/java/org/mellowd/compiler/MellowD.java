@@ -1,6 +1,7 @@
 package org.mellowd.compiler;
 
 import org.mellowd.intermediate.executable.CodeExecutor;
+import org.mellowd.intermediate.executable.CooperativeExecutor;
 import org.mellowd.intermediate.functions.DefaultFunctions;
 import org.mellowd.intermediate.variables.AlreadyDefinedException;
 import org.mellowd.intermediate.variables.Memory;
@@ -9,13 +10,17 @@ import org.mellowd.io.CompositeSourceFinder;
 import org.mellowd.io.SourceFinder;
 import org.mellowd.midi.*;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.Queue;
+import java.util.*;
+import java.util.concurrent.*;
 
 public class MellowD implements ExecutionEnvironment {
+    // Blocks are executed concurrently as they may need to wait on each other at sync points.
+    // Unless told otherwise each block gets its own virtual thread which is cheap enough that
+    // a service compiling many songs at once doesn't need to worry about the thread count.
+    private static final ExecutorService DEFAULT_EXECUTION_SERVICE = Executors.newVirtualThreadPerTaskExecutor();
+
     private SourceFinder srcFinder;
+    private ModuleCache moduleCache;
 
     private final Memory globals;
     private final Map<String, MellowDBlock> blocks;
@@ -24,8 +29,22 @@ public class MellowD implements ExecutionEnvironment {
     private final Queue<Integer> channelsAvailable;
     private final Queue<Integer> drumChannelsAvailable;
 
+    private ExecutorService executionService;
+    private ExecutionMode executionMode;
+    private volatile List<Future<?>> runningExecutions;
+    private volatile Map<String, Long> blockExecutionTimes;
+
     public MellowD(SourceFinder finder, TimingEnvironment timingEnvironment) {
+        this(finder, timingEnvironment, DEFAULT_EXECUTION_SERVICE);
+    }
+
+    public MellowD(SourceFinder finder, TimingEnvironment timingEnvironment, ExecutorService executionService) {
         this.srcFinder = finder;
+        this.moduleCache = ModuleCache.getShared();
+        this.executionService = executionService;
+        this.executionMode = ExecutionMode.THREADED;
+        this.runningExecutions = Collections.emptyList();
+        this.blockExecutionTimes = Collections.emptyMap();
 
         this.globals = new SymbolTable();
         this.blocks = new HashMap<>();
@@ -98,35 +117,168 @@ public class MellowD implements ExecutionEnvironment {
         this.srcFinder = new CompositeSourceFinder(this.srcFinder, finder);
     }
 
+    /**
+     * @return the cache imported modules are parsed through, by default
+     * the one {@link ModuleCache#getShared() shared} by the whole JVM
+     */
+    public ModuleCache getModuleCache() {
+        return this.moduleCache;
+    }
+
+    public void setModuleCache(ModuleCache moduleCache) {
+        this.moduleCache = moduleCache;
+    }
+
     @Override
     public TimingEnvironment getTimingEnvironment() {
         return timingEnvironment;
     }
 
+    public ExecutorService getExecutionService() {
+        return executionService;
+    }
+
+    /**
+     * Set the service that runs the blocks when {@link #execute()} is called. The service
+     * may be shared between many {@code MellowD} instances.
+     * <p>
+     * Blocks that sync with each other wait for one another so the service must be able
+     * to run all of the blocks in a song at the same time. Virtual threads and a
+     * {@link ForkJoinPool} (which compensates for workers blocked at a sync) work for any
+     * number of blocks, a fixed size pool needs at least as many threads as blocks.
+     *
+     * @param executionService the service to run block executors on
+     */
+    public void setExecutionService(ExecutorService executionService) {
+        this.executionService = executionService;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Choose how blocks are run by {@link #execute()}. The {@link ExecutionMode#COOPERATIVE}
+     * mode runs every block on the calling thread and ignores the execution service.
+     *
+     * @param executionMode the mode to execute in
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * @return the wall time in nanoseconds each block took to execute during the
+     *         last call to {@link #execute()}, keyed by block name
+     */
+    public Map<String, Long> getBlockExecutionTimes() {
+        return this.blockExecutionTimes;
+    }
+
+    /**
+     * Cancel an execution that is currently running. The thread waiting in
+     * {@link #execute()} will receive a {@link CancellationException}.
+     */
+    public void cancelExecution() {
+        this.runningExecutions.forEach(f -> f.cancel(true));
+    }
+
     public synchronized MIDISequence execute() throws Exception {
+        return execute(OptionalLong.empty());
+    }
+
+    public synchronized MIDISequence execute(long timeout, TimeUnit unit) throws Exception {
+        return execute(OptionalLong.of(System.nanoTime() + unit.toNanos(timeout)));
+    }
+
+    // The `deadline` is a `System.nanoTime()`, or empty to run for as long as it takes.
+    // `nanoTime` has an arbitrary origin so a deadline is only compared by its difference
+    // from the current time, never by its sign.
+    private MIDISequence execute(OptionalLong deadline) throws Exception {
         MIDISequence sequence = new MIDISequence(this.timingEnvironment);
         this.blocks.values().forEach(block ->
                 block.getMIDIChannel().replaceTrack(sequence.getOrCreateTrack(block.getName())));
 
-        Queue<CodeExecutor> executors = new LinkedList<>();
-        for (MellowDBlock block : this.blocks.values()) {
-            CodeExecutor executor = block.createExecutor();
-            executors.add(executor);
-            executor.start();
+        if (this.executionMode == ExecutionMode.COOPERATIVE) {
+            executeCooperatively(deadline);
+        } else {
+            executeThreaded(deadline);
         }
 
+        return sequence;
+    }
+
+    private void executeCooperatively(OptionalLong deadline) throws Exception {
+        CooperativeExecutor executor = new CooperativeExecutor(deadline);
+        for (MellowDBlock block : this.blocks.values())
+            executor.add(block.getName(), block, block, Arrays.asList(block.getCode()));
+
+        // Run on this thread but through a future so that cancelExecution() works the same
+        FutureTask<Void> execution = new FutureTask<>(executor);
+        this.runningExecutions = Collections.singletonList(execution);
         try {
-            while (!executors.isEmpty()) {
-                CodeExecutor executor = executors.poll();
-                executor.join(3000L); //Wait for the thread to finish
+            execution.run();
+            execution.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        } finally {
+            // A cancellation interrupts this thread, don't leak that to the caller
+            if (execution.isCancelled()) Thread.interrupted();
+            this.runningExecutions = Collections.emptyList();
+            this.blockExecutionTimes = Collections.unmodifiableMap(executor.getExecutionTimes());
+            this.blocks.values().forEach(MellowDBlock::clearCode);
+        }
+    }
+
+    private void executeThreaded(OptionalLong deadline) throws Exception {
+        CompletionService<CodeExecutor> completion = new ExecutorCompletionService<>(this.executionService);
+        List<CodeExecutor> executors = new ArrayList<>(this.blocks.size());
+        List<Future<?>> futures = new ArrayList<>(this.blocks.size());
+
+        try {
+            for (MellowDBlock block : this.blocks.values()) {
+                CodeExecutor executor = block.createExecutor();
+                executors.add(executor);
+                futures.add(completion.submit(executor, executor));
+            }
+            this.runningExecutions = futures;
+
+            // Wait for the blocks in the order they finish so that the first failure
+            // cancels everything else rather than leaving blocks waiting on a sync forever
+            for (int i = 0; i < futures.size(); i++) {
+                Future<CodeExecutor> done;
+                if (deadline.isEmpty()) {
+                    done = completion.take();
+                } else {
+                    done = completion.poll(deadline.getAsLong() - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (done == null)
+                        throw new TimeoutException("Execution did not finish in time. " + (futures.size() - i) + " block(s) still running.");
+                }
+
+                CodeExecutor executor;
+                try {
+                    executor = done.get();
+                } catch (ExecutionException e) {
+                    // Errors are not caught by the executor itself
+                    if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                    throw e;
+                }
+
                 if (executor.errorWhileExecuting()) {
                     throw executor.getExecutionError();
                 }
             }
         } finally {
+            futures.forEach(f -> f.cancel(true));
+            this.runningExecutions = Collections.emptyList();
+
+            Map<String, Long> times = new LinkedHashMap<>();
+            executors.forEach(e -> times.put(e.getName(), e.getExecutionTime()));
+            this.blockExecutionTimes = Collections.unmodifiableMap(times);
+
             this.blocks.values().forEach(MellowDBlock::clearCode);
         }
-
-        return sequence;
     }
 }
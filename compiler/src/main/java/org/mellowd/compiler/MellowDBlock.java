@@ -110,7 +110,7 @@ public class MellowDBlock implements Output, ExecutionEnvironment {
 
     public void add(Phrase phrase) {
         if (durationSinceGradualStart != null) {
-            durationSinceGradualStart = new Beat(phrase.getDuration().getNumQuarters() + durationSinceGradualStart.getNumQuarters());
+            durationSinceGradualStart = durationSinceGradualStart.add(phrase.getDuration());
         }
         phrase.play(channel);
     }
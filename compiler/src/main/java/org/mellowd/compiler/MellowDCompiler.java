@@ -16,15 +16,20 @@ import org.mellowd.intermediate.functions.operations.Comparable;
 import org.mellowd.intermediate.functions.operations.Indexable;
 import org.mellowd.intermediate.functions.operations.Slurrable;
 import org.mellowd.intermediate.variables.AlreadyDefinedException;
+import org.mellowd.intermediate.variables.FrameLayout;
+import org.mellowd.intermediate.variables.Memory;
+import org.mellowd.intermediate.variables.NullMemory;
 import org.mellowd.intermediate.variables.UndefinedReferenceException;
 import org.mellowd.midi.GeneralMidiInstrument;
+import org.mellowd.midi.GeneralMidiPercussion;
 import org.mellowd.midi.Knob;
 import org.mellowd.midi.MIDIControl;
 import org.mellowd.midi.Pedal;
+import org.mellowd.midi.TimingEnvironment;
 import org.mellowd.primitives.*;
 
-import java.io.InputStream;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class MellowDCompiler extends MellowDParserBaseVisitor {
@@ -62,6 +67,46 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
     protected final Class<?>[] chordParamTypes;
     protected final Class<Slurrable> rhythmParamType;
 
+    // The layouts of the lexical frames around the code being compiled, innermost last. A
+    // null entry marks a boundary like a function body that runs with its own memory, the
+    // frames outside of it cannot be reached from the code inside.
+    private final List<FrameLayout> lexicalFrames = new ArrayList<>();
+
+    // The loops around the code being compiled, innermost last, with the same boundaries
+    // as the lexical frames. Pure expressions in a loop body are hoisted once the whole
+    // body is compiled and it is known which names the body assigns.
+    private static final class LoopScope {
+        private final Set<QualifiedName> assigned = new HashSet<>();
+        private final List<LoopInvariant<?>> invariants = new ArrayList<>();
+    }
+
+    private final List<LoopScope> loops = new ArrayList<>();
+
+    // The names declared with `def`, once defined they cannot be assigned again
+    private final Set<QualifiedName> constants = new HashSet<>();
+
+    // Constant expressions are evaluated while compiling in an environment without any
+    // memory, they don't need one by definition
+    private final ExecutionEnvironment foldingEnvironment = new ExecutionEnvironment() {
+        @Override
+        public boolean isPercussion() {
+            return false;
+        }
+
+        @Override
+        public Memory getMemory() {
+            return NullMemory.getInstance();
+        }
+
+        @Override
+        public TimingEnvironment getTimingEnvironment() {
+            return mellowD.getTimingEnvironment();
+        }
+    };
+
+    private int foldedExpressions;
+    private int hoistedExpressions;
+
     public MellowDCompiler(MellowD mellowD) {
         this.mellowD = mellowD;
 
@@ -100,14 +145,134 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
 
     private <T> Expression<T> lookupName(MellowDParser.NameContext ctx, Class<T> desiredType) {
         QualifiedName identifier = visitName(ctx);
-        return new RuntimeTypeCheck<>(desiredType, new ReferenceResolution(identifier), new SourceLink(ctx));
+        return new RuntimeTypeCheck<>(desiredType, resolveReference(identifier), new SourceLink(ctx));
     }
 
     private Expression<Object> lookupName(MellowDParser.NameContext ctx) {
         QualifiedName identifier = visitName(ctx);
+        return resolveReference(identifier);
+    }
+
+    // Resolve the `identifier` to a slot in an enclosing frame if it is certain to be there
+    // when the code runs. Qualified names, names outside of any frame and names that may
+    // be a drum sound in percussion code are looked up by name at runtime.
+    protected Expression<Object> resolveReference(QualifiedName identifier) {
+        if (identifier.isUnqualified() && GeneralMidiPercussion.lookup(identifier.getName()) == null) {
+            for (int i = this.lexicalFrames.size() - 1, depth = 0; i >= 0; i--, depth++) {
+                FrameLayout layout = this.lexicalFrames.get(i);
+                if (layout == null) break;
+
+                int slot = layout.indexOf(identifier.getName());
+                if (slot >= 0)
+                    return new SlotReference(identifier, layout, depth, slot);
+            }
+        }
+
         return new ReferenceResolution(identifier);
     }
 
+    // Compile code that runs inside a frame with the `layout`, or with a memory of its own
+    // if the `layout` is null
+    protected <T> T inLexicalFrame(FrameLayout layout, Supplier<T> compile) {
+        this.lexicalFrames.add(layout);
+        try {
+            return compile.get();
+        } finally {
+            this.lexicalFrames.remove(this.lexicalFrames.size() - 1);
+        }
+    }
+
+    // Compile the body of a function that runs in a call frame with the `layout`. The
+    // frame is in front of the closure's captured memory, not the frames around the
+    // declaration.
+    protected <T> T inCallFrame(FrameLayout layout, Supplier<T> compile) {
+        this.loops.add(null);
+        try {
+            return inLexicalFrame(null, () -> inLexicalFrame(layout, compile));
+        } finally {
+            this.loops.remove(this.loops.size() - 1);
+        }
+    }
+
+    // Compile the body of a loop. After the body is compiled the invariants found in it
+    // are hoisted if the body doesn't assign any of their free variables.
+    protected <T> T inLoop(Supplier<T> compile) {
+        LoopScope loop = new LoopScope();
+        this.loops.add(loop);
+        try {
+            T body = inLexicalFrame(RepeatedStatementList.FRAME_LAYOUT, compile);
+
+            for (LoopInvariant<?> invariant : loop.invariants) {
+                if (Collections.disjoint(invariant.getFreeVariables(), loop.assigned)) {
+                    invariant.hoist();
+                    this.hoistedExpressions++;
+                }
+            }
+
+            return body;
+        } finally {
+            this.loops.remove(this.loops.size() - 1);
+        }
+    }
+
+    // An assignment in a loop body changes the variable for the loops around it as well
+    private void recordAssignment(QualifiedName name) {
+        for (int i = this.loops.size() - 1; i >= 0; i--) {
+            LoopScope loop = this.loops.get(i);
+            if (loop == null) break;
+            loop.assigned.add(name);
+        }
+    }
+
+    // Evaluate a constant `expr` now instead of every time it runs. If evaluating it
+    // fails it is left to fail again when it is run, where the error can be reported.
+    protected <T> Expression<T> fold(Expression<T> expr) {
+        if (expr instanceof Constant || !expr.isConstant()) return expr;
+
+        T value;
+        try {
+            value = expr.evaluate(this.foldingEnvironment);
+        } catch (RuntimeException e) {
+            return expr;
+        }
+
+        this.foldedExpressions++;
+        return new Constant<>(value);
+    }
+
+    // A variable is stable while a loop runs if no other block can change it: a slot in a
+    // frame of the running code or a `def` constant. Any other variable lives in a symbol
+    // table that a block running on another thread may assign, through the `globals`
+    // namespace or a qualified `block.name`.
+    private boolean isStable(QualifiedName name) {
+        return this.constants.contains(name) || resolveReference(name) instanceof SlotReference;
+    }
+
+    // Fold `expr` if it is constant or mark it as an invariant of the innermost loop if it
+    // is pure, doesn't depend on the loop counter and only reads stable variables
+    protected <T> Expression<T> hoist(Expression<T> expr) {
+        expr = fold(expr);
+        if (expr.isConstant() || !expr.isPure() || this.loops.isEmpty()) return expr;
+
+        LoopScope loop = this.loops.get(this.loops.size() - 1);
+        Set<QualifiedName> freeVariables = expr.getFreeVariables();
+        if (loop == null || freeVariables.contains(RepeatedStatementList.IMPLICIT_LOOP_COUNTER_ID)
+                || !freeVariables.stream().allMatch(this::isStable))
+            return expr;
+
+        LoopInvariant<T> invariant = new LoopInvariant<>(expr, RepeatedStatementList.FRAME_LAYOUT);
+        loop.invariants.add(invariant);
+        return invariant;
+    }
+
+    public int getFoldedExpressions() {
+        return this.foldedExpressions;
+    }
+
+    public int getHoistedExpressions() {
+        return this.hoistedExpressions;
+    }
+
     private Expression<?> compileIndexedNameOrChordLiteral(MellowDParser.NameContext name, TerminalNode chordId, MellowDParser.IndexContext index) {
         Expression<?> valueExpr;
         QualifiedName refName;
@@ -167,7 +332,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
 
         for (Pair<Expression<Integer>, Expression<Integer>> range : visitIndex(indexContext)) {
             Expression<Indexable<?, ?>> indexable = new RuntimeIndexingSupportCheck(expr, link);
-            expr = new IndexExpression(indexable, range.a, range.b);
+            expr = fold(new IndexExpression(indexable, range.a, range.b));
         }
 
         return expr;
@@ -229,7 +394,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
             result.addArgument(paramExpr);
         });
 
-        return result;
+        return fold(result);
     }
 
     @Override
@@ -243,7 +408,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
             return visitChord(chord);
 
         Expression<?> valueExpr = compileIndexedNameOrChordLiteral(ctx.name(), ctx.CHORD_IDENTIFIER(), ctx.index());
-        return new RuntimeUnionTypeCheck(valueExpr, this.chordParamTypes, new SourceLink(ctx));
+        return fold(new RuntimeUnionTypeCheck(valueExpr, this.chordParamTypes, new SourceLink(ctx)));
     }
 
     @Override
@@ -258,7 +423,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
             Expression<?> paramExpr = visitMelodyParam(paramCtx);
             result.addArgument(paramExpr);
         });
-        return result;
+        return fold(result);
     }
 
     @Override
@@ -275,7 +440,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
 
         MellowDParser.NoteContext note = ctx.note();
         if (note != null)
-            return new Articulate(new Constant<>(visitNote(note)), articulationExpr);
+            return fold(new Articulate(new Constant<>(visitNote(note)), articulationExpr));
 
         Expression<?> paramExpr;
         MellowDParser.ChordContext chord = ctx.chord();
@@ -289,10 +454,10 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
         if (articulation != null) {
             Expression<Articulatable> resolvedArticulatable = new RuntimeTypeCheck<>(Articulatable.class, paramExpr, link);
             resolvedArticulatable = new RuntimeNullCheck<>(QualifiedName.ofUnqualified(getText(ctx)), resolvedArticulatable, link);
-            return new Articulate(resolvedArticulatable, articulationExpr);
+            return fold(new Articulate(resolvedArticulatable, articulationExpr));
         }
 
-        return new RuntimeUnionTypeCheck(paramExpr, this.melodyParamTypes, link);
+        return fold(new RuntimeUnionTypeCheck(paramExpr, this.melodyParamTypes, link));
     }
 
     @Override
@@ -306,7 +471,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
             Expression<?> paramExpr = visitRhythmParam(paramCtx);
             result.addArgument(paramExpr);
         });
-        return result;
+        return fold(result);
     }
 
     @Override
@@ -321,12 +486,12 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
 
     @Override
     public Expression<Rhythm> visitSlurredRhythm(MellowDParser.SlurredRhythmContext ctx) {
-        return new RuntimeSlur<>(buildRhythm(ctx.rhythmParam()));
+        return fold(new RuntimeSlur<>(buildRhythm(ctx.rhythmParam())));
     }
 
     @Override
     public Expression<Rhythm> visitTuplet(MellowDParser.TupletContext ctx) {
-        Rhythm rhythm = new Rhythm();
+        List<Beat> beats = new ArrayList<>();
         int tupletNumerator = Integer.parseInt(getText(ctx.num));
         int tupletDenominator = ctx.div != null ? Integer.parseInt(getText(ctx.div)) : tupletNumerator - 1;
 
@@ -340,16 +505,16 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
             Beat comp = visitBeat(ctx.singleDivision);
             comp = comp.tuplet(tupletNumerator, tupletDenominator);
             for (int i = 0; i < tupletNumerator; i++)
-                rhythm.append(comp);
+                beats.add(comp);
         } else {
             ctx.complexDivision.forEach(complexCtx -> {
                 Beat comp = visitBeat(complexCtx);
                 comp = comp.tuplet(tupletNumerator, tupletDenominator);
-                rhythm.append(comp);
+                beats.add(comp);
             });
         }
 
-        return new Constant<>(rhythm);
+        return new Constant<>(new Rhythm(beats));
     }
 
     @Override
@@ -521,15 +686,23 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
 
 
     public Statement visitAssignStmt(MellowDParser.AssignStmtContext ctx, boolean isField) {
-        boolean percussionToggle = ctx.STAR() != null;
-        boolean isConstant = ctx.KEYWORD_DEF() != null;
-
         if (ctx.id == null)
             ctx.id = visitName(ctx.name());
 
-        Expression<?> valueExpr = visitExpr(ctx.expr());
+        return visitAssignStmt(ctx, ctx.id, isField);
+    }
 
-        return new AssignmentStatement(ctx.id, valueExpr,
+    //Imported parse trees are shared so the name to assign must be given rather than stored in the `ctx`
+    protected Statement visitAssignStmt(MellowDParser.AssignStmtContext ctx, QualifiedName id, boolean isField) {
+        boolean percussionToggle = ctx.STAR() != null;
+        boolean isConstant = ctx.KEYWORD_DEF() != null;
+
+        Expression<?> valueExpr = hoist(visitExpr(ctx.expr()));
+        recordAssignment(id);
+        if (isConstant)
+            this.constants.add(id);
+
+        return new AssignmentStatement(id, valueExpr,
                 isConstant, isField, percussionToggle);
     }
 
@@ -572,7 +745,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
             rhs = new RuntimeNullCheck<>(visitName(ctx.rhythmRef), rhs, link);
         }
 
-        return new PlayPhraseStatement(new PhraseConstruction(lhs, rhs));
+        return new PlayPhraseStatement(hoist(new PhraseConstruction(lhs, rhs)));
     }
 
     @Override
@@ -704,7 +877,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
             else
                 repetitions = lookupName(identifier, Number.class);
 
-            return visitStmtList(ctx.stmtList(), new RepeatedStatementList(repetitions));
+            return inLoop(() -> visitStmtList(ctx.stmtList(), new RepeatedStatementList(repetitions)));
         }
 
         MellowDParser.DynamicChangeStmtContext dynamicChangeStmt = ctx.dynamicChangeStmt();
@@ -750,17 +923,8 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
         MellowDCompiler importCompiler = new MellowDSelectiveCompiler(this.mellowD, path, as, functions);
 
         try {
-            InputStream referencedSrc = this.mellowD.getSrcFinder().resolve(path.getPath());
-
-            CharStream inStream = CharStreams.fromStream(referencedSrc);
-            MellowDLexer lexer = new MellowDLexer(inStream);
-
-            //The parser takes the tokens from the lexer as well as the timing environment constructed
-            //from the input arguments and a track manager.
-            TokenStream tokens = new CommonTokenStream(lexer);
-            MellowDParser parser = new MellowDParser(tokens);
-
-            MellowDParser.SongContext parseResult = parser.song();
+            MellowDParser.SongContext parseResult = this.mellowD.getModuleCache()
+                    .load(this.mellowD.getSrcFinder(), path.getPath());
 
             importCompiler.visitSong(parseResult);
         } catch (Exception e) {
@@ -969,7 +1133,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
 
         boolean percussion = ctx.KEYWORD_PERCUSSION() != null;
 
-        Statement body = visitStmtList(ctx.stmtList());
+        Statement body = inCallFrame(params.getFrameLayout(), () -> visitStmtList(ctx.stmtList()));
 
         return new Abstraction(params, percussion, body);
     }
@@ -985,7 +1149,7 @@ public class MellowDCompiler extends MellowDParserBaseVisitor {
 
         boolean percussion = ctx.KEYWORD_PERCUSSION() != null;
 
-        Statement body = visitStmtList(ctx.stmtList());
+        Statement body = inCallFrame(params.getFrameLayout(), () -> visitStmtList(ctx.stmtList()));
 
         return new Abstraction(params, percussion, body);
     }
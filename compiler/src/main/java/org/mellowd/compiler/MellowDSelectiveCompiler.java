@@ -33,12 +33,11 @@ public class MellowDSelectiveCompiler extends MellowDCompiler {
         if (assignStmt != null) {
             QualifiedName name = super.visitName(assignStmt.name());
             if (this.includedNames == null || this.includedNames.contains(name)) {
-                if (this.as != null)
-                    assignStmt.id = this.as.qualify(name);
-                else
-                    assignStmt.id = this.from.qualify(name);
+                QualifiedName id = this.as != null
+                        ? this.as.qualify(name)
+                        : this.from.qualify(name);
 
-                visitAssignStmt(assignStmt, true).execute(super.mellowD, NullOutput.getInstance());
+                visitAssignStmt(assignStmt, id, true).execute(super.mellowD, NullOutput.getInstance());
             }
 
             return null;
@@ -0,0 +1,139 @@
+package org.mellowd.compiler;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.mellowd.io.SourceFinder;
+import org.mellowd.io.SourceResolutionException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of parsed modules that are imported by MellowD sources. Lexing and parsing
+ * a module is by far the most expensive part of an import so the parse trees are kept
+ * and shared by every {@link MellowD} that uses the cache. The trees are not modified
+ * by the compiler which makes sharing them between concurrent compilations safe.
+ * <p>
+ * Entries are keyed by where the {@link SourceFinder} found the module, like the absolute
+ * path of the file, so songs with different source directories that import the same
+ * path don't share or evict each other's entry. They are validated against a hash of the
+ * source content every time they are used. If a module changes on disk it is parsed again
+ * and replaces the stale entry.
+ */
+public class ModuleCache {
+    private static final ModuleCache SHARED = new ModuleCache();
+
+    /**
+     * @return the cache shared by every {@link MellowD} in this JVM unless it was
+     * given a different one
+     */
+    public static ModuleCache getShared() {
+        return SHARED;
+    }
+
+    private static final class Entry {
+        private final byte[] hash;
+        private final MellowDParser.SongContext tree;
+
+        private Entry(byte[] hash, MellowDParser.SongContext tree) {
+            this.hash = hash;
+            this.tree = tree;
+        }
+    }
+
+    private final Map<String, Entry> modules;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    public ModuleCache() {
+        this.modules = new ConcurrentHashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Resolve the module at the {@code importPath} with the {@code finder} and return
+     * its parse tree. The source is always read to verify the cached tree is still current
+     * but it is only parsed again if its content changed.
+     *
+     * @param finder     the finder to resolve the source with
+     * @param importPath the path of the module being imported
+     * @return the parsed module
+     * @throws SourceResolutionException if the module cannot be found
+     * @throws IOException               if the module cannot be read
+     */
+    public MellowDParser.SongContext load(SourceFinder finder, String[] importPath) throws SourceResolutionException, IOException {
+        String name = String.join(".", importPath);
+        //Some finders append the extension to the path they are given so give them a copy
+        String location = finder.locate(importPath.clone());
+        String key = location != null ? location : name;
+
+        byte[] source;
+        try (InputStream in = finder.resolve(importPath.clone())) {
+            source = readAll(in);
+        }
+        byte[] hash = hash(source);
+
+        Entry entry = this.modules.get(key);
+        if (entry != null && Arrays.equals(entry.hash, hash)) {
+            this.hits.increment();
+            return entry.tree;
+        }
+
+        this.misses.increment();
+        MellowDParser parser = new MellowDParser(new CommonTokenStream(
+                new MellowDLexer(CharStreams.fromString(new String(source, StandardCharsets.UTF_8), name))));
+        MellowDParser.SongContext tree = parser.song();
+
+        //A tree with syntax errors is still compiled as far as it can be but keep
+        //parsing it every time so the errors are reported every time.
+        if (parser.getNumberOfSyntaxErrors() == 0)
+            this.modules.put(key, new Entry(hash, tree));
+        else
+            this.modules.remove(key);
+
+        return tree;
+    }
+
+    /**
+     * Drop every cached module.
+     */
+    public void clear() {
+        this.modules.clear();
+    }
+
+    public int size() {
+        return this.modules.size();
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        in.transferTo(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] hash(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            //Every JVM is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -3,6 +3,8 @@ package org.mellowd.intermediate;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.executable.expressions.Abstraction;
 import org.mellowd.intermediate.functions.Argument;
+import org.mellowd.intermediate.functions.Parameters;
+import org.mellowd.intermediate.variables.Frame;
 import org.mellowd.intermediate.variables.Memory;
 
 public class Closure {
@@ -16,11 +18,22 @@ public class Closure {
         this.abstraction = abstraction;
     }
 
+    public Memory getCaptured() {
+        return captured;
+    }
+
+    public Abstraction getAbstraction() {
+        return abstraction;
+    }
+
     public Object call(ExecutionEnvironment callingEnv, Output out, Argument<?>... args) {
-        Memory bodyScope = this.abstraction.getParameters().prepareCall(callingEnv, this.captured, args);
+        Parameters parameters = this.abstraction.getParameters();
+        Frame frame = parameters.prepareCall(callingEnv, this.captured, args);
 
-        ExecutionEnvironment bodyEnv = new ClosureEvaluationEnvironment(callingEnv, bodyScope, abstraction.isPercussion());
+        ExecutionEnvironment bodyEnv = new ClosureEvaluationEnvironment(callingEnv, frame, abstraction.isPercussion());
         abstraction.getBody().execute(bodyEnv, out);
-        return bodyScope.get(RETURN_NAME);
+
+        Object returned = frame.get(parameters.getReturnSlot());
+        return returned != null ? returned : this.captured.get(RETURN_NAME);
     }
 }
@@ -0,0 +1,33 @@
+package org.mellowd.intermediate;
+
+import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.intermediate.variables.Frame;
+import org.mellowd.intermediate.variables.Memory;
+import org.mellowd.midi.TimingEnvironment;
+
+// The environment of code running inside a lexical `Frame`. Everything but the memory is
+// the same as the environment the frame was entered from.
+public class FrameEnvironment implements ExecutionEnvironment {
+    private final ExecutionEnvironment wrapped;
+    private final Frame frame;
+
+    public FrameEnvironment(ExecutionEnvironment wrapped, Frame frame) {
+        this.wrapped = wrapped;
+        this.frame = frame;
+    }
+
+    @Override
+    public boolean isPercussion() {
+        return wrapped.isPercussion();
+    }
+
+    @Override
+    public Memory getMemory() {
+        return frame;
+    }
+
+    @Override
+    public TimingEnvironment getTimingEnvironment() {
+        return wrapped.getTimingEnvironment();
+    }
+}
@@ -69,10 +69,10 @@ public class GradualDynamicChange extends DynamicChange {
         long stateTimeStep = totalDuration / Math.abs(velocityChange);
         for (long stateTime = 0; stateTime < totalDuration; stateTime += stateTimeStep) {
             Dynamic velocity = Dynamic.getDynamic((int) ((changeSlope * stateTime) + super.getDynamic().getVelocity()));
-            channel.doLater(stateTime, () -> channel.setDynamic(velocity));
+            channel.setDynamicLater(stateTime, velocity);
         }
 
-        channel.doLater(this.changeDuration, () -> channel.setDynamic(this.end));
+        channel.setDynamicLater(this.changeDuration, this.end);
     }
 
 
@@ -1,9 +1,8 @@
 package org.mellowd.intermediate;
 
+import org.mellowd.midi.CompiledPhrase;
 import org.mellowd.midi.TimingEnvironment;
 import org.mellowd.midi.MIDIChannel;
-import org.mellowd.midi.MIDIControl;
-import org.mellowd.midi.Pedal;
 import org.mellowd.primitives.Beat;
 import org.mellowd.primitives.Melody;
 import org.mellowd.primitives.Rhythm;
@@ -11,6 +10,9 @@ import org.mellowd.primitives.Rhythm;
 public class Phrase implements Playable {
     protected final Melody melody;
     protected final Rhythm rhythm;
+    //The compiled phrase is immutable so it can be shared between threads without
+    //synchronization, at worst two threads both compile it.
+    private CompiledPhrase compiled;
 
     public Phrase(Melody melody, Rhythm rhythm) {
         this.melody = melody;
@@ -29,40 +31,21 @@ public class Phrase implements Playable {
         return rhythm.getDuration();
     }
 
-    @Override
-    public void play(MIDIChannel channel) {
-        int numBeats = rhythm.size();
-        int numNotes = melody.size();
-        int numElements = Math.max(numBeats, numNotes);
-
-        if (numBeats == 0 || numNotes == 0) return;
-
-        boolean lastSlurred = false;
-
-        Pedal sustainPedal = channel.getController(MIDIControl.SUSTAIN);
-        for (int i = 0; i < numElements; i++) {
-            boolean slurred = rhythm.isSlurred(i);
-
-            if (slurred && !lastSlurred) {
-                //This note is the first is a section of slurred components
-                sustainPedal.press();
-                channel.setSlurred(true);
-            } else if (!slurred && lastSlurred) {
-                //This note is the first of a section of non-slurred components
-                channel.setSlurred(false);
-                sustainPedal.release();
-            }
-
-            Sound sound = melody.getElementAtIndex(i).createSound(rhythm.getAtIndex(i));
-            sound.play(channel);
-
-            //Update the tracker
-            lastSlurred = slurred;
+    //Playing a phrase plays its [CompiledPhrase](../midi/CompiledPhrase.html). The melody
+    //and rhythm are immutable so it is compiled once for the timing environment it is
+    //played in and reused every time the phrase is played again, like in a loop.
+    public CompiledPhrase compile(TimingEnvironment env) {
+        CompiledPhrase compiled = this.compiled;
+        if (compiled == null || compiled.getTimingEnvironment() != env) {
+            compiled = CompiledPhrase.compile(this.melody, this.rhythm, env);
+            this.compiled = compiled;
         }
+        return compiled;
+    }
 
-        // Always clear slur at the end because the slur cannot cross a phrase boundary.
-        channel.setSlurred(false);
-        sustainPedal.release();
+    @Override
+    public void play(MIDIChannel channel) {
+        channel.play(compile(channel.getTimingEnvironment()));
     }
 
     @Override
@@ -71,12 +54,7 @@ public class Phrase implements Playable {
         int numNotes = melody.size();
         int numElements = Math.max(numBeats, numNotes);
 
-        long ticks = 0;
-        for (int i = 0; i < numElements; i++) {
-            ticks += env.ticksInBeat(this.rhythm.getAtIndex(i));
-        }
-
-        return ticks;
+        return env.ticksInBeats(this.rhythm, numElements);
     }
 
     @Override
@@ -93,6 +93,10 @@ public class Sound implements Playable {
         return getNumNotes() > 1;
     }
 
+    protected Pitch[] pitchArray() {
+        return this.pitches.toArray(new Pitch[0]);
+    }
+
     protected long getDuration(MIDIChannel channel) {
         return channel.ticksInBeat(this.duration);
     }
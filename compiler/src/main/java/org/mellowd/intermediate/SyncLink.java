@@ -1,23 +1,39 @@
 package org.mellowd.intermediate;
 
-import java.util.BitSet;
 import java.util.Set;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SyncLink {
-    //This is the object that will block all the threads until the
-    //sync is complete
-    private final Object lock = new Object();
+    //The phaser blocks all of the outputs until every one of them has
+    //arrived at the sync. Waiting on a phaser parks rather than holding
+    //a monitor so it is safe to use from virtual threads and is managed
+    //by a ForkJoinPool.
+    private final Phaser phaser;
 
     private final Output[] toSync;
-    private final BitSet flags;
-    private volatile long syncTime = -1;
+
+    //The latest state time of the outputs in the current phase. Two are kept
+    //so that the next phase can start collecting before everyone has read the
+    //result of the last. The slot for phase `p` is `p & 1`.
+    private final AtomicLong[] syncTimes;
 
     public SyncLink(Set<? extends Output> toSync) {
         if (toSync.size() < 2)
             throw new IllegalArgumentException("At least 2 channels need to be present to create a sync link.");
 
         this.toSync = toSync.toArray(new Output[toSync.size()]);
-        this.flags = new BitSet(toSync.size());
+        this.syncTimes = new AtomicLong[]{ new AtomicLong(-1), new AtomicLong(-1) };
+        this.phaser = new Phaser(this.toSync.length) {
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                //Everyone has arrived so nobody is still writing to the next phase's slot
+                //and everyone that reads this phase's slot will do so before the next advance.
+                syncTimes[(phase + 1) & 1].set(-1);
+                //Never terminate, the link is reused every time the block is executed
+                return false;
+            }
+        };
     }
 
     /**
@@ -31,47 +47,46 @@ public class SyncLink {
      * @param output the output that is ready to sync
      */
     public void sync(Output output) throws InterruptedException {
-        synchronized (this) {
-            boolean flagRaised = false;
-            for (int index = 0; index < toSync.length; index++) {
-                if (toSync[index].equals(output)) {
-                    this.flags.set(index);
-                    flagRaised = true;
-                    break;
-                }
-            }
-            if (!flagRaised) return;
-        }
+        if (!isLinked(output)) return;
 
-        if (this.flags.cardinality() == this.toSync.length) {
-            //This was the last flag to raise, release the hounds
-            calcSyncStateTime();
-            long leap = this.syncTime - output.getStateTime();
-            if (leap > 0)
-                output.put(new LeapInTime(this.syncTime - output.getStateTime()));
-            synchronized (lock) {
-                lock.notifyAll();
-            }
-            reset();
-        } else {
-            synchronized (lock) {
-                lock.wait();
-            }
-            long leap = this.syncTime - output.getStateTime();
-            if (leap > 0)
-                output.put(new LeapInTime(this.syncTime - output.getStateTime()));
-        }
+        //The phase cannot advance until this output arrives so it is stable here
+        int phase = this.phaser.getPhase();
+        AtomicLong syncTime = this.syncTimes[phase & 1];
+        syncTime.accumulateAndGet(output.getStateTime(), Math::max);
+
+        this.phaser.awaitAdvanceInterruptibly(this.phaser.arrive());
+
+        long leap = syncTime.get() - output.getStateTime();
+        if (leap > 0)
+            output.put(new LeapInTime(leap));
     }
 
-    private void calcSyncStateTime() {
-        long time = -1;
+    /**
+     * Sync all of the outputs in the link at once. This is for callers that drive
+     * every output in the link from the same thread and know that they have all
+     * reached the sync, see {@link org.mellowd.intermediate.executable.CooperativeExecutor}.
+     */
+    public void syncAll() {
+        long syncTime = -1;
+        for (Output output : this.toSync)
+            syncTime = Math.max(syncTime, output.getStateTime());
+
         for (Output output : this.toSync) {
-            time = Math.max(time, output.getStateTime());
+            long leap = syncTime - output.getStateTime();
+            if (leap > 0)
+                output.put(new LeapInTime(leap));
         }
-        this.syncTime = time;
     }
 
-    private void reset() {
-        this.flags.clear();
+    public int size() {
+        return this.toSync.length;
+    }
+
+    public boolean isLinked(Output output) {
+        for (Output linked : this.toSync) {
+            if (linked.equals(output))
+                return true;
+        }
+        return false;
     }
 }
@@ -5,25 +5,29 @@ import org.mellowd.intermediate.executable.statements.Statement;
 import org.mellowd.compiler.ExecutionEnvironment;
 
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-
-public class CodeExecutor extends Thread {
-    private static final AtomicInteger THREAD_ID = new AtomicInteger();
 
+public class CodeExecutor implements Runnable {
+    private final String name;
     private final ExecutionEnvironment environment;
     private final Output output;
     private final List<? extends Statement> code;
     private volatile Exception problem = null;
+    private volatile long executionTime = -1;
 
     public CodeExecutor(String name, ExecutionEnvironment environment, Output output, List<? extends Statement> code) {
-        super("CodeExecutor-" + name + "-" + THREAD_ID.getAndIncrement());
+        this.name = name;
         this.environment = environment;
         this.output = output;
         this.code = code;
     }
 
+    public String getName() {
+        return name;
+    }
+
     @Override
     public void run() {
+        long start = System.nanoTime();
         try {
             for (Statement s : code) {
                 s.execute(environment, output);
@@ -32,6 +36,8 @@ public class CodeExecutor extends Thread {
             output.close();
         } catch (Exception e) {
             this.problem = e;
+        } finally {
+            this.executionTime = System.nanoTime() - start;
         }
     }
 
@@ -42,4 +48,12 @@ public class CodeExecutor extends Thread {
     public Exception getExecutionError() {
         return this.problem;
     }
+
+    /**
+     * @return the wall time in nanoseconds it took to run the code or -1 if
+     *         it has not finished running
+     */
+    public long getExecutionTime() {
+        return this.executionTime;
+    }
 }
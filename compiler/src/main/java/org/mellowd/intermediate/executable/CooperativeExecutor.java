@@ -0,0 +1,126 @@
+package org.mellowd.intermediate.executable;
+
+import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.intermediate.Output;
+import org.mellowd.intermediate.SyncLink;
+import org.mellowd.intermediate.executable.statements.Statement;
+import org.mellowd.intermediate.executable.statements.SyncStatement;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the code of many blocks on a single thread. Each block is a coroutine that runs
+ * until it reaches a {@link SyncStatement} in its top level code. There it yields until
+ * every other block in the {@link SyncLink} has arrived, at which point the link is
+ * resolved with {@link SyncLink#syncAll()} and all of them become runnable again.
+ * <p>
+ * Runnable blocks are resumed in the order of their state time (ties broken by the order
+ * they were added) so the result does not depend on thread scheduling at all.
+ */
+public class CooperativeExecutor implements Callable<Void> {
+    private static class Task {
+        final int order;
+        final String name;
+        final ExecutionEnvironment environment;
+        final Output output;
+        final List<? extends Statement> code;
+        int pc = 0;
+        long resumeTime = 0;
+        long executionTime = 0;
+
+        Task(int order, String name, ExecutionEnvironment environment, Output output, List<? extends Statement> code) {
+            this.order = order;
+            this.name = name;
+            this.environment = environment;
+            this.output = output;
+            this.code = code;
+        }
+    }
+
+    private final List<Task> tasks;
+    private final OptionalLong deadline;
+
+    /**
+     * @param deadline the {@link System#nanoTime()} by which execution must finish or
+     *                 empty for no deadline
+     */
+    public CooperativeExecutor(OptionalLong deadline) {
+        this.tasks = new ArrayList<>();
+        this.deadline = deadline;
+    }
+
+    public void add(String name, ExecutionEnvironment environment, Output output, List<? extends Statement> code) {
+        this.tasks.add(new Task(this.tasks.size(), name, environment, output, code));
+    }
+
+    /**
+     * @return the total time in nanoseconds spent running each block, keyed by name
+     */
+    public Map<String, Long> getExecutionTimes() {
+        Map<String, Long> times = new LinkedHashMap<>();
+        this.tasks.forEach(t -> times.put(t.name, t.executionTime));
+        return times;
+    }
+
+    @Override
+    public Void call() throws Exception {
+        PriorityQueue<Task> runnable = new PriorityQueue<>((a, b) -> {
+            int timeCmp = Long.compare(a.resumeTime, b.resumeTime);
+            return timeCmp != 0 ? timeCmp : Integer.compare(a.order, b.order);
+        });
+        Map<SyncLink, List<Task>> waiting = new IdentityHashMap<>();
+        runnable.addAll(this.tasks);
+
+        while (!runnable.isEmpty()) {
+            if (Thread.interrupted())
+                throw new InterruptedException("Execution cancelled");
+            if (this.deadline.isPresent() && System.nanoTime() - this.deadline.getAsLong() > 0)
+                throw new TimeoutException("Execution did not finish in time. " + (runnable.size() + waiting.size()) + " block(s) still running.");
+
+            Task task = runnable.poll();
+            long start = System.nanoTime();
+            SyncLink yieldedAt = runUntilYield(task);
+            task.executionTime += System.nanoTime() - start;
+
+            if (yieldedAt == null) continue;
+
+            List<Task> arrived = waiting.computeIfAbsent(yieldedAt, link -> new ArrayList<>(link.size()));
+            arrived.add(task);
+            if (arrived.size() == yieldedAt.size()) {
+                waiting.remove(yieldedAt);
+                yieldedAt.syncAll();
+                for (Task t : arrived) {
+                    t.resumeTime = t.output.getStateTime();
+                    runnable.add(t);
+                }
+            }
+        }
+
+        if (!waiting.isEmpty()) {
+            StringJoiner stuck = new StringJoiner(", ");
+            waiting.values().forEach(ts -> ts.forEach(t -> stuck.add(t.name)));
+            throw new IllegalStateException("Blocks " + stuck + " are waiting on a sync that can never complete.");
+        }
+
+        return null;
+    }
+
+    // Run the task until it reaches a sync it is part of (returning the link) or finishes (returning null)
+    private SyncLink runUntilYield(Task task) {
+        while (task.pc < task.code.size()) {
+            Statement statement = task.code.get(task.pc++);
+            if (statement instanceof SyncStatement) {
+                SyncLink link = ((SyncStatement) statement).getLink();
+                if (link.isLinked(task.output))
+                    return link;
+                continue;
+            }
+            statement.execute(task.environment, task.output);
+        }
+
+        task.output.close();
+        return null;
+    }
+}
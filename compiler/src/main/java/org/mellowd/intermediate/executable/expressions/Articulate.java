@@ -27,4 +27,14 @@ public class Articulate implements Expression<Articulated> {
         Articulatable val = expr.evaluate(environment);
         return val.articulate(articulation.evaluate(environment));
     }
+
+    @Override
+    public boolean isConstant() {
+        return this.expr.isConstant() && this.articulation.isConstant();
+    }
+
+    @Override
+    public boolean isPure() {
+        return this.expr.isPure() && this.articulation.isPure();
+    }
 }
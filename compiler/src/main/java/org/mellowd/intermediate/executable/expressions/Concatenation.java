@@ -3,9 +3,10 @@ package org.mellowd.intermediate.executable.expressions;
 import org.mellowd.compiler.ExecutionEnvironment;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.primitives.ConcatenationDelegate;
+import org.mellowd.primitives.ConcatenationDelegate.AppendDelegate;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Supplier;
@@ -14,11 +15,15 @@ public class Concatenation<T> implements Expression<T> {
     private final Supplier<T> root;
     private final ConcatenationDelegate<T> concatenationDelegate;
     private final List<Expression<?>> params;
+    // Each argument nearly always evaluates to the same class so the delegate that
+    // appends it is cached per argument
+    private final List<InlineTypeCache<AppendDelegate<T, Object>>> delegates;
 
     public Concatenation(Supplier<T> root, ConcatenationDelegate<T> concatenationDelegate) {
         this.root = root;
         this.concatenationDelegate = concatenationDelegate;
-        this.params = new LinkedList<>();
+        this.params = new ArrayList<>();
+        this.delegates = new ArrayList<>();
     }
 
     @Override
@@ -30,12 +35,37 @@ public class Concatenation<T> implements Expression<T> {
 
     public void addArgument(Expression<?> arg) {
         this.params.add(arg);
+        this.delegates.add(new InlineTypeCache<>());
     }
 
     @Override
     public T evaluate(ExecutionEnvironment environment) {
         T evalRes = root.get();
-        this.params.forEach(e -> concatenationDelegate.append(evalRes, e.evaluate(environment)));
+        for (int i = 0; i < this.params.size(); i++) {
+            Object value = this.params.get(i).evaluate(environment);
+
+            InlineTypeCache<AppendDelegate<T, Object>> cache = this.delegates.get(i);
+            Class<?> type = value.getClass();
+            AppendDelegate<T, Object> delegate = cache.get(type);
+            if (delegate == null) {
+                delegate = concatenationDelegate.lookup(type);
+                if (delegate == null)
+                    throw concatenationDelegate.unsupported(evalRes, value);
+                cache.specialize(type, delegate);
+            }
+
+            evalRes = delegate.append(evalRes, value);
+        }
         return evalRes;
     }
+
+    @Override
+    public boolean isConstant() {
+        return this.params.stream().allMatch(Expression::isConstant);
+    }
+
+    @Override
+    public boolean isPure() {
+        return this.params.stream().allMatch(Expression::isPure);
+    }
 }
@@ -23,6 +23,11 @@ public class Constant<T> implements Expression<T> {
         return value;
     }
 
+    @Override
+    public boolean isConstant() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return String.valueOf(value);
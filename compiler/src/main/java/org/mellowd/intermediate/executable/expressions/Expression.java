@@ -25,6 +25,19 @@ public interface Expression<T> extends ScopeDependent {
 
     public T evaluate(ExecutionEnvironment environment);
 
+    // An expression is constant if it always evaluates to an equal value no matter the
+    // environment, the compiler folds these into a `Constant` that is evaluated once.
+    public default boolean isConstant() {
+        return false;
+    }
+
+    // An expression is pure if its value only depends on the values of its free variables
+    // and evaluating it has no other effect. The value of a pure expression in a loop that
+    // doesn't change its free variables is the same on every iteration.
+    public default boolean isPure() {
+        return isConstant();
+    }
+
     public default <U> Expression<U> then(Function<T, U> mapper) {
         Expression<T> first = this;
         return new Expression<U>() {
@@ -45,4 +45,16 @@ public class IndexExpression implements Expression<Object> {
 
         return result.getAtRange(index.evaluate(environment), upperIndex.evaluate(environment));
     }
+
+    @Override
+    public boolean isConstant() {
+        return this.expression.isConstant() && this.index.isConstant()
+                && (this.upperIndex == null || this.upperIndex.isConstant());
+    }
+
+    @Override
+    public boolean isPure() {
+        return this.expression.isPure() && this.index.isPure()
+                && (this.upperIndex == null || this.upperIndex.isPure());
+    }
 }
@@ -0,0 +1,52 @@
+package org.mellowd.intermediate.executable.expressions;
+
+// An inline cache for an expression that looks at the runtime type of a value. The first
+// type seen at the expression is remembered with whatever was worked out about it so the
+// next value of the same class skips the reflective checks with a single reference
+// comparison. Another type replaces the cached one, and once the types have changed
+// `MAX_RESPECIALIZATIONS` times the site is megamorphic and stops caching.
+//
+// The cache may be shared by blocks running on different threads. The entry is immutable
+// and replaced as a whole so a thread sees either the old or the new pair, at worst it
+// takes the slow path again.
+final class InlineTypeCache<V> {
+    static final int MAX_RESPECIALIZATIONS = 8;
+
+    private static final class Entry<V> {
+        private final Class<?> type;
+        private final V value;
+
+        private Entry(Class<?> type, V value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    private Entry<V> entry;
+    private int respecializations;
+    private boolean megamorphic;
+
+    // Get the value cached for the `type` or null if it isn't the type this cache is
+    // specialized for
+    V get(Class<?> type) {
+        Entry<V> entry = this.entry;
+        return entry != null && entry.type == type ? entry.value : null;
+    }
+
+    // Specialize the cache for the `type`, replacing the previous type if there is one
+    void specialize(Class<?> type, V value) {
+        if (this.megamorphic) return;
+
+        if (this.entry != null && ++this.respecializations > MAX_RESPECIALIZATIONS) {
+            this.megamorphic = true;
+            this.entry = null;
+            return;
+        }
+
+        this.entry = new Entry<>(type, value);
+    }
+
+    boolean isMegamorphic() {
+        return this.megamorphic;
+    }
+}
@@ -0,0 +1,82 @@
+package org.mellowd.intermediate.executable.expressions;
+
+import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.variables.Frame;
+import org.mellowd.intermediate.variables.FrameLayout;
+import org.mellowd.intermediate.variables.Memory;
+
+import java.util.Set;
+
+// A pure expression in the body of a loop that doesn't use the loop counter. Once the
+// compiler knows that the body doesn't assign any of its free variables either it is
+// `hoist`ed, its value is computed on the first iteration and reused until the loop is
+// run again. Each run of a loop has a new `Frame` so the value is kept with the frame it
+// was computed in.
+//
+// Blocks run concurrently and may assign each other's variables and the globals while
+// the loop runs, so the compiler only wraps expressions whose free variables are frame
+// slots or `def` constants. A variable that another block changes is read on every
+// iteration like it was before hoisting.
+//
+// Blocks running on other threads may evaluate the expression at the same time, the
+// cached value is replaced as a whole so at worst a thread computes it again.
+public class LoopInvariant<T> implements Expression<T> {
+    private static final class Cached<T> {
+        private final Frame frame;
+        private final T value;
+
+        private Cached(Frame frame, T value) {
+            this.frame = frame;
+            this.value = value;
+        }
+    }
+
+    private final Expression<T> expression;
+    private final FrameLayout loopLayout;
+    private boolean hoisted;
+    private Cached<T> cached;
+
+    public LoopInvariant(Expression<T> expression, FrameLayout loopLayout) {
+        this.expression = expression;
+        this.loopLayout = loopLayout;
+        this.hoisted = false;
+    }
+
+    public Expression<T> getExpression() {
+        return expression;
+    }
+
+    public boolean isHoisted() {
+        return hoisted;
+    }
+
+    public void hoist() {
+        this.hoisted = true;
+    }
+
+    @Override
+    public Set<QualifiedName> getFreeVariables() {
+        return this.expression.getFreeVariables();
+    }
+
+    @Override
+    public T evaluate(ExecutionEnvironment environment) {
+        Memory memory = environment.getMemory();
+        if (!this.hoisted || !(memory instanceof Frame frame) || frame.getLayout() != this.loopLayout)
+            return this.expression.evaluate(environment);
+
+        Cached<T> cached = this.cached;
+        if (cached != null && cached.frame == frame)
+            return cached.value;
+
+        T value = this.expression.evaluate(environment);
+        this.cached = new Cached<>(frame, value);
+        return value;
+    }
+
+    @Override
+    public boolean isPure() {
+        return this.expression.isPure();
+    }
+}
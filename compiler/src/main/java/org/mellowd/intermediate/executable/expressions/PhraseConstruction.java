@@ -31,4 +31,14 @@ public class PhraseConstruction implements Expression<Phrase> {
         Rhythm rhythm = rhythmExpression.evaluate(environment);
         return new Phrase(melody, rhythm);
     }
+
+    @Override
+    public boolean isConstant() {
+        return this.melodyExpression.isConstant() && this.rhythmExpression.isConstant();
+    }
+
+    @Override
+    public boolean isPure() {
+        return this.melodyExpression.isPure() && this.rhythmExpression.isPure();
+    }
 }
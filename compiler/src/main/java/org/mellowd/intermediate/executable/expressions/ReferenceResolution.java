@@ -31,4 +31,9 @@ public class ReferenceResolution implements Expression<Object> {
         Memory memory = environment.getMemory();
         return memory.get(this.name);
     }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
 }
@@ -31,4 +31,14 @@ public class RuntimeIndexingSupportCheck implements Expression<Indexable<?, ?>>
             throw sourceLink.toCompilationException(new IndexingNotSupportedException(sourceLink.text));
         }
     }
+
+    @Override
+    public boolean isConstant() {
+        return this.expression.isConstant();
+    }
+
+    @Override
+    public boolean isPure() {
+        return this.expression.isPure();
+    }
 }
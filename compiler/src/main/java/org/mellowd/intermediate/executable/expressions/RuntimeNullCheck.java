@@ -30,4 +30,14 @@ public class RuntimeNullCheck<T> implements Expression<T> {
             throw sourceLink.toCompilationException(new UndefinedReferenceException(referenceName));
         return value;
     }
+
+    @Override
+    public boolean isConstant() {
+        return this.expression.isConstant();
+    }
+
+    @Override
+    public boolean isPure() {
+        return this.expression.isPure();
+    }
 }
@@ -24,4 +24,14 @@ public class RuntimeSlur<T extends Slurrable<U>, U> implements Expression<U> {
         T toSlur = this.toSlur.evaluate(environment);
         return toSlur.toggleSlur();
     }
+
+    @Override
+    public boolean isConstant() {
+        return this.toSlur.isConstant();
+    }
+
+    @Override
+    public boolean isPure() {
+        return this.toSlur.isPure();
+    }
 }
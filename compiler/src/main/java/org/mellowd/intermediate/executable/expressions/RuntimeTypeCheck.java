@@ -11,11 +11,13 @@ public class RuntimeTypeCheck<T> implements Expression<T> {
     private final Class<T> type;
     private final Expression<?> expression;
     private final SourceLink sourceLink;
+    private final InlineTypeCache<Boolean> accepted;
 
     public RuntimeTypeCheck(Class<T> type, Expression<?> expression, SourceLink sourceLink) {
         this.type = type;
         this.expression = expression;
         this.sourceLink = sourceLink;
+        this.accepted = new InlineTypeCache<>();
     }
 
     @Override
@@ -26,11 +28,27 @@ public class RuntimeTypeCheck<T> implements Expression<T> {
     @Override
     public T evaluate(ExecutionEnvironment environment) {
         Object value = expression.evaluate(environment);
-        if (value == null || type.isAssignableFrom(value.getClass())) {
-            return (T) value;
+        if (value == null) return null;
+
+        Class<?> valueType = value.getClass();
+        if (accepted.get(valueType) != null) return this.type.cast(value);
+
+        if (type.isAssignableFrom(valueType)) {
+            accepted.specialize(valueType, Boolean.TRUE);
+            return this.type.cast(value);
         } else {
             // TODO maybe incorrect type should not take an identifier...
             throw sourceLink.toCompilationException(new IncorrectTypeException(QualifiedName.ofUnqualified(sourceLink.text), value.getClass(), type));
         }
     }
+
+    @Override
+    public boolean isConstant() {
+        return this.expression.isConstant();
+    }
+
+    @Override
+    public boolean isPure() {
+        return this.expression.isPure();
+    }
 }
@@ -17,11 +17,13 @@ public class RuntimeUnionTypeCheck implements Expression<Object> {
     private final Class<?>[] types;
     private final Expression<?> expression;
     private final SourceLink sourceLink;
+    private final InlineTypeCache<Boolean> accepted;
 
     public RuntimeUnionTypeCheck(Expression<?> expression, Class<?>[] types, SourceLink sourceLink) {
         this.expression = expression;
         this.types = types;
         this.sourceLink = sourceLink;
+        this.accepted = new InlineTypeCache<>();
     }
 
     @Override
@@ -35,11 +37,26 @@ public class RuntimeUnionTypeCheck implements Expression<Object> {
         if (value == null) return null;
 
         Class<?> valueType = value.getClass();
+        if (accepted.get(valueType) != null) return value;
+
         for (Class<?> type : types) {
-            if (type.isAssignableFrom(valueType)) return value;
+            if (type.isAssignableFrom(valueType)) {
+                accepted.specialize(valueType, Boolean.TRUE);
+                return value;
+            }
         }
 
         // TODO qualified name is not the right type for this exception...
         throw sourceLink.toCompilationException(new IncorrectTypeException(QualifiedName.ofUnqualified(sourceLink.text), value.getClass(), types));
     }
+
+    @Override
+    public boolean isConstant() {
+        return this.expression.isConstant();
+    }
+
+    @Override
+    public boolean isPure() {
+        return this.expression.isPure();
+    }
 }
@@ -0,0 +1,51 @@
+package org.mellowd.intermediate.executable.expressions;
+
+import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.variables.Frame;
+import org.mellowd.intermediate.variables.FrameLayout;
+import org.mellowd.intermediate.variables.Memory;
+
+import java.util.Collections;
+import java.util.Set;
+
+// A reference the compiler resolved to a slot in a lexically enclosing `Frame`. The frame is
+// `depth` frames out from the memory of the environment. If the memory isn't laid out like
+// the compiler expected the name is looked up like a `ReferenceResolution`.
+public class SlotReference implements Expression<Object> {
+    private final QualifiedName name;
+    private final FrameLayout layout;
+    private final int depth;
+    private final int slot;
+
+    public SlotReference(QualifiedName name, FrameLayout layout, int depth, int slot) {
+        this.name = name;
+        this.layout = layout;
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    @Override
+    public Set<QualifiedName> getFreeVariables() {
+        return Collections.singleton(this.name);
+    }
+
+    @Override
+    public Object evaluate(ExecutionEnvironment environment) {
+        Memory memory = environment.getMemory();
+        for (int i = 0; i < this.depth && memory instanceof Frame; i++)
+            memory = ((Frame) memory).getParent();
+
+        if (memory instanceof Frame frame && frame.getLayout() == this.layout) {
+            Object value = frame.get(this.slot);
+            if (value != null) return value;
+        }
+
+        return environment.getMemory().get(this.name);
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+}
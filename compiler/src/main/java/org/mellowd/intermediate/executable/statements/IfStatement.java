@@ -84,6 +84,15 @@ public class IfStatement implements Statement {
         return names;
     }
 
+    @Override
+    public boolean isDeterministic() {
+        for (Statement branch : this.branches) {
+            if (!branch.isDeterministic())
+                return false;
+        }
+        return this.elseStatement.isDeterministic();
+    }
+
     @Override
     public void execute(ExecutionEnvironment environment, Output output) {
         for (int i = 0; i < conditions.length; i++) {
@@ -21,6 +21,12 @@ public class OnceStatement implements Statement {
         return null;
     }
 
+    // The first execution differs from the rest
+    @Override
+    public boolean isDeterministic() {
+        return false;
+    }
+
     @Override
     public void execute(ExecutionEnvironment environment, Output output) {
         if (this.evaluated.get()) return;
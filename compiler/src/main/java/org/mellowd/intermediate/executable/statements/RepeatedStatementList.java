@@ -1,9 +1,11 @@
 package org.mellowd.intermediate.executable.statements;
 
+import org.mellowd.intermediate.FrameEnvironment;
 import org.mellowd.intermediate.Output;
 import org.mellowd.intermediate.QualifiedName;
 import org.mellowd.intermediate.executable.expressions.Expression;
-import org.mellowd.intermediate.variables.Memory;
+import org.mellowd.intermediate.variables.Frame;
+import org.mellowd.intermediate.variables.FrameLayout;
 import org.mellowd.compiler.ExecutionEnvironment;
 
 import java.util.LinkedHashSet;
@@ -11,6 +13,10 @@ import java.util.Set;
 
 public class RepeatedStatementList extends StatementList {
     public static final QualifiedName IMPLICIT_LOOP_COUNTER_ID = QualifiedName.ofUnqualified("it");
+    // The body runs in a frame holding the loop counter so that the counter of an inner
+    // loop hides the outer one only while the inner loop runs
+    public static final FrameLayout FRAME_LAYOUT = new FrameLayout(IMPLICIT_LOOP_COUNTER_ID.getName());
+    public static final int LOOP_COUNTER_SLOT = FRAME_LAYOUT.indexOf(IMPLICIT_LOOP_COUNTER_ID.getName());
 
     protected final Expression<Number> repetitions;
 
@@ -30,16 +36,14 @@ public class RepeatedStatementList extends StatementList {
     @Override
     public void execute(ExecutionEnvironment environment, Output output) {
         int repetitions = this.repetitions.evaluate(environment).intValue();
-        Memory memory = environment.getMemory();
-        Object old = memory.get(IMPLICIT_LOOP_COUNTER_ID);
+        Frame frame = new Frame(FRAME_LAYOUT, environment.getMemory());
+        ExecutionEnvironment bodyEnv = new FrameEnvironment(environment, frame);
 
         for (int i = 0; i < repetitions; i++) {
-            memory.set(IMPLICIT_LOOP_COUNTER_ID, i);
+            frame.setCounter(LOOP_COUNTER_SLOT, i);
             for (Statement stmt : super.statements) {
-                stmt.execute(environment, output);
+                stmt.execute(bodyEnv, output);
             }
         }
-
-        memory.set(IMPLICIT_LOOP_COUNTER_ID, old);
     }
 }
@@ -10,7 +10,19 @@ import java.util.Set;
 import java.util.function.BiConsumer;
 
 public interface Statement extends ScopeDependent {
+    // Nothing is known about what a lifted body does so it is not assumed to be
+    // deterministic, see `liftDeterministic`.
     public static Statement lift(BiConsumer<ExecutionEnvironment, Output> stmtBody) {
+        return lift(stmtBody, false);
+    }
+
+    // Lift a body that always has the same output given the same variables, for example
+    // one that doesn't use random numbers or keep state between executions.
+    public static Statement liftDeterministic(BiConsumer<ExecutionEnvironment, Output> stmtBody) {
+        return lift(stmtBody, true);
+    }
+
+    private static Statement lift(BiConsumer<ExecutionEnvironment, Output> stmtBody, boolean deterministic) {
         return new Statement() {
             @Override
             public void execute(ExecutionEnvironment environment, Output output) {
@@ -21,8 +33,20 @@ public interface Statement extends ScopeDependent {
             public Set<QualifiedName> getFreeVariables() {
                 return Collections.emptySet();
             }
+
+            @Override
+            public boolean isDeterministic() {
+                return deterministic;
+            }
         };
     }
 
     public void execute(ExecutionEnvironment environment, Output output);
+
+    // A statement is deterministic if executing it again with the same values for its
+    // free variables and the same channel state has the same output. Functions that are
+    // called are looked up through the free variables and must be checked separately.
+    public default boolean isDeterministic() {
+        return true;
+    }
 }
@@ -27,6 +27,15 @@ public class StatementList implements Statement {
         return names;
     }
 
+    @Override
+    public boolean isDeterministic() {
+        for (Statement stmt : statements) {
+            if (!stmt.isDeterministic())
+                return false;
+        }
+        return true;
+    }
+
     @Override
     public void execute(ExecutionEnvironment environment, Output output) {
         for (Statement stmt : statements) {
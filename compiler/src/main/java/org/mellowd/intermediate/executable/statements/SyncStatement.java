@@ -18,13 +18,23 @@ public class SyncStatement implements Statement {
         this.link = link;
     }
 
+    public SyncLink getLink() {
+        return link;
+    }
+
     @Override
     public Set<QualifiedName> getFreeVariables() {
         return Collections.emptySet();
     }
 
+    // Where the statement ends depends on the other blocks on the link
+    @Override
+    public boolean isDeterministic() {
+        return false;
+    }
+
     @Override
-    public synchronized void execute(ExecutionEnvironment environment, Output output) {
+    public void execute(ExecutionEnvironment environment, Output output) {
         try {
             link.sync(output);
         } catch (InterruptedException e) {
@@ -22,7 +22,7 @@ public class DefaultFunctions {
         final Parameter<?> instrumentParam = Parameter.newRequiredParameter("instrument");
         final Parameter<Number> soundbankParam = Parameter.newOptionalParameter("soundbank", Number.class);
 
-        Statement instrumentChangeBody = Statement.lift((env, out) -> {
+        Statement instrumentChangeBody = Statement.liftDeterministic((env, out) -> {
             Object instrumentArg = instrumentParam.dereference(env.getMemory());
             Number soundbankArg = soundbankParam.dereference(env.getMemory());
 
@@ -54,7 +54,7 @@ public class DefaultFunctions {
     static {
         final Parameter<Boolean> muteParam = Parameter.newRequiredParameter("mute", Boolean.class);
 
-        Statement muteBody = Statement.lift((env, out) -> {
+        Statement muteBody = Statement.liftDeterministic((env, out) -> {
             Boolean mute = muteParam.dereference(env.getMemory());
 
             out.put(ChannelMute.getInstance(mute));
@@ -73,7 +73,7 @@ public class DefaultFunctions {
     static {
         final Parameter<Number> shiftAmtParam = Parameter.newRequiredParameter("shiftAmt", Number.class);
 
-        Statement octaveShiftBody = Statement.lift((env, out) -> {
+        Statement octaveShiftBody = Statement.liftDeterministic((env, out) -> {
             Number shiftAmt = shiftAmtParam.dereference(env.getMemory());
             out.put(new OctaveShift(shiftAmt.intValue()));
         });
@@ -92,7 +92,7 @@ public class DefaultFunctions {
     static {
         final Parameter<Number> numSemiTones = Parameter.newRequiredParameter("transposeAmt", Number.class);
 
-        Statement transposeBody = Statement.lift((env, out) -> {
+        Statement transposeBody = Statement.liftDeterministic((env, out) -> {
             Number shiftAmt = numSemiTones.dereference(env.getMemory());
             out.put(new TransposeChange(shiftAmt.intValue()));
         });
@@ -109,7 +109,7 @@ public class DefaultFunctions {
 
         TWIST = new Abstraction(
                 new Parameters(knobParam, toParam), false,
-                Statement.lift((env, out) -> {
+                Statement.liftDeterministic((env, out) -> {
                     String knob = knobParam.dereference(env.getMemory());
                     Number to = toParam.dereference(env.getMemory());
 
@@ -133,7 +133,7 @@ public class DefaultFunctions {
 
         PRESS = new Abstraction(
                 new Parameters(pedalParam, pressedParam), false,
-                Statement.lift((env, out) -> {
+                Statement.liftDeterministic((env, out) -> {
                     String pedal = pedalParam.dereference(env.getMemory());
                     Boolean pressed = pressedParam.dereference(env.getMemory());
 
@@ -147,7 +147,7 @@ public class DefaultFunctions {
 
         RELEASE = new Abstraction(
                 new Parameters(pedalParam), false,
-                Statement.lift((env, out) -> {
+                Statement.liftDeterministic((env, out) -> {
                     String pedal = pedalParam.dereference(env.getMemory());
 
                     MIDIControl control = MIDIControl.getController(pedal);
@@ -1,8 +1,10 @@
 package org.mellowd.intermediate.functions;
 
 import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.intermediate.Closure;
+import org.mellowd.intermediate.variables.Frame;
+import org.mellowd.intermediate.variables.FrameLayout;
 import org.mellowd.intermediate.variables.Memory;
-import org.mellowd.intermediate.variables.SymbolTable;
 
 import java.util.Arrays;
 import java.util.Iterator;
@@ -11,6 +13,9 @@ import java.util.StringJoiner;
 public class Parameters implements Iterable<Parameter<?>> {
     private final Parameter<?>[] params;
     private final int minSize;
+    // A call runs in a frame with a slot for each parameter, in order, followed by the
+    // return value
+    private final FrameLayout frameLayout;
 
     public Parameters(Parameter<?>... params) {
         this.params = params;
@@ -19,6 +24,20 @@ public class Parameters implements Iterable<Parameter<?>> {
             if (params[i].isOptional()) minSize--;
             else break;
         this.minSize = minSize;
+
+        String[] slots = new String[params.length + 1];
+        for (int i = 0; i < params.length; i++)
+            slots[i] = params[i].getName();
+        slots[params.length] = Closure.RETURN_NAME.getName();
+        this.frameLayout = new FrameLayout(slots);
+    }
+
+    public FrameLayout getFrameLayout() {
+        return frameLayout;
+    }
+
+    public int getReturnSlot() {
+        return params.length;
     }
 
     public int size() {
@@ -38,35 +57,41 @@ public class Parameters implements Iterable<Parameter<?>> {
     }
 
     public Parameter<?> getParam(String name) {
-        for (Parameter<?> parameter : this.params) {
-            if (parameter.getName().equals(name))
-                return parameter;
+        int i = indexOf(name);
+        return i < 0 ? null : params[i];
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < this.params.length; i++) {
+            if (this.params[i].getName().equals(name))
+                return i;
         }
 
-        return null;
+        return -1;
     }
 
-    public Memory prepareCall(ExecutionEnvironment callerEnv, Memory parentScope, Argument<?>... args) {
+    public Frame prepareCall(ExecutionEnvironment callerEnv, Memory parentScope, Argument<?>... args) {
+        // The arguments go in the slots of a frame in front of the closure's memory
+        Frame frame = Frame.newCallFrame(this.frameLayout, parentScope);
+
         // If the braces are empty then treat the first arg as not present.
         boolean isEmptyBraces = args.length == 0 || (args.length == 1 && args[0].isEmpty());
         if (isEmptyBraces && params.length == 0)
-            return new SymbolTable(parentScope);
+            return frame;
 
         if (args.length < minSize)
             throw new FunctionInvocationException(String.format("Not enough args. %d given but %d required.", args.length, minSize));
         if (args.length > params.length)
             throw new FunctionInvocationException(String.format("Too many args. %d given but at most %d expected.", args.length, params.length));
 
-        // Create a block of memory to put the arguments into
-        Memory memory = new SymbolTable(parentScope);
-
         // Put argument values into the scope.
         for (int i = 0; i < args.length; i++) {
             // Lookup the parameter that the argument is specifying.
             Argument<?> arg = args[i];
-            Parameter<?> parameter = arg.isNamed() ? this.getParam(arg.getName()) : params[i];
-            if (parameter == null)
+            int slot = arg.isNamed() ? this.indexOf(arg.getName()) : i;
+            if (slot < 0)
                 throw new FunctionInvocationException(String.format("No parameters are named \"%s\".", arg.getName()));
+            Parameter<?> parameter = params[slot];
 
             // Evaluate the argument.
             Object value = arg.isDeclaredNull() ? null : arg.getValue().evaluate(callerEnv);
@@ -84,11 +109,11 @@ public class Parameters implements Iterable<Parameter<?>> {
             // Check that a typed parameter is given the correct value.
             parameter.checkIsAssignable(value);
 
-            // Put the variable in the scope
-            memory.set(parameter.getNameAsQualified(), value);
+            // Put the variable in its slot
+            frame.set(slot, value);
         }
 
-        return memory;
+        return frame;
     }
 
     @Override
@@ -0,0 +1,132 @@
+package org.mellowd.intermediate.variables;
+
+// A `Frame` is an array backed memory for a scope with a fixed `FrameLayout`. Names in the
+// layout are stored in their slot and everything else, including namespaces, is passed on
+// to the `parent` so a frame can be put in front of any other memory. Slots hold plain
+// values, a `DelayedResolution` is only resolved by the memory it was stored in.
+//
+// A call frame keeps the other names assigned in the scope to itself instead, like the
+// locals of a function body. They are stored in a symbol table in front of the parent
+// that is only created once the first one is assigned.
+//
+// Counters can be stored in a slot without boxing them, they are boxed if they are read.
+public class Frame implements Memory {
+    private static final Object UNBOXED_COUNTER = new Object();
+
+    public static Frame newCallFrame(FrameLayout layout, Memory parent) {
+        return new Frame(layout, parent, true);
+    }
+
+    private final FrameLayout layout;
+    private final Memory parent;
+    private final Object[] values;
+    private final boolean ownsLocals;
+    private int[] counters;
+    private SymbolTable locals;
+
+    public Frame(FrameLayout layout, Memory parent) {
+        this(layout, parent, false);
+    }
+
+    private Frame(FrameLayout layout, Memory parent, boolean ownsLocals) {
+        this.layout = layout;
+        this.parent = parent;
+        this.values = new Object[layout.size()];
+        this.ownsLocals = ownsLocals;
+    }
+
+    public FrameLayout getLayout() {
+        return this.layout;
+    }
+
+    public Memory getParent() {
+        return this.parent;
+    }
+
+    public Object get(int slot) {
+        Object value = this.values[slot];
+        return value == UNBOXED_COUNTER ? Integer.valueOf(this.counters[slot]) : value;
+    }
+
+    public void set(int slot, Object value) {
+        this.values[slot] = value;
+    }
+
+    public void setCounter(int slot, int value) {
+        if (this.counters == null)
+            this.counters = new int[this.layout.size()];
+        this.values[slot] = UNBOXED_COUNTER;
+        this.counters[slot] = value;
+    }
+
+    // The memory that names outside of the layout are written to
+    private Memory writable() {
+        if (!this.ownsLocals) return this.parent;
+        if (this.locals == null)
+            this.locals = new SymbolTable(this.parent);
+        return this.locals;
+    }
+
+    // The memory that names outside of the layout are read from
+    private Memory readable() {
+        return this.locals != null ? this.locals : this.parent;
+    }
+
+    @Override
+    public void set(String name, Object value) {
+        int slot = this.layout.indexOf(name);
+        if (slot < 0)
+            writable().set(name, value);
+        else
+            this.values[slot] = value;
+    }
+
+    @Override
+    public void define(String name, Object value) {
+        if (this.layout.indexOf(name) >= 0)
+            throw new AlreadyDefinedException("Identifier " + name + " already exists and cannot be made into a constant");
+        writable().define(name, value);
+    }
+
+    @Override
+    public Object get(String name) {
+        int slot = this.layout.indexOf(name);
+        Object value = slot < 0 ? null : get(slot);
+        return value == null ? readable().get(name) : value;
+    }
+
+    @Override
+    public boolean isDefined(String name) {
+        return this.layout.indexOf(name) >= 0 || readable().isDefined(name);
+    }
+
+    @Override
+    public void setNamespace(String name, Memory namespace) {
+        writable().setNamespace(name, namespace);
+    }
+
+    @Override
+    public Memory lookupOrCreateNamespace(String name) {
+        return writable().lookupOrCreateNamespace(name);
+    }
+
+    @Override
+    public Memory lookupNamespace(String name) {
+        return readable().lookupNamespace(name);
+    }
+
+    @Override
+    public int countReferences() {
+        return this.layout.size() + readable().countReferences();
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("FRAME DUMP> ").append(this.layout).append('\n');
+        for (int i = 0; i < this.layout.size(); i++)
+            sb.append(this.layout.getName(i)).append("->").append(get(i)).append('\n');
+        sb.append(readable().dump());
+        return sb.toString();
+    }
+}
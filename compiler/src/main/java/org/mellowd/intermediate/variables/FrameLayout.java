@@ -0,0 +1,38 @@
+package org.mellowd.intermediate.variables;
+
+import java.util.Arrays;
+
+// A `FrameLayout` describes the names held by a lexical scope whose names are all known
+// when the code is compiled, like the loop counter of a repeated statement. Each name gets
+// a slot number so that a reference resolved by the compiler can read the slot directly
+// instead of looking the name up. Every `Frame` created for the scope shares the layout
+// so comparing layouts tells a reference if it is reading the frame it was compiled for.
+public final class FrameLayout {
+    private final String[] names;
+
+    public FrameLayout(String... names) {
+        this.names = names;
+    }
+
+    public int size() {
+        return this.names.length;
+    }
+
+    public String getName(int slot) {
+        return this.names[slot];
+    }
+
+    // The slot holding `name` or -1 if the layout doesn't have it
+    public int indexOf(String name) {
+        for (int i = 0; i < this.names.length; i++) {
+            if (this.names[i].equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(this.names);
+    }
+}
@@ -1,5 +1,7 @@
 package org.mellowd.io;
 
+import org.mellowd.compiler.ExecutionMode;
+
 import java.io.PrintStream;
 
 public class ArgParser {
@@ -12,8 +14,10 @@ public class ArgParser {
     private static final String USAGE_MESSAGE = "" +
             "usage: mellowd [-h] [-p] [-ts numerator denominator] [-t tempo]\n" +
             "               [-o output_dir] [-s source_dir]... [-sf font]...\n" +
-            "               [-pl plugin] [-wav] [-mid] [--silent]           \n" +
-            "               [source_file]";
+            "               [-pl plugin] [-x mode] [-c cache_dir] [-wav] [-mid]\n" +
+            "               [--split-channels] [--stems] [--silent]          \n" +
+            "               [source_file]                                    \n" +
+            "       mellowd -b [-j jobs] [options]... source...";
 
     private static final String OPT_DESC_HELP = "" +
             "    -h: display help about the usage of the mellowd command. Any\n" +
@@ -49,6 +53,27 @@ public class ArgParser {
             "    -pl, --plugin: add a plugin id to the list of plugins to    \n" +
             "                   apply during execution.                      \n" +
             "      plugin: the plugin id to apply";
+    private static final String OPT_DESC_EXEC = "" +
+            "    -x, --exec: set how the blocks are executed                 \n" +
+            "      mode: threaded runs each block on its own thread, while   \n" +
+            "            cooperative runs all blocks on one thread in state  \n" +
+            "            time order for a deterministic result               \n" +
+            "            (default threaded)                                   ";
+    private static final String OPT_DESC_CACHE = "" +
+            "    -c, --cache: reuse the result of an earlier compilation of  \n" +
+            "                 the same source, imports and options instead \n" +
+            "                 of compiling again                            \n" +
+            "      cache_dir: path to the directory to keep results in.     \n" +
+            "                 Absolute path or relative to the calling       \n" +
+            "                 directory.                                      ";
+    private static final String OPT_DESC_BATCH = "" +
+            "    -b, --batch: compile many sources in one run. Each source   \n" +
+            "                 may be a file, a directory that is searched for\n" +
+            "                 .mlod files or a glob such as 'songs/**.mlod'   ";
+    private static final String OPT_DESC_JOBS = "" +
+            "    -j, --jobs: set the number of sources to work on at once in \n" +
+            "                batch mode                                      \n" +
+            "      jobs: a positive integer (default the number of cpus)      ";
     private static final String OPT_DESC_WAV = "" +
             "    -wav, --wave: set the output to include a .wav file. If no  \n" +
             "                  output modifier is given (-p, -wav, -mid) the \n" +
@@ -57,6 +82,13 @@ public class ArgParser {
             "    -mid, --midi: set the output to include a .mid file. If no  \n" +
             "                  output modifier is given (-p, -wav, -mid) the \n" +
             "                  output will be MIDI                           ";
+    private static final String OPT_DESC_SPLIT = "" +
+            "    --split-channels: render the .wav output with one synth per \n" +
+            "                      MIDI channel in parallel and mix the      \n" +
+            "                      channels together                          ";
+    private static final String OPT_DESC_STEMS = "" +
+            "    --stems: save the audio of each MIDI channel to its own .wav\n" +
+            "             file next to the mix. Implies --split-channels      ";
     private static final String OPT_DESC_SILENT = "" +
             "    --silent: prevent the compiler from producing any messages  ";
     private static final String OPT_DESC_SOURCE = "" +
@@ -117,6 +149,8 @@ public class ArgParser {
 
         boolean showHelp = false;
         boolean parsedSourceFileArg = false;
+        boolean batch = false;
+        int sourceCount = 0;
         int i = 0;
         while (i < args.length) {
             switch (args[i].toLowerCase()) {
@@ -161,6 +195,31 @@ public class ArgParser {
                     if (!showHelp) i = parsePlugin(options, args, i + 1);
                     else i++;
                     break;
+                case "-x":
+                case "--exec":
+                    help.append('\n').append(OPT_DESC_EXEC);
+                    if (!showHelp) i = parseExecutionMode(options, args, i + 1);
+                    else i++;
+                    break;
+                case "-c":
+                case "--cache":
+                    help.append('\n').append(OPT_DESC_CACHE);
+                    if (!showHelp) i = parseCacheDir(options, args, i + 1);
+                    else i++;
+                    break;
+                case "-b":
+                case "--batch":
+                    help.append('\n').append(OPT_DESC_BATCH);
+                    i++;
+                    options.setBatch(true);
+                    batch = true;
+                    break;
+                case "-j":
+                case "--jobs":
+                    help.append('\n').append(OPT_DESC_JOBS);
+                    if (!showHelp) i = parseJobs(options, args, i + 1);
+                    else i++;
+                    break;
                 case "-p":
                 case "--play":
                     help.append('\n').append(OPT_DESC_PLAY);
@@ -179,22 +238,36 @@ public class ArgParser {
                     i++;
                     options.enableOutputType(CompilerOptions.OUTPUT_MIDI);
                     break;
+                case "--split-channels":
+                    help.append('\n').append(OPT_DESC_SPLIT);
+                    i++;
+                    options.setSplitChannels(true);
+                    break;
+                case "--stems":
+                    help.append('\n').append(OPT_DESC_STEMS);
+                    i++;
+                    options.setStems(true);
+                    break;
                 case "--silent":
                     help.append('\n').append(OPT_DESC_SILENT);
                     i++;
                     options.setSilent(true);
                     break;
                 default:
-                    if (parsedSourceFileArg)
-                        throw new IllegalArgumentException("Already parsed source file. The following was a surprise to me: " + args[i]);
+                    if (!parsedSourceFileArg)
+                        help.append('\n').append(OPT_DESC_SOURCE);
                     parsedSourceFileArg = true;
-                    help.append('\n').append(OPT_DESC_SOURCE);
-                    options.setSource(args[i]);
+                    options.addSource(args[i]);
+                    sourceCount++;
                     i++;
                     break;
             }
         }
 
+        //Only batch mode accepts more than one source, the flag may come after the sources
+        if (!batch && sourceCount > 1)
+            throw new IllegalArgumentException("Already parsed source file. Give -b to compile more than one source.");
+
         if (showHelp) {
             if (args.length == 1) {
                 //The only flag is -h
@@ -205,9 +278,15 @@ public class ArgParser {
                 help.append('\n').append(OPT_DESC_SRCDIR);
                 help.append('\n').append(OPT_DESC_SOUNDFONT);
                 help.append('\n').append(OPT_DESC_PLUGIN);
+                help.append('\n').append(OPT_DESC_EXEC);
+                help.append('\n').append(OPT_DESC_CACHE);
+                help.append('\n').append(OPT_DESC_BATCH);
+                help.append('\n').append(OPT_DESC_JOBS);
                 help.append('\n').append(OPT_DESC_PLAY);
                 help.append('\n').append(OPT_DESC_WAV);
                 help.append('\n').append(OPT_DESC_MID);
+                help.append('\n').append(OPT_DESC_SPLIT);
+                help.append('\n').append(OPT_DESC_STEMS);
                 help.append('\n').append(OPT_DESC_SILENT);
                 help.append('\n').append(OPT_DESC_SOURCE);
             }
@@ -254,6 +333,19 @@ public class ArgParser {
         return pos + 1;
     }
 
+    private static int parseJobs(CompilerOptions.Builder options, String[] args, int pos) throws Help {
+        if (args.length < pos + 1)
+            throw new Help("[Parse Error]: Expected number of jobs to follow " + args[pos - 1]);
+
+        int jobs = parseInt("jobs", args[pos]);
+        if (jobs < 1)
+            throw new Help(String.format("[Parse Error]: jobs expected a positive number but '%d' was given", jobs));
+
+        options.setJobs(jobs);
+
+        return pos + 1;
+    }
+
     private static int parseOutdir(CompilerOptions.Builder options, String[] args, int pos) throws Help {
         if (args.length < pos + 1)
             throw new Help("[Parse Error]: Expected path to output directory to follow " + args[pos - 1]);
@@ -265,6 +357,15 @@ public class ArgParser {
         return pos + 1;
     }
 
+    private static int parseCacheDir(CompilerOptions.Builder options, String[] args, int pos) throws Help {
+        if (args.length < pos + 1)
+            throw new Help("[Parse Error]: Expected path to cache directory to follow " + args[pos - 1]);
+
+        options.setCacheDir(args[pos]);
+
+        return pos + 1;
+    }
+
     private static int parseSourceDir(CompilerOptions.Builder options, String[] args, int pos) throws Help {
         if (args.length < pos + 1)
             throw new Help("[Parse Error]: Expected path to the source directory to follow " + args[pos - 1]);
@@ -297,4 +398,22 @@ public class ArgParser {
 
         return pos + 1;
     }
+
+    private static int parseExecutionMode(CompilerOptions.Builder options, String[] args, int pos) throws Help {
+        if (args.length < pos + 1)
+            throw new Help("[Parse Error]: Expected execution mode to follow " + args[pos - 1]);
+
+        switch (args[pos].toLowerCase()) {
+            case "threaded":
+                options.setExecutionMode(ExecutionMode.THREADED);
+                break;
+            case "cooperative":
+                options.setExecutionMode(ExecutionMode.COOPERATIVE);
+                break;
+            default:
+                throw new Help(String.format("[Parse Error]: execution mode expected 'threaded' or 'cooperative' but was given '%s'", args[pos]));
+        }
+
+        return pos + 1;
+    }
 }
@@ -0,0 +1,232 @@
+package org.mellowd.io;
+
+import org.mellowd.compiler.CompilationException;
+import org.mellowd.compiler.ParseException;
+import org.mellowd.compiler.SyntaxErrorReport;
+
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Synthesizer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many sources in one run of the compiler. Every source goes through 2 stages,
+ * compilation (parsing, compiling and executing) and writing the outputs. Each stage has
+ * its own pool of workers so one source can be written while the next ones compile.
+ * <p>
+ * Running everything in the same JVM means the sources share the warm up of the JVM and
+ * the DFA cache of the generated parser as well as the sound fonts, which are only read
+ * once for the whole batch.
+ */
+public class BatchCompiler {
+    private static final double NS_PER_SEC = 1E9d;
+
+    private final CompilerOptions options;
+    private final CompilerOptions workerOptions;
+    private final File outDir;
+    private final CompilationCache cache;
+    private final Function<Synthesizer, Synthesizer> soundFontLoader;
+
+    private int completed;
+
+    public BatchCompiler(CompilerOptions options, File outDir) {
+        this.options = options;
+        //The batch reports on each source itself, the individual stages should be quiet
+        this.workerOptions = new CompilerOptions.Builder(options).setSilent(true).build();
+        this.outDir = outDir;
+        this.cache = options.shouldUseCache()
+                ? new CompilationCache(new File(options.getCacheDirectory()))
+                : null;
+        this.soundFontLoader = Compiler.createSoundFontLoader(options);
+    }
+
+    /**
+     * Find every source described by the {@link CompilerOptions#getSources() sources}. Each
+     * may be a file, a directory that is searched recursively or a glob pattern.
+     *
+     * @param sources the paths, directories and globs to expand
+     * @return the source files in a stable order without duplicates
+     * @throws IOException if a directory cannot be searched or a file does not exist
+     */
+    public static List<File> findSources(List<String> sources) throws IOException {
+        Set<File> found = new LinkedHashSet<>();
+        for (String source : sources) {
+            File file = new File(source);
+            if (file.isDirectory()) {
+                found.addAll(walk(file.toPath(), path -> true));
+            } else if (isGlob(source)) {
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + source);
+                found.addAll(walk(globRoot(source), matcher::matches));
+            } else if (file.isFile()) {
+                found.add(file.getAbsoluteFile());
+            } else {
+                throw new IOException("Cannot find input file " + source);
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    private static boolean isGlob(String source) {
+        return source.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+    }
+
+    //The deepest directory in the `glob` that doesn't contain any pattern characters
+    private static Path globRoot(String glob) {
+        int firstPattern = 0;
+        while (firstPattern < glob.length() && !isGlob(String.valueOf(glob.charAt(firstPattern))))
+            firstPattern++;
+
+        int lastSeparator = Math.max(glob.lastIndexOf('/', firstPattern), glob.lastIndexOf(File.separatorChar, firstPattern));
+        return lastSeparator < 0 ? Paths.get("") : Paths.get(glob.substring(0, lastSeparator + 1));
+    }
+
+    private static List<File> walk(Path root, Predicate<Path> matches) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(Compiler.FILE_EXTENSION))
+                    .filter(matches)
+                    .sorted()
+                    .map(path -> path.toFile().getAbsoluteFile())
+                    .toList();
+        }
+    }
+
+    private static final class Result {
+        private final File source;
+        private long compileTime;
+        private long writeTime;
+
+        private Result(File source) {
+            this.source = source;
+        }
+    }
+
+    /**
+     * Compile and write all of the sources.
+     *
+     * @return true if every source was compiled and written, false if at least one failed
+     */
+    public boolean compileAll() {
+        List<File> sources;
+        try {
+            sources = findSources(this.options.getSources());
+        } catch (IOException e) {
+            System.err.printf("Cannot find sources. Reason: %s\n", e.getLocalizedMessage());
+            return false;
+        }
+
+        if (sources.isEmpty()) {
+            System.err.printf("No %s sources found.\n", Compiler.FILE_EXTENSION);
+            return false;
+        }
+
+        //Outputs are named after their source so sources with the same name would overwrite each other
+        Map<String, File> outputNames = new HashMap<>();
+        for (File source : sources) {
+            File previous = outputNames.putIfAbsent(source.getName(), source);
+            if (previous != null) {
+                System.err.printf("Sources %s and %s would both be written to the same output.\n",
+                        Compiler.formatPath(previous), Compiler.formatPath(source));
+                return false;
+            }
+        }
+
+        int jobs = this.options.getJobs();
+        ExecutorService compilers = Executors.newFixedThreadPool(jobs);
+        ExecutorService writers = Executors.newFixedThreadPool(jobs);
+        this.completed = 0;
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Result>> pending = new ArrayList<>(sources.size());
+        try {
+            for (File source : sources) {
+                Result result = new Result(source);
+                pending.add(CompletableFuture
+                        .supplyAsync(() -> compile(result), compilers)
+                        .thenApplyAsync(sequence -> write(result, sequence), writers)
+                        .whenComplete((r, error) -> report(result, error, sources.size())));
+            }
+
+            int failed = 0;
+            for (CompletableFuture<Result> future : pending) {
+                try {
+                    future.join();
+                } catch (CompletionException | CancellationException e) {
+                    failed++;
+                }
+            }
+
+            long took = System.nanoTime() - start;
+            if (this.options.wantsVerbose()) {
+                System.out.printf("Compiled %d of %d files in %.4f s (%.2f files/sec)\n",
+                        sources.size() - failed, sources.size(),
+                        took / NS_PER_SEC, sources.size() / (took / NS_PER_SEC));
+                if (this.cache != null)
+                    System.out.printf("Cache hits: %d, misses: %d\n", this.cache.getHits(), this.cache.getMisses());
+            }
+
+            return failed == 0;
+        } finally {
+            compilers.shutdownNow();
+            writers.shutdownNow();
+        }
+    }
+
+    private Sequence compile(Result result) {
+        long start = System.nanoTime();
+        try {
+            Sequence sequence = this.cache != null
+                    ? this.cache.compile(result.source, this.workerOptions, null)
+                    : Compiler.compile(result.source, this.workerOptions);
+            result.compileTime = System.nanoTime() - start;
+            return sequence;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private Result write(Result result, Sequence sequence) {
+        long start = System.nanoTime();
+        try {
+            Compiler.writeOutputs(this.workerOptions, result.source, this.outDir, sequence, this.soundFontLoader);
+        } catch (IOException | SoundFontLoadException e) {
+            throw new CompletionException(e);
+        }
+        result.writeTime = System.nanoTime() - start;
+        return result;
+    }
+
+    private synchronized void report(Result result, Throwable error, int total) {
+        this.completed++;
+        String name = Compiler.formatPath(result.source);
+
+        if (error == null) {
+            if (this.options.wantsVerbose())
+                System.out.printf("[%d/%d] %s compiled in %.4f s, written in %.4f s\n",
+                        this.completed, total, name, result.compileTime / NS_PER_SEC, result.writeTime / NS_PER_SEC);
+            return;
+        }
+
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        System.err.printf("[%d/%d] %s failed\n", this.completed, total, name);
+        if (cause instanceof CompilationException) {
+            ((CompilationException) cause).print(System.err);
+        } else if (cause instanceof ParseException) {
+            for (SyntaxErrorReport errorReport : ((ParseException) cause).getProblems())
+                System.err.println(errorReport.getErrorType().toString() + ": " + errorReport.getMessage());
+        } else if (cause instanceof SoundFontLoadException) {
+            System.err.println(cause.getMessage());
+        } else if (cause instanceof IOException) {
+            System.err.printf("Error reading or writing %s. Reason: %s\n", name, cause.getLocalizedMessage());
+        } else {
+            System.err.printf("Error compiling %s. Reason: %s\n", name, cause);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.mellowd.io;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.mellowd.plugin.PluginManager;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An on disk cache of compilation results. A source compiled with the same content,
+ * imports, options and compiler {@link Compiler#VERSION version} as before is not
+ * parsed or executed again, the {@link Sequence} saved the first time is loaded instead.
+ * <p>
+ * Each entry is made of 2 files. The {@code <base>.deps} file is keyed by the source,
+ * options and version and lists the modules the source imports. The imports can only be
+ * known after parsing so they are resolved and hashed on every lookup and combined with
+ * the base key to find the {@code <key>.mid} file that holds the result. Changing an
+ * imported module therefore changes the key even though the source itself did not change.
+ * <p>
+ * Plugins are identified by their id only. Changing the implementation of a plugin
+ * without changing its id requires clearing the cache.
+ */
+public class CompilationCache {
+    private static final double NS_PER_SEC = 1E9d;
+    private static final String DEPENDENCIES_EXTENSION = ".deps";
+    private static final String RESULT_EXTENSION = ".mid";
+
+    private final File directory;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    public CompilationCache(File directory) {
+        this.directory = directory.getAbsoluteFile();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Load the result of compiling {@code src} with the {@code options} from the cache,
+     * compiling and saving it if it is not there yet.
+     *
+     * @param src     the source file to compile
+     * @param options the compilation options
+     * @param plugins the plugins to apply, may be null
+     * @return the compilation result
+     * @throws Exception if there is a problem compiling the source. Problems with the
+     *                   cache itself are reported but do not stop the compilation.
+     */
+    public Sequence compile(File src, CompilerOptions options, PluginManager plugins) throws Exception {
+        long lookupStart = System.nanoTime();
+        byte[] source = Files.readAllBytes(src.toPath());
+        SourceFinder primaryFinder = new DirectorySourceFinder(src.getAbsoluteFile().getParentFile(), Compiler.FILE_EXTENSION);
+        SourceFinder finder = Compiler.createSourceFinder(primaryFinder, options);
+
+        String baseKey = baseKey(source, options);
+        Sequence cached = lookup(baseKey, finder);
+        long lookupTime = System.nanoTime() - lookupStart;
+
+        if (cached != null) {
+            this.hits.increment();
+            if (options.wantsVerbose())
+                System.out.printf("Cache hit for %s, lookup took %.4f s\n", src.getName(), lookupTime / NS_PER_SEC);
+            return cached;
+        }
+
+        this.misses.increment();
+        if (options.wantsVerbose())
+            System.out.printf("Cache miss for %s, lookup took %.4f s\n", src.getName(), lookupTime / NS_PER_SEC);
+
+        //Compile the exact content that was hashed in case the file changes in the meantime
+        List<String> imports = new ArrayList<>();
+        Sequence result = Compiler.compile(
+                CharStreams.fromString(new String(source, StandardCharsets.UTF_8), src.getAbsolutePath()),
+                primaryFinder, options, plugins, imports);
+
+        long storeStart = System.nanoTime();
+        try {
+            store(baseKey, imports, finder, result);
+            if (options.wantsVerbose())
+                System.out.printf("Caching the result took %.4f s\n", (System.nanoTime() - storeStart) / NS_PER_SEC);
+        } catch (IOException | SourceResolutionException e) {
+            if (options.wantsVerbose())
+                System.err.printf("Could not cache the result in %s. Reason: %s\n", this.directory, e.getLocalizedMessage());
+        }
+
+        return result;
+    }
+
+    private Sequence lookup(String baseKey, SourceFinder finder) {
+        File dependencies = new File(this.directory, baseKey + DEPENDENCIES_EXTENSION);
+        if (!dependencies.isFile()) return null;
+
+        File result;
+        try {
+            List<String> imports = Files.readAllLines(dependencies.toPath(), StandardCharsets.UTF_8);
+            result = new File(this.directory, fullKey(baseKey, imports, finder) + RESULT_EXTENSION);
+        } catch (IOException | SourceResolutionException e) {
+            //An import that cannot be resolved is reported by the compiler
+            return null;
+        }
+
+        if (!result.isFile()) return null;
+
+        try {
+            return MidiSystem.getSequence(result);
+        } catch (InvalidMidiDataException | IOException e) {
+            //A damaged entry is replaced by the next compilation
+            result.delete();
+            return null;
+        }
+    }
+
+    private void store(String baseKey, List<String> imports, SourceFinder finder, Sequence result) throws IOException, SourceResolutionException {
+        if (!this.directory.isDirectory() && !this.directory.mkdirs())
+            throw new IOException("Cannot create cache directory " + this.directory);
+
+        String key = fullKey(baseKey, imports, finder);
+
+        //Write the result before the dependencies so a reader never finds dependencies
+        //pointing at a result that isn't complete.
+        writeAtomically(new File(this.directory, key + RESULT_EXTENSION),
+                out -> MIDIIODelegate.getInstance().save(result, out));
+        writeAtomically(new File(this.directory, baseKey + DEPENDENCIES_EXTENSION),
+                out -> out.write(String.join("\n", imports).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private void writeAtomically(File destination, Writer writer) throws IOException {
+        File temp = File.createTempFile(destination.getName(), ".tmp", this.directory);
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+                writer.write(out);
+            }
+            Files.move(temp.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private static String baseKey(byte[] source, CompilerOptions options) throws IOException {
+        MessageDigest digest = newDigest();
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            out.writeUTF(Compiler.VERSION);
+            out.writeInt(options.getTimeSignatureTop());
+            out.writeInt(options.getTimeSignatureBottom());
+            out.writeInt(options.getTempo());
+            out.writeInt(options.getPlugins().size());
+            for (String plugin : options.getPlugins())
+                out.writeUTF(plugin);
+            out.writeInt(source.length);
+            out.write(source);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String fullKey(String baseKey, List<String> imports, SourceFinder finder) throws IOException, SourceResolutionException {
+        MessageDigest digest = newDigest();
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            out.writeUTF(baseKey);
+            for (String importPath : imports) {
+                if (importPath.isEmpty()) continue;
+                out.writeUTF(importPath);
+                try (InputStream module = finder.resolve(importPath.split("\\."))) {
+                    out.write(newDigest().digest(module.readAllBytes()));
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            //Every JVM is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -12,7 +12,9 @@ import org.mellowd.midi.TimingEnvironment;
 import org.mellowd.plugin.PluginManager;
 
 import javax.sound.midi.*;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
@@ -59,7 +61,7 @@ public class Compiler {
     private static final Pattern CURRENT_DIRECTORY_PREFIX =
             Pattern.compile("^" + Pattern.quote(new File("").getAbsolutePath() + File.separator));
 
-    private static String formatPath(File file) {
+    static String formatPath(File file) {
         String absPath = file.getAbsolutePath();
         Matcher m = CURRENT_DIRECTORY_PREFIX.matcher(absPath);
         return m.find() ? m.replaceFirst("") : absPath;
@@ -75,6 +77,12 @@ public class Compiler {
         //Now that we have valid arguments we need to pull the information
         //out of the parser.
         File outDir = handleOutDir(options, new File(options.getOutputDirectory()).getAbsoluteFile());
+
+        if (options.isBatch()) {
+            boolean allCompiled = new BatchCompiler(options, outDir).compileAll();
+            System.exit(allCompiled ? 0 : 1);
+        }
+
         File toCompile = handleInFile(new File(options.getSource()).getAbsoluteFile());
 
         //Now we can begin compiling
@@ -127,45 +135,17 @@ public class Compiler {
             }
 
             try {
-                //If the compilation result is empty then append the EOT event to
-                //make the output file playable.
-                if (compilationResult.getTickLength() == 0) {
-                    compilationResult.getTracks()[0].add(new MidiEvent(EOT_MESSAGE, 1));
-                }
-
-                if (options.shouldOutputMIDI()) {
-                    File outFile = new File(outDir, srcName + ".mid");
-                    if (!outFile.exists() && !outFile.createNewFile()) {
-                        System.err.printf("Cannot create output file %s\n", formatPath(outFile));
-                    } else {
-                        MIDIIODelegate.getInstance().save(compilationResult, outFile);
-
-                        if (options.wantsVerbose())
-                            System.out.printf("%s compiled to %s\n", srcName + FILE_EXTENSION, formatPath(outFile));
-                    }
-                }
-
-                if (options.shouldOutputWAV()) {
-                    File outFile = new File(outDir, srcName + ".wav");
-                    if (!outFile.exists() && !outFile.createNewFile()) {
-                        System.err.printf("Cannot create output file %s\n", formatPath(outFile));
-                    } else {
-                        long writeStartTime = System.nanoTime();
-                        new WavIODelegate(createSoundFontLoader(options)).save(compilationResult, outFile);
-
-                        if (options.wantsVerbose()) {
-                            long writeTime = System.nanoTime() - writeStartTime;
-                            System.out.printf("Conversion to WAV took %.4f s\n", writeTime / NS_PER_SEC);
-                            System.out.printf("%s compiled to %s\n", srcName + FILE_EXTENSION, formatPath(outFile));
-                        }
-                    }
-                }
+                writeOutputs(options, source, outDir, compilationResult, createSoundFontLoader(options));
             } catch (IOException e) {
                 System.err.printf("Error writing compilation result. Reason: %s.\n", e.getLocalizedMessage());
                 System.exit(1);
             }
 
             System.exit(0);
+            //If a sound font can't be loaded let the user know which one and exit.
+        } catch (SoundFontLoadException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
             //If a MidiUnavailableException occurs let the user know the error and exit.
         } catch (MidiUnavailableException e) {
             System.err.printf("Midi system not available. %s.\n", e.getLocalizedMessage());
@@ -179,6 +159,60 @@ public class Compiler {
         }
     }
 
+    //`writeOutputs` saves the `compilationResult` in each of the file formats requested
+    //by the `options`. The `soundFontLoader` prepares the synthesizer used for rendering audio.
+    static void writeOutputs(CompilerOptions options, File source, File outDir, Sequence compilationResult,
+                             Function<Synthesizer, Synthesizer> soundFontLoader) throws IOException {
+        String srcName = source.getName().replace(FILE_EXTENSION, "");
+
+        //If the compilation result is empty then append the EOT event to
+        //make the output file playable.
+        if (compilationResult.getTickLength() == 0) {
+            compilationResult.getTracks()[0].add(new MidiEvent(EOT_MESSAGE, 1));
+        }
+
+        if (options.shouldOutputMIDI()) {
+            File outFile = new File(outDir, srcName + ".mid");
+            if (!outFile.exists() && !outFile.createNewFile()) {
+                System.err.printf("Cannot create output file %s\n", formatPath(outFile));
+            } else {
+                MIDIIODelegate.getInstance().save(compilationResult, outFile);
+
+                if (options.wantsVerbose())
+                    System.out.printf("%s compiled to %s\n", srcName + FILE_EXTENSION, formatPath(outFile));
+            }
+        }
+
+        if (options.shouldOutputWAV()) {
+            File outFile = new File(outDir, srcName + ".wav");
+            if (!outFile.exists() && !outFile.createNewFile()) {
+                System.err.printf("Cannot create output file %s\n", formatPath(outFile));
+            } else {
+                long writeStartTime = System.nanoTime();
+                WavIODelegate wav = new WavIODelegate(soundFontLoader);
+                wav.setSplitChannels(options.shouldSplitChannels());
+                if (options.shouldOutputStems()) {
+                    //Each channel is saved as `<name>.chNN.wav` with the channels numbered from 1
+                    wav.setStemOutput(channel -> new BufferedOutputStream(new FileOutputStream(
+                            new File(outDir, String.format("%s.ch%02d.wav", srcName, channel + 1)))));
+                }
+                try {
+                    wav.save(compilationResult, outFile);
+                } catch (IOException | RuntimeException e) {
+                    //Don't leave a truncated file behind
+                    outFile.delete();
+                    throw e;
+                }
+
+                if (options.wantsVerbose()) {
+                    long writeTime = System.nanoTime() - writeStartTime;
+                    System.out.printf("Conversion to WAV took %.4f s\n", writeTime / NS_PER_SEC);
+                    System.out.printf("%s compiled to %s\n", srcName + FILE_EXTENSION, formatPath(outFile));
+                }
+            }
+        }
+    }
+
     //`handleOutDir` tries its best to use the given `outDir` and if it can't
     //it reports the problem to the user and closes the program.
     private static File handleOutDir(CompilerOptions options, File outDir) {
@@ -236,38 +270,39 @@ public class Compiler {
         return inFile;
     }
 
-    private static Function<Synthesizer, Synthesizer> createSoundFontLoader(CompilerOptions options) {
+    //The sound fonts are read through the process wide `SoundbankCache` so they are only
+    //parsed the first time any loader needs them and every synth after that shares them.
+    //A sound font that can't be loaded throws a `SoundFontLoadException` for the caller to
+    //report, a batch carries on with its other sources.
+    static Function<Synthesizer, Synthesizer> createSoundFontLoader(CompilerOptions options) {
         return (synth) -> {
             if (options.getSoundFonts().isEmpty()) return synth;
 
             if (!synth.isOpen())
                 System.err.printf("Synth must be open before applying sound fonts\n");
 
+            SoundbankCache soundbanks = SoundbankCache.getInstance();
             for (String soundFontPath : options.getSoundFonts()) {
                 File soundFontFile = new File(soundFontPath);
-                if (options.wantsVerbose())
+
+                if (options.wantsVerbose() && !soundbanks.contains(soundFontFile))
                     System.out.printf("Loading sound font %s...\n", formatPath(soundFontFile));
 
                 Soundbank soundbank;
                 try {
-                    soundbank = MidiSystem.getSoundbank(soundFontFile);
+                    soundbank = soundbanks.get(soundFontFile);
                 } catch (InvalidMidiDataException e) {
-                    System.err.printf("Invalid sound font %s. Problem: %s\n",
-                            soundFontFile.getName(), e.getLocalizedMessage());
-                    System.exit(1);
-                    return synth;
+                    throw new SoundFontLoadException(soundFontFile, String.format("Invalid sound font %s. Problem: %s",
+                            soundFontFile.getName(), e.getLocalizedMessage()), e);
                 } catch (IOException e) {
-                    System.err.printf("Error loading sound font %s. Problem: %s\n",
-                            soundFontFile.getName(), e.getLocalizedMessage());
-                    System.exit(1);
-                    return synth;
+                    throw new SoundFontLoadException(soundFontFile, String.format("Error loading sound font %s. Problem: %s",
+                            soundFontFile.getName(), e.getLocalizedMessage()), e);
                 }
 
                 if (!synth.isSoundbankSupported(soundbank)) {
-                    System.err.printf("Sound font %s is not supported by your midi system's synthesizer.\n",
-                            soundFontFile.getName());
-                    System.exit(1);
-                    return synth;
+                    throw new SoundFontLoadException(soundFontFile, String.format(
+                            "Sound font %s is not supported by your midi system's synthesizer.",
+                            soundFontFile.getName()));
                 }
 
                 boolean allLoaded = synth.loadAllInstruments(soundbank);
@@ -286,6 +321,9 @@ public class Compiler {
     }
 
     public static Sequence compile(File src, CompilerOptions options, PluginManager plugins) throws Exception {
+        if (options.shouldUseCache())
+            return new CompilationCache(new File(options.getCacheDirectory())).compile(src, options, plugins);
+
         return compile(new ANTLRFileStream(src.getAbsolutePath()),
                 new DirectorySourceFinder(src.getAbsoluteFile().getParentFile(), FILE_EXTENSION),
                 options,
@@ -297,6 +335,11 @@ public class Compiler {
     }
 
     public static Sequence compile(CharStream inStream, SourceFinder srcFinder, CompilerOptions options, PluginManager plugins) throws Exception {
+        return compile(inStream, srcFinder, options, plugins, null);
+    }
+
+    //Build the finder imports are resolved with, `srcFinder` is checked first.
+    static SourceFinder createSourceFinder(SourceFinder srcFinder, CompilerOptions options) {
         List<SourceFinder> sourceFinders = new LinkedList<>();
         //First priority is the given finder
         if (srcFinder != null) sourceFinders.add(srcFinder);
@@ -305,7 +348,12 @@ public class Compiler {
                 sourceFinders.add(new DirectorySourceFinder(new File(dir).getAbsoluteFile(), FILE_EXTENSION)));
         //Last priority is to look in the classpath
         sourceFinders.add(new ResourceSourceFinder(FILE_EXTENSION));
-        srcFinder = new CompositeSourceFinder(sourceFinders.toArray(new SourceFinder[sourceFinders.size()]));
+        return new CompositeSourceFinder(sourceFinders.toArray(new SourceFinder[sourceFinders.size()]));
+    }
+
+    //If `imports` is given the path of every module imported by the source is added to it.
+    static Sequence compile(CharStream inStream, SourceFinder srcFinder, CompilerOptions options, PluginManager plugins, List<String> imports) throws Exception {
+        srcFinder = createSourceFinder(srcFinder, options);
 
         //First we will display the inputs being used so they can double check everything
         //is as expected.
@@ -352,12 +400,18 @@ public class Compiler {
         }
 
         MellowD mellowD = new MellowD(srcFinder, timingEnvironment);
+        mellowD.setExecutionMode(options.getExecutionMode());
 
         plugins.applySome(mellowD, options.getPlugins());
 
         try {
             MellowDCompiler walker = new MellowDCompiler(mellowD);
 
+            if (imports != null) {
+                parseTree.importStmt().forEach(importStmt ->
+                        imports.add(String.join(".", walker.compileQualifier(importStmt.path).getPath())));
+            }
+
             if (!parseTree.importStmt().isEmpty()) {
                 // Compile the dependencies
                 long dependencyCompStart = System.nanoTime();
@@ -376,6 +430,8 @@ public class Compiler {
                 long compileTime = System.nanoTime() - compileStart;
                 System.out.printf("Compilation took %.4f s\n",
                         compileTime / NS_PER_SEC);
+                System.out.printf("Folded %d constant expressions and hoisted %d loop invariants\n",
+                        walker.getFoldedExpressions(), walker.getHoistedExpressions());
             }
 
             //Execute all of the compiled statements to build the output
@@ -385,6 +441,8 @@ public class Compiler {
                 long executionTime = System.nanoTime() - executionStart;
                 System.out.printf("Execution took %.4f s\n",
                         executionTime / NS_PER_SEC);
+                mellowD.getBlockExecutionTimes().forEach((block, time) ->
+                        System.out.printf("\t%s took %.4f s\n", block, time / NS_PER_SEC));
             }
             return result;
         } finally {
@@ -1,5 +1,6 @@
 package org.mellowd.io;
 
+import org.mellowd.compiler.ExecutionMode;
 import org.mellowd.plugin.PluginMetaData;
 
 import java.util.LinkedList;
@@ -18,8 +19,14 @@ public class CompilerOptions {
         private List<String> sourceDirs;
         private List<String> soundFonts;
         private List<String> plugins;
-        private String source;
+        private List<String> sources;
         private boolean silent;
+        private ExecutionMode executionMode;
+        private String cacheDir;
+        private boolean batch;
+        private int jobs;
+        private boolean splitChannels;
+        private boolean stems;
 
         public Builder() {
             this.outputDir = null;
@@ -29,8 +36,14 @@ public class CompilerOptions {
             this.sourceDirs = new LinkedList<>();
             this.soundFonts = new LinkedList<>();
             this.plugins = new LinkedList<>();
-            this.source = "";
+            this.sources = new LinkedList<>();
             this.silent = false;
+            this.executionMode = ExecutionMode.THREADED;
+            this.cacheDir = null;
+            this.batch = false;
+            this.jobs = 0;
+            this.splitChannels = false;
+            this.stems = false;
         }
 
         public Builder(CompilerOptions.Builder extend) {
@@ -46,10 +59,36 @@ public class CompilerOptions {
             this.soundFonts.addAll(extend.soundFonts);
 
             this.plugins = new LinkedList<>();
-            this.soundFonts.addAll(extend.plugins);
+            this.plugins.addAll(extend.plugins);
+
+            this.sources = new LinkedList<>();
+            this.sources.addAll(extend.sources);
 
-            this.source = extend.source;
             this.silent = extend.silent;
+            this.executionMode = extend.executionMode;
+            this.cacheDir = extend.cacheDir;
+            this.batch = extend.batch;
+            this.jobs = extend.jobs;
+            this.splitChannels = extend.splitChannels;
+            this.stems = extend.stems;
+        }
+
+        public Builder(CompilerOptions extend) {
+            this.outputDir = extend.outputDir;
+            this.timeSignature = extend.timeSignature;
+            this.tempo = extend.tempo;
+            this.outputType = extend.outputType;
+            this.sourceDirs = new LinkedList<>(extend.sourceDirs);
+            this.soundFonts = new LinkedList<>(extend.soundFonts);
+            this.plugins = new LinkedList<>(extend.plugins);
+            this.sources = new LinkedList<>(extend.sources);
+            this.silent = extend.silent;
+            this.executionMode = extend.executionMode;
+            this.cacheDir = extend.cacheDir;
+            this.batch = extend.batch;
+            this.jobs = extend.jobs;
+            this.splitChannels = extend.splitChannels;
+            this.stems = extend.stems;
         }
 
         public Builder setOutputDir(String outputDir) {
@@ -92,8 +131,44 @@ public class CompilerOptions {
             return this;
         }
 
+        public Builder setExecutionMode(ExecutionMode executionMode) {
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        public Builder setCacheDir(String cacheDir) {
+            this.cacheDir = cacheDir;
+            return this;
+        }
+
+        public Builder setBatch(boolean batch) {
+            this.batch = batch;
+            return this;
+        }
+
+        public Builder setJobs(int jobs) {
+            this.jobs = jobs;
+            return this;
+        }
+
+        public Builder setSplitChannels(boolean splitChannels) {
+            this.splitChannels = splitChannels;
+            return this;
+        }
+
+        public Builder setStems(boolean stems) {
+            this.stems = stems;
+            return this;
+        }
+
         public Builder setSource(String source) {
-            this.source = source;
+            this.sources.clear();
+            if (source != null) this.sources.add(source);
+            return this;
+        }
+
+        public Builder addSource(String source) {
+            this.sources.add(source);
             return this;
         }
 
@@ -107,7 +182,13 @@ public class CompilerOptions {
                     this.soundFonts,
                     this.plugins,
                     this.silent,
-                    this.source == null ? "" : this.source
+                    this.sources,
+                    this.executionMode == null ? ExecutionMode.THREADED : this.executionMode,
+                    this.cacheDir == null ? "" : this.cacheDir,
+                    this.batch,
+                    this.jobs <= 0 ? Runtime.getRuntime().availableProcessors() : this.jobs,
+                    this.splitChannels,
+                    this.stems
             );
         }
     }
@@ -120,10 +201,18 @@ public class CompilerOptions {
     private final List<String> soundFonts;
     private final List<String> plugins;
     private final boolean silent;
-    private final String source;
+    private final List<String> sources;
+    private final ExecutionMode executionMode;
+    private final String cacheDir;
+    private final boolean batch;
+    private final int jobs;
+    private final boolean splitChannels;
+    private final boolean stems;
 
     public CompilerOptions(String outputDir, int timeSignature, int tempo, int outputType, List<String> sourceDirs,
-                           List<String> soundFonts, List<String> plugins, boolean silent, String source) {
+                           List<String> soundFonts, List<String> plugins, boolean silent, List<String> sources,
+                           ExecutionMode executionMode, String cacheDir, boolean batch, int jobs,
+                           boolean splitChannels, boolean stems) {
         this.outputDir = outputDir;
         this.timeSignature = timeSignature;
         this.tempo = tempo;
@@ -132,7 +221,13 @@ public class CompilerOptions {
         this.soundFonts = soundFonts;
         this.plugins = plugins;
         this.silent = silent;
-        this.source = source;
+        this.sources = sources;
+        this.executionMode = executionMode;
+        this.cacheDir = cacheDir;
+        this.batch = batch;
+        this.jobs = jobs;
+        this.splitChannels = splitChannels;
+        this.stems = stems;
     }
 
     /**
@@ -275,6 +370,85 @@ public class CompilerOptions {
      * @return the path to the source file to compile
      */
     public String getSource() {
-        return this.source;
+        return this.sources.isEmpty() ? "" : this.sources.get(0);
+    }
+
+    /**
+     * Get the paths of all of the sources to compile. In {@link #isBatch() batch}
+     * mode each may also be a directory or a glob pattern.
+     *
+     * @return the paths of the sources to compile
+     */
+    public List<String> getSources() {
+        return this.sources;
+    }
+
+    /**
+     * Check if the compiler should compile every source matched by the
+     * {@link #getSources() sources} in one run.
+     *
+     * @return true if the compiler is in batch mode
+     */
+    public boolean isBatch() {
+        return this.batch;
+    }
+
+    /**
+     * Get the number of sources that may be worked on at the same time
+     * in {@link #isBatch() batch} mode.
+     *
+     * @return the number of workers
+     */
+    public int getJobs() {
+        return this.jobs;
+    }
+
+    /**
+     * Check if the WAV output should render each MIDI channel on its own
+     * synthesizer, in parallel, and mix them together.
+     *
+     * @return true if the channels should be rendered separately
+     */
+    public boolean shouldSplitChannels() {
+        return this.splitChannels || this.stems;
+    }
+
+    /**
+     * Check if the audio of each MIDI channel should be saved to its own
+     * WAV file next to the mix.
+     *
+     * @return true if the compiler should output a WAV file per channel
+     */
+    public boolean shouldOutputStems() {
+        return this.stems;
+    }
+
+    /**
+     * Get the mode the compiled blocks should be executed in.
+     *
+     * @return the execution mode
+     */
+    public ExecutionMode getExecutionMode() {
+        return this.executionMode;
+    }
+
+    /**
+     * Get the directory that compilation results are cached in. The cache
+     * is disabled if this is empty.
+     *
+     * @return the cache directory or an empty string
+     */
+    public String getCacheDirectory() {
+        return this.cacheDir;
+    }
+
+    /**
+     * Check if compilation results should be looked up in and saved to
+     * the {@link #getCacheDirectory() cache directory}.
+     *
+     * @return true if the compiler should use the cache
+     */
+    public boolean shouldUseCache() {
+        return !this.cacheDir.isEmpty();
     }
 }
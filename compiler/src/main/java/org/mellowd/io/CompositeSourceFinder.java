@@ -35,4 +35,13 @@ public class CompositeSourceFinder implements SourceFinder {
 
         throw new SourceResolutionException(importPath, errors);
     }
+
+    @Override
+    public String locate(String[] importPath) {
+        for (SourceFinder finder : finders) {
+            String location = finder.locate(importPath.clone());
+            if (location != null) return location;
+        }
+        return null;
+    }
 }
@@ -19,21 +19,29 @@ public class DirectorySourceFinder implements SourceFinder {
         this.extension = extension;
     }
 
-    @Override
-    public InputStream resolve(String[] importPath) throws SourceResolutionException {
+    private String getFileName(String[] importPath) {
+        String name = importPath[importPath.length - 1];
+        if (!name.endsWith(extension))
+            name = name + extension;
+        return name;
+    }
+
+    private File getSourceFile(String[] importPath) {
         StringBuilder path = new StringBuilder();
 
         for (int i = 0; i < importPath.length - 1; i++) {
             path.append(importPath[i]);
             path.append(File.separator);
         }
+        path.append(getFileName(importPath));
 
-        String name = importPath[importPath.length - 1];
-        if (!name.endsWith(extension))
-            name = name + extension;
-        path.append(name);
+        return new File(root, path.toString());
+    }
 
-        File source = new File(root, path.toString());
+    @Override
+    public InputStream resolve(String[] importPath) throws SourceResolutionException {
+        String name = getFileName(importPath);
+        File source = getSourceFile(importPath);
         if (source.exists()) {
             try {
                 return new FileInputStream(source);
@@ -58,6 +66,12 @@ public class DirectorySourceFinder implements SourceFinder {
         }
     }
 
+    @Override
+    public String locate(String[] importPath) {
+        File source = getSourceFile(importPath);
+        return source.isFile() ? source.getAbsolutePath() : null;
+    }
+
     public File[] listSourcesIn(File directory) {
         if (!directory.isDirectory())
             throw new IllegalArgumentException("\"" + directory.getAbsolutePath() + "\" is not a directory.");
@@ -1,6 +1,7 @@
 package org.mellowd.io;
 
 import java.io.InputStream;
+import java.net.URL;
 
 /**
  * A {@link SourceFinder} implementation that looks for resources via
@@ -26,4 +27,14 @@ public class ResourceSourceFinder implements SourceFinder {
         if (resource != null) return resource;
         throw new SourceResolutionException(importPath, "Cannot find resource \"" + String.join(".", importPath) + "\"");
     }
+
+    @Override
+    public String locate(String[] importPath) {
+        if (importPath == null || importPath.length == 0)
+            return null;
+
+        String path = String.join("/", importPath) + extension;
+        URL resource = Thread.currentThread().getContextClassLoader().getResource(path);
+        return resource != null ? resource.toString() : null;
+    }
 }
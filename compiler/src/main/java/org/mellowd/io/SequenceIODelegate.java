@@ -1,6 +1,7 @@
 package org.mellowd.io;
 
 import javax.sound.midi.Sequence;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -17,7 +18,9 @@ public interface SequenceIODelegate {
      * @throws IOException if an IO exception occurs during the saving process.
      */
     default void save(Sequence sequence, File outFile) throws IOException {
-        save(sequence, new FileOutputStream(outFile));
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outFile))) {
+            save(sequence, out);
+        }
     }
 
     /**
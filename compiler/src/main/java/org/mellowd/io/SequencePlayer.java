@@ -26,6 +26,8 @@ public class SequencePlayer implements Closeable {
     private final Sequencer sequencer;
     private final Function<Synthesizer, Synthesizer> soundfontLoader;
     private final Sequence sequence;
+    //The synth is borrowed from the `SynthPool` on the first play and returned on close
+    private Synthesizer synth;
     //Track the state of this player such that `true` &harr; music playing.
     private boolean isPlaying;
     private final ExecutorService player = Executors.newSingleThreadExecutor(r -> new Thread(r, "SequencePlayer-"+PLAYER_NUM.getAndIncrement()));
@@ -52,9 +54,10 @@ public class SequencePlayer implements Closeable {
         if (!sequencer.isOpen()) sequencer.open();
         sequencer.setSequence(sequence);
 
-        Synthesizer synth = MidiSystem.getSynthesizer();
-        if (!synth.isOpen()) synth.open();
+        if (this.synth == null)
+            this.synth = SynthPool.getInstance().borrow();
 
+        Synthesizer synth = this.synth;
         if (this.soundfontLoader != null)
             synth = this.soundfontLoader.apply(synth);
 
@@ -123,5 +126,7 @@ public class SequencePlayer implements Closeable {
         stop();
         this.sequencer.close();
         this.player.shutdown();
+        SynthPool.getInstance().release(this.synth);
+        this.synth = null;
     }
 }
@@ -0,0 +1,27 @@
+package org.mellowd.io;
+
+import java.io.File;
+
+/**
+ * Thrown by a sound font loader (see {@link Compiler#createSoundFontLoader(CompilerOptions)})
+ * when one of the sound fonts cannot be read or applied to the synthesizer. It is unchecked
+ * so that it can pass through the {@code Function<Synthesizer, Synthesizer>} loaders are
+ * given as, the compiler reports it for the file that was being written.
+ */
+public class SoundFontLoadException extends RuntimeException {
+    private final File soundFont;
+
+    public SoundFontLoadException(File soundFont, String message) {
+        super(message);
+        this.soundFont = soundFont;
+    }
+
+    public SoundFontLoadException(File soundFont, String message, Throwable cause) {
+        super(message, cause);
+        this.soundFont = soundFont;
+    }
+
+    public File getSoundFont() {
+        return this.soundFont;
+    }
+}
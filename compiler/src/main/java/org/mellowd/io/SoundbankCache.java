@@ -0,0 +1,116 @@
+package org.mellowd.io;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Soundbank;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A process wide cache of parsed sound fonts. Parsing a large sound font takes seconds
+ * and the samples it holds take a lot of memory so each file is only read once and the
+ * same {@link Soundbank} is loaded into every synthesizer that asks for it.
+ * <p>
+ * Entries are keyed by the canonical path of the file. A file that was modified since
+ * it was read (its modification time or length changed) is read again.
+ */
+public class SoundbankCache {
+    private static final SoundbankCache instance = new SoundbankCache();
+
+    public static SoundbankCache getInstance() {
+        return instance;
+    }
+
+    private static final class Entry {
+        private final long lastModified;
+        private final long length;
+        private final Soundbank soundbank;
+
+        private Entry(long lastModified, long length, Soundbank soundbank) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.soundbank = soundbank;
+        }
+
+        private boolean isCurrent(File file) {
+            return this.lastModified == file.lastModified() && this.length == file.length();
+        }
+    }
+
+    private final ConcurrentMap<File, Entry> entries;
+    private final ConcurrentMap<File, Object> loadLocks;
+    private final LongAdder loads;
+
+    SoundbankCache() {
+        this.entries = new ConcurrentHashMap<>();
+        this.loadLocks = new ConcurrentHashMap<>();
+        this.loads = new LongAdder();
+    }
+
+    /**
+     * Get the number of times a sound font file was actually read.
+     *
+     * @return the number of cache misses
+     */
+    public long getLoads() {
+        return this.loads.sum();
+    }
+
+    /**
+     * Check if the sound font in {@code file} can be returned without reading it.
+     *
+     * @param file the sound font file
+     * @return true if the current version of the file is cached
+     */
+    public boolean contains(File file) {
+        try {
+            File key = file.getCanonicalFile();
+            Entry entry = this.entries.get(key);
+            return entry != null && entry.isCurrent(key);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the sound font saved in {@code file}, reading it if it is not cached
+     * or has changed since it was cached. Concurrent requests for the same file
+     * wait for a single read.
+     *
+     * @param file the sound font file (conventionally *.sf2, *.dls)
+     * @return the parsed sound font
+     * @throws InvalidMidiDataException if the file is not a supported sound font
+     * @throws IOException              if the file cannot be read
+     */
+    public Soundbank get(File file) throws InvalidMidiDataException, IOException {
+        File key = file.getCanonicalFile();
+        Entry entry = this.entries.get(key);
+        if (entry != null && entry.isCurrent(key))
+            return entry.soundbank;
+
+        synchronized (this.loadLocks.computeIfAbsent(key, k -> new Object())) {
+            //Another thread may have read it while this one was waiting
+            entry = this.entries.get(key);
+            if (entry != null && entry.isCurrent(key))
+                return entry.soundbank;
+
+            //Stamp the entry before reading so a change made during the read is noticed
+            long lastModified = key.lastModified();
+            long length = key.length();
+            Soundbank soundbank = MidiSystem.getSoundbank(key);
+            this.loads.increment();
+            this.entries.put(key, new Entry(lastModified, length, soundbank));
+            return soundbank;
+        }
+    }
+
+    /**
+     * Forget every cached sound font.
+     */
+    public void clear() {
+        this.entries.clear();
+    }
+}
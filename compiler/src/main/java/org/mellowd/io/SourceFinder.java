@@ -1,5 +1,6 @@
 package org.mellowd.io;
 
+import java.io.IOException;
 import java.io.InputStream;
 
 public interface SourceFinder {
@@ -12,4 +13,23 @@ public interface SourceFinder {
      */
     InputStream resolve(String[] importPath) throws SourceResolutionException;
 
+    /**
+     * Describe where the source {@link #resolve(String[])} would return for the
+     * {@code importPath} is found, like the absolute path of the file. The same import
+     * path resolved by finders with different roots gives different locations. The
+     * default resolves the source to check it exists and identifies it by this finder
+     * and the import path.
+     * @param importPath the import path split at the dots or directory
+     * @return the location of the source or null if the path cannot be resolved
+     */
+    default String locate(String[] importPath) {
+        String name = String.join(".", importPath);
+        try {
+            resolve(importPath).close();
+            return getClass().getName() + '@' + Integer.toHexString(System.identityHashCode(this)) + ':' + name;
+        } catch (SourceResolutionException | IOException e) {
+            return null;
+        }
+    }
+
 }
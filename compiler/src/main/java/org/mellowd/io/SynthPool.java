@@ -0,0 +1,125 @@
+package org.mellowd.io;
+
+import javax.sound.midi.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A process wide pool of open synthesizers playing to the default audio device.
+ * Opening a synthesizer opens an audio line and loads its default instruments so
+ * players that come and go, like the one created for every evaluation in the repl,
+ * borrow a synthesizer that is already open instead.
+ * <p>
+ * A synthesizer is reset when it is {@link #release(Synthesizer) released}. Its sounds
+ * are stopped, its controllers and programs reset and any instruments that were loaded
+ * from other sound fonts are replaced with the defaults again. The sound fonts themselves
+ * stay in the {@link SoundbankCache} so loading them into the next borrower is cheap.
+ * <p>
+ * Offline renders are not pooled. A synthesizer rendering to a stream keeps the tails of
+ * the last notes and the reverb in its mixer so reusing one would change the audio of the
+ * next render.
+ */
+public class SynthPool {
+    private static final int DEFAULT_MAX_IDLE = 2;
+
+    private static final SynthPool instance = new SynthPool(DEFAULT_MAX_IDLE);
+
+    public static SynthPool getInstance() {
+        return instance;
+    }
+
+    private final int maxIdle;
+    private final Deque<Synthesizer> idle;
+    private long opened;
+
+    SynthPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+        this.idle = new ArrayDeque<>(maxIdle);
+        this.opened = 0;
+    }
+
+    /**
+     * Get the number of synthesizers this pool had to open.
+     *
+     * @return the number of synthesizers opened
+     */
+    public synchronized long getOpened() {
+        return this.opened;
+    }
+
+    /**
+     * Borrow an open synthesizer with only its default instruments loaded. It
+     * should be {@link #release(Synthesizer) released} when it is no longer needed.
+     *
+     * @return an open synthesizer
+     * @throws MidiUnavailableException if a new synthesizer is needed but cannot be opened
+     */
+    public Synthesizer borrow() throws MidiUnavailableException {
+        synchronized (this) {
+            while (!this.idle.isEmpty()) {
+                Synthesizer synth = this.idle.pop();
+                if (synth.isOpen()) return synth;
+            }
+        }
+
+        Synthesizer synth = MidiSystem.getSynthesizer();
+        if (!synth.isOpen()) synth.open();
+        synchronized (this) {
+            this.opened++;
+        }
+        return synth;
+    }
+
+    /**
+     * Return a synthesizer borrowed from this pool. It is reset and kept open for
+     * the next borrower or closed if enough synthesizers are already waiting.
+     *
+     * @param synth the synthesizer to return
+     */
+    public void release(Synthesizer synth) {
+        if (synth == null || !synth.isOpen()) return;
+
+        reset(synth);
+        synchronized (this) {
+            if (this.idle.size() < this.maxIdle) {
+                this.idle.push(synth);
+                return;
+            }
+        }
+        synth.close();
+    }
+
+    /**
+     * Close every synthesizer waiting in the pool.
+     */
+    public void clear() {
+        Synthesizer[] closing;
+        synchronized (this) {
+            closing = this.idle.toArray(new Synthesizer[0]);
+            this.idle.clear();
+        }
+        for (Synthesizer synth : closing)
+            synth.close();
+    }
+
+    private static void reset(Synthesizer synth) {
+        for (MidiChannel channel : synth.getChannels()) {
+            if (channel == null) continue;
+            channel.allSoundOff();
+            channel.resetAllControllers();
+            channel.programChange(0);
+        }
+
+        Soundbank defaults = synth.getDefaultSoundbank();
+        boolean replaced = false;
+        for (Instrument instrument : synth.getLoadedInstruments()) {
+            if (defaults == null || defaults.getInstrument(instrument.getPatch()) != instrument) {
+                synth.unloadInstrument(instrument);
+                replaced = true;
+            }
+        }
+        //Loading an instrument replaces the default with the same patch so put them back
+        if (replaced && defaults != null)
+            synth.loadAllInstruments(defaults);
+    }
+}
@@ -1,11 +1,13 @@
 package org.mellowd.io;
 
 import javax.sound.midi.*;
-import java.util.ArrayList;
-import java.util.List;
 
 //A `VirtualMIDIPlayer` force feeds a sequence to a midi receiver. This simulates play-though
-//of the entire sequence without the delay in between notes.
+//of the entire sequence without the delay in between notes. The messages can also be fed
+//a bit at a time with a `Cursor` to keep a renderer's queue short.
+//
+//The sequence is merged and stamped once when it is set, walking it afterwards is just
+//reading arrays.
 public class VirtualMIDIPlayer {
     //The number of microseconds in each minute (60,000,000). This constant aids
     //in calculating the microseconds per beat for a BPM conversion.
@@ -24,137 +26,204 @@ public class VirtualMIDIPlayer {
     //The MIDI meta message identifier for a tempo message.
     private static final byte TEMPO_MIDI_SUBTYPE = 0x51;
 
-    //A utility class for keeping some tracking information about the tracks in the sequence.
-    //When iterating over the tacks we need to find the next message in the sequence but the tracks
-    //all play concurrently. This class holds the current playback position (as the number of MIDI messages
-    //already played) so that we can switch between tracks but remember where we were in the others.
-    private class TrackTracker {
-        protected Track midiTrack;
-        protected int position = 0;
-
-        //Create a new track tracker wrapping the given track.
-        public TrackTracker(Track midiTrack) {
-            this.midiTrack = midiTrack;
+    //The `Timeline` is every message in the sequence that should be played, in the order it
+    //should be played, stamped with the time (in &mu;s) it should be played at. It is built
+    //once per sequence and shared by every `Cursor` walking it.
+    //
+    //Each entry is 2 longs rather than an object. The message itself is not copied, the
+    //entry holds the track number in the high 32 bits and the event's index in that track in
+    //the low 32 bits and the message is looked up from the sequence when it is played.
+    private static final class Timeline {
+        private final Track[] tracks;
+        private final long[] timestamps;
+        private final long[] events;
+        private final int size;
+        //The time of the last event in the sequence, including meta events
+        private final long duration;
+
+        //Build the timeline with a k-way merge of the tracks. Each track is already sorted by
+        //tick so a min-heap of the tracks keyed by the tick of their next event gives the next
+        //event of the sequence in O(log k). Ties are broken by the track number so that events
+        //on the same tick are played in the order of the tracks.
+        private Timeline(Sequence sequence) {
+            this.tracks = sequence.getTracks();
+            //The tracks must use the `PPQ` division type and therefor the resolution is in
+            //pulses per quarter note or `ticksPerBeat`
+            int ticksPerBeat = sequence.getResolution();
+
+            int capacity = 0;
+            int[] positions = new int[this.tracks.length];
+            int[] heap = new int[this.tracks.length];
+            int heapSize = 0;
+            for (int track = 0; track < this.tracks.length; track++) {
+                capacity += this.tracks[track].size();
+                if (this.tracks[track].size() > 0)
+                    heap[heapSize++] = track;
+            }
+            for (int i = heapSize / 2 - 1; i >= 0; i--)
+                siftDown(heap, heapSize, i, positions);
+
+            long[] timestamps = new long[capacity];
+            long[] events = new long[capacity];
+            int size = 0;
+
+            //If no tempo is specified this is the tempo
+            int usPerBeat = DEFAULT_US_PER_BEAT;
+            //Track the tick number of the last played message to calculate how much time has elapsed
+            long lastTick = 0;
+            //The current time is also updated with the lastTick. It tracks the imaginary time (in &mu;s)
+            long currentTime = 0;
+            while (heapSize > 0) {
+                int track = heap[0];
+                int position = positions[track];
+                MidiEvent event = this.tracks[track].get(position);
+
+                //We have pulled a message from this track so move its pointer to the next message
+                //and put it back in its place in the heap, or drop it if it is finished
+                positions[track] = position + 1;
+                if (position + 1 >= this.tracks[track].size())
+                    heap[0] = heap[--heapSize];
+                if (heapSize > 0)
+                    siftDown(heap, heapSize, 0, positions);
+
+                //Update the current time to properly track the new event
+                long tick = event.getTick();
+                //The units for the following calculations look like the following:<br>
+                //<sup>&mu;</sup>&fracsl;<sub>beat</sub> &middot; <sup>beat</sup>&fracsl;<sub>endTimeStamp</sub> &middot; endTimeStamp = &mu;
+                //This gives us the number of microseconds that has passed since the last tick
+                currentTime += ((tick - lastTick) * usPerBeat) / ticksPerBeat;
+                //Update the `lastTick` to the current tick
+                lastTick = tick;
+
+                MidiMessage msg = event.getMessage();
+                if (msg instanceof MetaMessage) {
+                    //This is updating synthesiser info and therefore doesn't need to be played back in the
+                    //receiver. If the message is a tempo change then we need to update our micro seconds per beat.
+                    if (((MetaMessage) msg).getType() == TEMPO_MIDI_SUBTYPE) {
+                        byte[] data = ((MetaMessage) msg).getData();
+                        //The data for this message is the number of micro seconds per beat written over 3 bytes
+                        //so we need to combine them again.
+                        usPerBeat = ((data[0] & 0xff) << 16) | ((data[1] & 0xff) << 8) | (data[2] & 0xff);
+                    }
+                } else {
+                    //It should be stamped and played
+                    timestamps[size] = currentTime;
+                    events[size] = ((long) track << 32) | position;
+                    size++;
+                }
+            }
+
+            this.timestamps = timestamps;
+            this.events = events;
+            this.size = size;
+            this.duration = currentTime;
         }
 
-        //Move the pointer forward one position. This is the equivalent of consuming
-        //a message.
-        public void advancePointer() {
-            this.position++;
+        //Restore the heap property below `i`. A track is smaller than another if its next
+        //event is on an earlier tick or on the same tick and it is the lower track.
+        private void siftDown(int[] heap, int heapSize, int i, int[] positions) {
+            int track = heap[i];
+            long tick = nextTick(track, positions);
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) break;
+
+                long childTick = nextTick(heap[child], positions);
+                if (child + 1 < heapSize) {
+                    long rightTick = nextTick(heap[child + 1], positions);
+                    if (rightTick < childTick || (rightTick == childTick && heap[child + 1] < heap[child])) {
+                        child++;
+                        childTick = rightTick;
+                    }
+                }
+
+                if (tick < childTick || (tick == childTick && track < heap[child])) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = track;
         }
 
-        //Obtain the next message in the sequence. Note that this does NOT advance the pointer.
-        //That should be done manually if it is desired. This method will return null if
-        //`hasNext()` returns false.
-        public MidiEvent getNext() {
-            if (hasNext())
-                return midiTrack.get(position);
-            return null;
+        private long nextTick(int track, int[] positions) {
+            return this.tracks[track].get(positions[track]).getTick();
         }
 
-        //Check if there is another message still not consumed in this track.
+        private MidiMessage message(int index) {
+            long event = this.events[index];
+            return this.tracks[(int) (event >>> 32)].get((int) event).getMessage();
+        }
+    }
+
+    //A `Cursor` walks the timeline in time order one message at a time. It only remembers its
+    //position so any number of cursors can walk the same sequence at once.
+    public class Cursor {
+        private final Timeline timeline;
+        private int position = 0;
+
+        private Cursor(Timeline timeline) {
+            this.timeline = timeline;
+        }
+
+        //Check if there is another message still to be played.
         public boolean hasNext() {
-            return position < midiTrack.size();
+            return this.position < this.timeline.size;
+        }
+
+        //Consume the next message. This method will return null if `hasNext()` returns false.
+        public TimeStampedMIDIMessage next() {
+            if (!hasNext()) return null;
+            int index = this.position++;
+            return new TimeStampedMIDIMessage(this.timeline.timestamps[index], this.timeline.message(index));
+        }
+
+        //Feed every message that should be played before `untilUs` (exclusive) to the `receiver`.
+        public void feedUntil(Receiver receiver, long untilUs) {
+            Timeline timeline = this.timeline;
+            int position = this.position;
+            while (position < timeline.size && timeline.timestamps[position] < untilUs) {
+                receiver.send(timeline.message(position), timeline.timestamps[position]);
+                position++;
+            }
+            this.position = position;
+        }
+
+        //The time (in &mu;s) of the last message the cursor passed.
+        public long getTime() {
+            return this.position == 0 ? 0 : this.timeline.timestamps[this.position - 1];
         }
     }
 
-    private List<TimeStampedMIDIMessage> stampedMIDIMessages;
+    private Timeline timeline;
     private double duration;
 
     //Create a new virtual player that is playing the given sequence.
     public VirtualMIDIPlayer(Sequence sequence) {
-        if (sequence.getDivisionType() != Sequence.PPQ)
-            throw new IllegalArgumentException("Sequence division type was not PPQ. Virtual playback only supports PPQ sequences");
-
-        initStampedMIDIMessages(sequence);
+        this.load(sequence);
     }
 
     //Set the sequence playing in this virtual midi player.
     public void setSequence(Sequence sequence) {
+        this.load(sequence);
+    }
+
+    //Private so that the constructor doesn't call a method a subclass could override
+    private void load(Sequence sequence) {
         if (sequence.getDivisionType() != Sequence.PPQ)
             throw new IllegalArgumentException("Sequence division type was not PPQ. Virtual playback only supports PPQ sequences");
 
-        initStampedMIDIMessages(sequence);
+        this.timeline = new Timeline(sequence);
+        //Convert the duration which is in microseconds, to seconds
+        this.duration = this.timeline.duration / MICROSECONDS_PER_SECOND;
     }
 
-    private void initStampedMIDIMessages(Sequence sequence) {
-        stampedMIDIMessages = new ArrayList<>();
-
-        //Wrap all of the tracks in the sequence in a tracker.
-        TrackTracker[] tracks = new TrackTracker[sequence.getTracks().length];
-        for (int i = 0; i < tracks.length; i++) {
-            tracks[i] = new TrackTracker(sequence.getTracks()[i]);
-        }
-
-        //If no tempo is specified this is the tempo
-        int usPerBeat = DEFAULT_US_PER_BEAT;
-        //The tracks must use the `PPQ` division type and therefor the resolution is in
-        //pulses per quarter note or `ticksPerBeat`
-        int ticksPerBeat = sequence.getResolution();
-        //Track the tick number of the last played message to calculate how much time has elapsed
-        long lastTick = 0;
-        //The current time is also updated with the lastTick. It tracks the imaginary time (in &mu;s)
-        long currentTime = 0;
-        //Crawl through the tracks grabbing the first occurring event (tick-wise)
-        while (true) {
-            MidiEvent nextEvent = null;
-            TrackTracker selectedTracker = null;
-            for (TrackTracker tracker : tracks) {
-                if (tracker.hasNext()) {
-                    //Pull the next event on this track
-                    MidiEvent event = tracker.getNext();
-                    //If we haven't picked an event yet or this event occurs before the selected one
-                    //then pick it as the working event
-                    if (nextEvent == null || event.getTick() < nextEvent.getTick()) {
-                        nextEvent = event;
-                        selectedTracker = tracker;
-                    }
-                }
-            }
-
-            //If no tracker is selected that means we have reached the end of the sequence
-            //and we can break out of this loop.
-            if (selectedTracker == null)
-                break;
-
-            //We have pulled a message from this track so update our tracker's pointer
-            //to point to the next message
-            selectedTracker.advancePointer();
-
-            //Update the current time to properly track the new event
-            long tick = nextEvent.getTick();
-            //The units for the following calculations look like the following:<br>
-            //<sup>&mu;</sup>&fracsl;<sub>beat</sub> &middot; <sup>beat</sup>&fracsl;<sub>endTimeStamp</sub> &middot; endTimeStamp = &mu;
-            //This gives us the number of microseconds that has passed since the last tick
-            currentTime += ((tick - lastTick) * usPerBeat) / ticksPerBeat;
-            //Update the `lastTick` to the current tick
-            lastTick = tick;
-
-            MidiMessage msg = nextEvent.getMessage();
-            if (msg instanceof MetaMessage) {
-                //This is updating synthesiser info and therefore doesn't need to be played back in the
-                //receiver. If the message is a tempo change then we need to update our micro seconds per beat.
-                if (((MetaMessage) msg).getType() == 0x51) {
-                    byte[] data = ((MetaMessage) msg).getData();
-                    //The data for this message is the number of micro seconds per beat written over 3 bytes
-                    //so we need to combine them again.
-                    usPerBeat = ((data[0] & 0xff) << 16) | ((data[1] & 0xff) << 8) | (data[2] & 0xff);
-                }
-            } else {
-                //It should be stamped and remembered
-                stampedMIDIMessages.add(new TimeStampedMIDIMessage(currentTime, msg));
-            }
-        }
-
-        //Convert the duration which is in microseconds, to seconds
-        this.duration = currentTime / MICROSECONDS_PER_SECOND;
+    //Start walking the last set sequence from the beginning.
+    public Cursor cursor() {
+        return new Cursor(this.timeline);
     }
 
     //Play the last set sequence fot the given receiver.
     public void playTrackFor(Receiver receiver) {
-        for (TimeStampedMIDIMessage message : this.stampedMIDIMessages) {
-            message.feedTo(receiver);
-        }
+        this.cursor().feedUntil(receiver, Long.MAX_VALUE);
     }
 
     //Get the duration of the last set sequence in seconds.
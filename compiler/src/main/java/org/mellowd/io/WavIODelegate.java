@@ -1,23 +1,50 @@
 package org.mellowd.io;
 
+import com.sun.media.sound.AudioFloatConverter;
 import com.sun.media.sound.AudioSynthesizer;
 
 import javax.sound.midi.*;
-import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 public class WavIODelegate implements SequenceIODelegate {
+    //A `StemOutput` opens the stream that the audio of a single MIDI channel is saved to
+    //when the channels are rendered separately. The streams are closed once the render is done.
+    @FunctionalInterface
+    public interface StemOutput {
+        OutputStream open(int channel) throws IOException;
+    }
+
     private static final float SAMPLE_RATE = 44100; //Hz
     private static final int SAMPLE_SIZE = 24; //bits per sample
     private static final int CHANNELS_MONO = 1;
     private static final int CHANNELS_STEREO = 2;
+    private static final double MICROSECONDS_PER_SECOND = 1000000.0;
+    //The number of frames rendered at a time
+    private static final int BLOCK_FRAMES = 4096;
+    //The number of frames each channel renders before the channels are mixed
+    private static final int ROUND_FRAMES = 8 * BLOCK_FRAMES;
+    private static final int CHANNEL_COUNT = 16;
+
+    private static final int HEADER_LENGTH = 44;
+    //The RIFF sizes are unsigned 32 bit integers that include the rest of the header
+    private static final long MAX_DATA_LENGTH = 0xFFFFFFFFL - (HEADER_LENGTH - 8);
+    private static final byte[] RIFF_CHUNK_ID = "RIFF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WAVE_FORMAT = "WAVE".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FMT_CHUNK_ID = "fmt ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATA_CHUNK_ID = "data".getBytes(StandardCharsets.US_ASCII);
+    private static final short WAVE_FORMAT_PCM = 1;
+
     private static final Map<String, Object> AUDIOSTREAM_PROPERTIES = new HashMap<>();
     static {
         AUDIOSTREAM_PROPERTIES.put("interpolation", "sinc");
@@ -29,6 +56,9 @@ public class WavIODelegate implements SequenceIODelegate {
     private int channels = CHANNELS_STEREO;
     private float sampleRate = SAMPLE_RATE;
     private int sampleSize = SAMPLE_SIZE;
+    private boolean splitChannels = false;
+    private int renderThreads = Runtime.getRuntime().availableProcessors();
+    private StemOutput stemOutput = null;
 
     public WavIODelegate(Function<Synthesizer, Synthesizer> soundfontLoader) {
         this.soundfontLoader = soundfontLoader;
@@ -46,39 +76,306 @@ public class WavIODelegate implements SequenceIODelegate {
         this.sampleSize = sampleSize;
     }
 
+    //Render each MIDI channel on its own synth, in parallel, and mix the results
+    public void setSplitChannels(boolean splitChannels) {
+        this.splitChannels = splitChannels;
+    }
+
+    //The most channels that are rendered at the same time when the channels are split
+    public void setRenderThreads(int renderThreads) {
+        this.renderThreads = renderThreads;
+    }
+
+    //Save the audio of each channel as well as the mix. This splits the channels.
+    public void setStemOutput(StemOutput stemOutput) {
+        this.stemOutput = stemOutput;
+    }
+
+    //`save` renders the sequence a block at a time. Before each block is pulled from the synth
+    //the messages up to the end of the following block are fed to it, the synth may render a
+    //little ahead of what has been read but never a whole block. This keeps the synth's
+    //queue and the buffered audio to a couple of blocks no matter how long the sequence is.
     @Override
     public void save(Sequence sequence, OutputStream out) throws IOException {
         VirtualMIDIPlayer player = new VirtualMIDIPlayer(sequence);
 
-        AudioFormat format = new AudioFormat(this.sampleRate, this.sampleSize, this.channels, true, false);
-        AudioSynthesizer synth;
-        AudioInputStream stream;
+        //WAV stores 8 bit samples unsigned and anything bigger signed
+        AudioFormat format = new AudioFormat(this.sampleRate, this.sampleSize, this.channels, this.sampleSize > 8, false);
+        if (this.splitChannels || this.stemOutput != null) {
+            saveChannels(sequence, player, format, out);
+            return;
+        }
+
+        SynthStream synth = openSynth(format);
         try {
-            synth = (AudioSynthesizer) MidiSystem.getSynthesizer();
-            stream = synth.openStream(format, AUDIOSTREAM_PROPERTIES);
-            if (this.soundfontLoader != null)
-                synth = (AudioSynthesizer) this.soundfontLoader.apply(synth);
+            // Calculate how long the WAV file needs to be
+            int frameSize = format.getFrameSize();
+            long frames = (long) (format.getFrameRate() * player.getDuration());
+            writeHeader(out, format, frames * frameSize);
+
+            VirtualMIDIPlayer.Cursor cursor = player.cursor();
+            byte[] block = new byte[BLOCK_FRAMES * frameSize];
+            for (long rendered = 0; rendered < frames; rendered += BLOCK_FRAMES) {
+                cursor.feedUntil(synth.receiver, framesToUs(rendered + 2L * BLOCK_FRAMES, format));
+
+                int length = (int) Math.min(BLOCK_FRAMES, frames - rendered) * frameSize;
+                readFully(synth.stream, block, length);
+                out.write(block, 0, length);
+            }
+            out.flush();
+        } finally {
+            synth.close();
+        }
+    }
+
+    //`saveChannels` renders every MIDI channel used by the sequence on its own synth. The
+    //channels render a round of `ROUND_FRAMES` at a time on a pool of `renderThreads` and
+    //once all of them are done the round is summed, sample for sample, into the mix. The
+    //channels render to floats so the sum isn't clipped until it is converted to the output
+    //format.
+    //
+    //Each synth has its own reverb, chorus and limiter. The reverb and chorus are linear so
+    //the mix sounds the same as rendering on one synth but the limiter only sees a single
+    //channel so a loud mix may clip where a single synth would have compressed it.
+    private void saveChannels(Sequence sequence, VirtualMIDIPlayer player, AudioFormat format, OutputStream out) throws IOException {
+        AudioFormat floatFormat = new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, format.getSampleRate(), 32,
+                format.getChannels(), 4 * format.getChannels(), format.getFrameRate(), false);
+        AudioFloatConverter converter = AudioFloatConverter.getConverter(format);
+
+        int frameSize = format.getFrameSize();
+        long frames = (long) (format.getFrameRate() * player.getDuration());
+        int[] channels = usedChannels(sequence);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(this.renderThreads, channels.length)), r -> {
+            Thread thread = new Thread(r, "MellowD-WAV-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<ChannelRender> renders = new ArrayList<>(channels.length);
+        try {
+            for (int channel : channels) {
+                OutputStream stemOut = this.stemOutput == null ? null : this.stemOutput.open(channel);
+                ChannelRender render = new ChannelRender(channel, player.cursor(), stemOut, floatFormat);
+                renders.add(render);
+                render.synth = openSynth(floatFormat);
+                if (stemOut != null)
+                    writeHeader(stemOut, format, frames * frameSize);
+            }
+            writeHeader(out, format, frames * frameSize);
+
+            float[] mix = new float[ROUND_FRAMES * format.getChannels()];
+            byte[] bytes = new byte[ROUND_FRAMES * frameSize];
+            for (long rendered = 0; rendered < frames; rendered += ROUND_FRAMES) {
+                int length = (int) Math.min(ROUND_FRAMES, frames - rendered);
+                int samples = length * format.getChannels();
+                for (ChannelRender render : renders)
+                    render.frames = length;
+
+                Arrays.fill(mix, 0, samples, 0f);
+                List<Future<float[]>> results = pool.invokeAll(renders);
+                for (int i = 0; i < results.size(); i++) {
+                    float[] channelSamples = results.get(i).get();
+                    for (int s = 0; s < samples; s++)
+                        mix[s] += channelSamples[s];
+
+                    OutputStream stemOut = renders.get(i).out;
+                    if (stemOut != null)
+                        writeSamples(stemOut, converter, channelSamples, samples, bytes);
+                }
+                writeSamples(out, converter, mix, samples, bytes);
+            }
+
+            out.flush();
+            for (ChannelRender render : renders) {
+                if (render.out != null) render.out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while rendering the channels");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("Error rendering a channel. Reason: " + e.getCause().getLocalizedMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+            IOException closeError = null;
+            for (ChannelRender render : renders) {
+                if (render.synth != null)
+                    render.synth.close();
+                if (render.out != null) {
+                    try {
+                        render.out.close();
+                    } catch (IOException e) {
+                        closeError = e;
+                    }
+                }
+            }
+            if (closeError != null)
+                throw closeError;
+        }
+    }
+
+    //The channels that have at least one voice message in the sequence
+    private static int[] usedChannels(Sequence sequence) {
+        boolean[] used = new boolean[CHANNEL_COUNT];
+        int count = 0;
+        for (Track track : sequence.getTracks()) {
+            for (int i = 0; i < track.size(); i++) {
+                MidiMessage message = track.get(i).getMessage();
+                if (message instanceof ShortMessage shortMessage && isVoiceMessage(shortMessage)
+                        && !used[shortMessage.getChannel()]) {
+                    used[shortMessage.getChannel()] = true;
+                    count++;
+                }
+            }
+        }
+
+        int[] channels = new int[count];
+        for (int channel = 0, i = 0; channel < CHANNEL_COUNT; channel++) {
+            if (used[channel]) channels[i++] = channel;
+        }
+        return channels;
+    }
+
+    //Voice messages are addressed to a channel, system messages have a status of 0xF0 and up
+    private static boolean isVoiceMessage(ShortMessage message) {
+        return message.getCommand() < SysexMessage.SYSTEM_EXCLUSIVE;
+    }
+
+    //Clip the samples to the range the output format can hold and write them
+    private static void writeSamples(OutputStream out, AudioFloatConverter converter, float[] samples, int length,
+                                     byte[] buffer) throws IOException {
+        for (int i = 0; i < length; i++) {
+            if (samples[i] > 1f) samples[i] = 1f;
+            else if (samples[i] < -1f) samples[i] = -1f;
+        }
+        converter.toByteArray(samples, 0, length, buffer, 0);
+        out.write(buffer, 0, length * converter.getFormat().getFrameSize() / converter.getFormat().getChannels());
+    }
+
+    //A `ChannelRender` renders the next `frames` of one channel each time it is called. It is
+    //fed every system message in the sequence but only the voice messages for its channel.
+    private static final class ChannelRender implements Callable<float[]>, Receiver {
+        private final int channel;
+        private final VirtualMIDIPlayer.Cursor cursor;
+        private final OutputStream out;
+        private final AudioFormat format;
+        private final AudioFloatConverter converter;
+        private final byte[] block;
+        private final float[] samples;
+        private SynthStream synth;
+        private long rendered = 0;
+        private int frames;
+
+        private ChannelRender(int channel, VirtualMIDIPlayer.Cursor cursor, OutputStream out, AudioFormat format) {
+            this.channel = channel;
+            this.cursor = cursor;
+            this.out = out;
+            this.format = format;
+            this.converter = AudioFloatConverter.getConverter(format);
+            this.block = new byte[BLOCK_FRAMES * format.getFrameSize()];
+            this.samples = new float[ROUND_FRAMES * format.getChannels()];
+        }
+
+        @Override
+        public float[] call() throws IOException {
+            int channels = this.format.getChannels();
+            for (int offset = 0; offset < this.frames; offset += BLOCK_FRAMES) {
+                this.cursor.feedUntil(this, framesToUs(this.rendered + offset + 2L * BLOCK_FRAMES, this.format));
+
+                int length = Math.min(BLOCK_FRAMES, this.frames - offset);
+                readFully(this.synth.stream, this.block, length * this.format.getFrameSize());
+                this.converter.toFloatArray(this.block, this.samples, offset * channels, length * channels);
+            }
+            this.rendered += this.frames;
+            return this.samples;
+        }
+
+        @Override
+        public void send(MidiMessage message, long timeStamp) {
+            if (message instanceof ShortMessage shortMessage && isVoiceMessage(shortMessage)
+                    && shortMessage.getChannel() != this.channel)
+                return;
+            this.synth.receiver.send(message, timeStamp);
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    //An open synth rendering to a stream
+    private static final class SynthStream {
+        private final AudioSynthesizer synth;
+        private final AudioInputStream stream;
+        private final Receiver receiver;
+
+        private SynthStream(AudioSynthesizer synth, AudioInputStream stream, Receiver receiver) {
+            this.synth = synth;
+            this.stream = stream;
+            this.receiver = receiver;
+        }
+
+        private void close() {
+            this.synth.close();
+        }
+    }
+
+    private SynthStream openSynth(AudioFormat format) throws IOException {
+        try {
+            AudioSynthesizer synth = (AudioSynthesizer) MidiSystem.getSynthesizer();
+            AudioInputStream stream = synth.openStream(format, AUDIOSTREAM_PROPERTIES);
+            if (this.soundfontLoader != null) {
+                try {
+                    synth = (AudioSynthesizer) this.soundfontLoader.apply(synth);
+                } catch (RuntimeException e) {
+                    //A sound font that can't be loaded shouldn't leave the synth open
+                    synth.close();
+                    throw e;
+                }
+            }
+            return new SynthStream(synth, stream, synth.getReceiver());
         } catch (MidiUnavailableException e) {
             throw new IOException("Cannot open audio synth for virtual playback. Reason: " + e.getLocalizedMessage(), e);
         } catch (ClassCastException e) {
             throw new IOException("System synth is not an instance of AudioSynthesizer. '.wav' conversion not supported");
         }
+    }
 
-        // Play Sequence into AudioSynthesizer Receiver.
-        try {
-            player.playTrackFor(synth.getReceiver());
-        } catch (MidiUnavailableException e) {
-            throw new IOException("Cannot play the track back to the receiver. Reason: " + e.getLocalizedMessage(), e);
-        }
+    private static long framesToUs(long frames, AudioFormat format) {
+        return (long) (frames * MICROSECONDS_PER_SECOND / format.getFrameRate());
+    }
 
-        // Calculate how long the WAV file needs to be
-        final long len = (long) (stream.getFormat().getFrameRate() * player.getDuration());
-        stream = new AudioInputStream(stream, stream.getFormat(), len);
+    //The synth renders on demand so the stream only ends early if the synth was closed
+    private static void readFully(AudioInputStream stream, byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = stream.read(buffer, read, length - read);
+            if (n < 0)
+                throw new IOException("Audio synth stopped rendering before the end of the sequence");
+            read += n;
+        }
+    }
 
-        // Write WAVE file to disk.
-        AudioSystem.write(stream, AudioFileFormat.Type.WAVE, out);
+    //`writeHeader` writes the RIFF header of a PCM WAV file holding `dataLength` bytes of samples.
+    //The length is known before rendering starts so the header can be written first and the
+    //output doesn't need to be seekable.
+    static void writeHeader(OutputStream out, AudioFormat format, long dataLength) throws IOException {
+        if (dataLength > MAX_DATA_LENGTH)
+            throw new IOException("The sequence is too long to be saved as a WAV file at this sample rate");
 
-        synth.close();
+        int frameSize = format.getFrameSize();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(RIFF_CHUNK_ID).putInt((int) (HEADER_LENGTH - 8 + dataLength)).put(WAVE_FORMAT);
+        header.put(FMT_CHUNK_ID).putInt(16)
+                .putShort(WAVE_FORMAT_PCM)
+                .putShort((short) format.getChannels())
+                .putInt((int) format.getSampleRate())
+                .putInt((int) format.getSampleRate() * frameSize)
+                .putShort((short) frameSize)
+                .putShort((short) format.getSampleSizeInBits());
+        header.put(DATA_CHUNK_ID).putInt((int) dataLength);
+        out.write(header.array());
     }
 
     @Override
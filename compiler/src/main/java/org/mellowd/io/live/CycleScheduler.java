@@ -10,14 +10,13 @@ import org.mellowd.primitives.Beat;
 
 import javax.sound.midi.*;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
-import java.util.function.Function;
 import java.util.function.ObjLongConsumer;
 import java.util.stream.Collectors;
 
@@ -38,19 +37,21 @@ public class CycleScheduler extends Thread {
         final MIDITrack activeBuffer;
         final MIDITrack queuedReplacementBuffer;
         final ActiveState state;
+        final LoopCache loopCache;
 
-        public ActiveBlock(MellowDBlock block, Statement[] code, MIDITrack activeBuffer, MIDITrack queuedReplacementBuffer, ActiveState state) {
+        public ActiveBlock(MellowDBlock block, Statement[] code, MIDITrack activeBuffer, MIDITrack queuedReplacementBuffer, ActiveState state, LoopCache loopCache) {
             this.block = block;
             this.code = code;
             this.activeBuffer = activeBuffer;
             this.queuedReplacementBuffer = queuedReplacementBuffer;
             this.state = state;
+            this.loopCache = loopCache;
         }
 
         public ActiveBlock withState(ActiveState state) {
             return new ActiveBlock(
                     this.block, this.code, this.activeBuffer, this.queuedReplacementBuffer,
-                    state
+                    state, this.loopCache
             );
         }
 
@@ -59,7 +60,7 @@ public class CycleScheduler extends Thread {
                     this.block, this.code,
                     this.activeBuffer != null ? this.activeBuffer : next,
                     this.activeBuffer != null ? next : null,
-                    ActiveState.READY
+                    ActiveState.READY, this.loopCache
             );
         }
 
@@ -78,16 +79,95 @@ public class CycleScheduler extends Thread {
         }
     }
 
+    // Each block's state lives in its own slot and moves between states with a CAS on
+    // that slot alone. The array of slots is only replaced when blocks are added or
+    // removed so the frame loop can iterate it without copying or allocating. Adding and
+    // removing slots takes `slotsLock` which the frame loop never takes, a slot that
+    // finished shutting down is handed to the render pool to be removed.
+    private static class BlockSlot extends AtomicReference<ActiveBlock> {
+        final String name;
+        // Renders of the same block share its MIDIChannel so they must never overlap, a
+        // superseded render that is still running holds this until it notices it was cancelled
+        final Object renderLock = new Object();
+        volatile RenderJob pendingRender;
+        // Set by the frame loop when it hands the slot over to be removed
+        volatile boolean removalQueued;
+
+        BlockSlot(ActiveBlock initial) {
+            super(initial);
+            this.name = initial.block.getName();
+        }
+
+        void cancelPendingRender() {
+            RenderJob pending = this.pendingRender;
+            if (pending != null && pending.cancel())
+                pending.scheduler.cancelledRenders.increment();
+        }
+    }
+
+    // A single execution of a block's code into a new track that should start playing at
+    // `startStateTime`. Cancelling a render that has not started yet removes it from the
+    // pool, a render that is already running stops at the next statement and its result is
+    // dropped. The running statement is not interrupted as it may be holding the channel in
+    // the middle of a note.
+    private static class RenderJob implements Runnable {
+        final CycleScheduler scheduler;
+        final BlockSlot slot;
+        final ActiveBlock active;
+        final long startStateTime;
+        volatile boolean cancelled;
+        volatile boolean done;
+        volatile Future<?> future;
+
+        RenderJob(CycleScheduler scheduler, BlockSlot slot, ActiveBlock active, long startStateTime) {
+            this.scheduler = scheduler;
+            this.slot = slot;
+            this.active = active;
+            this.startStateTime = startStateTime;
+        }
+
+        boolean cancel() {
+            if (this.done || this.cancelled) return false;
+            this.cancelled = true;
+            Future<?> future = this.future;
+            if (future != null) future.cancel(false);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this.slot.renderLock) {
+                try {
+                    if (!this.cancelled)
+                        this.scheduler.render(this);
+                } finally {
+                    this.done = true;
+                }
+            }
+        }
+    }
+
+    private static final BlockSlot[] NO_SLOTS = new BlockSlot[0];
+
     private final TimingEnvironment timingEnvironment;
     private final Synthesizer synth;
     private final Receiver out;
 
     private final AtomicBoolean running;
+    private final FrameClock clock;
 
     private final BiConsumer<MellowDBlock, Throwable> exceptionHandler;
 
-    private final ExecutorService compilationExecutorService = Executors.newCachedThreadPool();
-    private final AtomicReference<Map<String, ActiveBlock>> activeBlocks;
+    private final ExecutorService compilationExecutorService;
+    private final LongAdder completedRenders = new LongAdder();
+    private final LongAdder cancelledRenders = new LongAdder();
+    private final LongAdder replayedRenders = new LongAdder();
+    private final LongAdder missedDeadlines = new LongAdder();
+    private final AtomicLong missedDeadlineTicks = new AtomicLong();
+    private volatile int lookAheadMeasures = 1;
+    private final Object slotsLock = new Object();
+    private final Map<String, BlockSlot> slotsByName;
+    private volatile BlockSlot[] slots;
 
 
     private AtomicLong stateTime = new AtomicLong(0);
@@ -99,6 +179,10 @@ public class CycleScheduler extends Thread {
     long measureDurationTicks;
 
     public CycleScheduler(Synthesizer synth, TimingEnvironment timingEnvironment, BiConsumer<MellowDBlock, Throwable> exceptionHandler) throws InvalidMidiDataException, MidiUnavailableException {
+        this(synth, timingEnvironment, exceptionHandler, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    public CycleScheduler(Synthesizer synth, TimingEnvironment timingEnvironment, BiConsumer<MellowDBlock, Throwable> exceptionHandler, int renderThreads) throws InvalidMidiDataException, MidiUnavailableException {
         super("MellowD-CycleScheduler");
         this.timingEnvironment = timingEnvironment;
         this.synth = synth;
@@ -106,11 +190,22 @@ public class CycleScheduler extends Thread {
 
         this.running = new AtomicBoolean(false);
         this.exceptionHandler = exceptionHandler;
-        this.activeBlocks = new AtomicReference<>(Collections.emptyMap());
+        this.slotsByName = new ConcurrentHashMap<>();
+        this.slots = NO_SLOTS;
+
+        // The renders run ahead of the frames so a few threads are enough, more would only
+        // compete with the scheduler thread for the cores
+        AtomicInteger renderThreadCount = new AtomicInteger();
+        this.compilationExecutorService = Executors.newFixedThreadPool(renderThreads, r -> {
+            Thread thread = new Thread(r, "MellowD-Render-" + renderThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
 
         frameDurationInBeats = Beat.EIGHTH();
         frameDurationInTicks = timingEnvironment.ticksInBeat(frameDurationInBeats);
         frameDurationInUs = timingEnvironment.approxDurationOfBeatInUs(frameDurationInBeats);
+        this.clock = new FrameClock(synth::getMicrosecondPosition, frameDurationInUs);
 
         measureDurationInBeats = timingEnvironment.getBeatValue().times(timingEnvironment.getBeatsPerMeasure());
         measureDurationTicks = timingEnvironment.ticksInBeat(measureDurationInBeats);
@@ -126,6 +221,81 @@ public class CycleScheduler extends Thread {
 
     public void shutdown() {
         this.running.set(false);
+        for (BlockSlot slot : this.slots)
+            slot.cancelPendingRender();
+        this.compilationExecutorService.shutdown();
+    }
+
+    /**
+     * Set how many measures ahead of the playback the next iteration of a block is rendered.
+     * With a look ahead of {@code 0} the render only starts in the frame before the
+     * iteration starts and any block that takes longer than a frame to execute misses its
+     * loop boundary.
+     *
+     * @param lookAheadMeasures the number of measures to render ahead, at least 0
+     */
+    public void setLookAheadMeasures(int lookAheadMeasures) {
+        if (lookAheadMeasures < 0)
+            throw new IllegalArgumentException("Look ahead cannot be negative: " + lookAheadMeasures);
+        this.lookAheadMeasures = lookAheadMeasures;
+    }
+
+    public int getLookAheadMeasures() {
+        return this.lookAheadMeasures;
+    }
+
+    /**
+     * @return the number of block iterations that were rendered and queued to play
+     */
+    public long getCompletedRenders() {
+        return this.completedRenders.sum();
+    }
+
+    /**
+     * @return the number of completed renders that replayed the previous iteration of an
+     * unchanged, deterministic block instead of executing its code
+     */
+    public long getReplayedRenders() {
+        return this.replayedRenders.sum();
+    }
+
+    /**
+     * @return the number of renders dropped because the block was re-evaluated before
+     * the render finished
+     */
+    public long getCancelledRenders() {
+        return this.cancelledRenders.sum();
+    }
+
+    /**
+     * @return the number of renders that finished after their iteration should have
+     * started playing. Each of them was moved to the next boundary the block is quantized to.
+     */
+    public long getMissedDeadlines() {
+        return this.missedDeadlines.sum();
+    }
+
+    /**
+     * @return the total amount of ticks that late renders were pushed back by to reach
+     * their next boundary
+     */
+    public long getMissedDeadlineTicks() {
+        return this.missedDeadlineTicks.get();
+    }
+
+    /**
+     * @return how late each frame has been flushed since the scheduler started
+     */
+    public LatenessHistogram getLatenessHistogram() {
+        return this.clock.getLateness();
+    }
+
+    /**
+     * @return the estimated amount of microseconds the synth clock has run ahead of
+     * the system clock since the scheduler started, negative if it fell behind
+     */
+    public double getClockDriftUs() {
+        return this.clock.getDriftUs();
     }
 
     private long getNextMeasureStart(long after, SchedulerDirectives directives) {
@@ -160,23 +330,49 @@ public class CycleScheduler extends Thread {
         return firstQuantizedMeasureStart + (after + (quantizedMeasureDurationTicks - (after % quantizedMeasureDurationTicks)));
     }
 
-    private void updateBlock(String name, Function<ActiveBlock, ActiveBlock> updater) {
-        this.activeBlocks.updateAndGet(blocks -> {
-            Map<String, ActiveBlock> newBlocks = new HashMap<>(blocks);
-            newBlocks.computeIfPresent(name, (blockName, oldBlock) -> updater.apply(oldBlock));
-            return newBlocks;
-        });
+    private void addSlot(BlockSlot slot) {
+        synchronized (this.slotsLock) {
+            BlockSlot[] current = this.slots;
+            BlockSlot[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = slot;
+            this.slotsByName.put(slot.name, slot);
+            this.slots = updated;
+        }
+    }
+
+    // Remove a slot that is shutting down unless it was re-evaluated in the meantime
+    private void removeSlot(BlockSlot slot) {
+        synchronized (this.slotsLock) {
+            if (slot.get().state != ActiveState.SHUTTING_DOWN) {
+                slot.removalQueued = false;
+                return;
+            }
+
+            BlockSlot[] current = this.slots;
+            int index = Arrays.asList(current).indexOf(slot);
+            if (index < 0) return;
+
+            BlockSlot[] updated = new BlockSlot[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            this.slotsByName.remove(slot.name, slot);
+            this.slots = updated;
+        }
     }
 
     @Override
     public void run() {
-        // TODO add drift cancellation if receiver transmits sync messages
-
-        long clockStart = TimeUnit.NANOSECONDS.toMicros(System.nanoTime());
-        // System.out.println(this.synth.getMicrosecondPosition());
-        long synthOffset = Math.max(0, this.synth.getMicrosecondPosition()) + this.synth.getLatency();
-        // System.out.println(synthOffset);
-        long frameStartUs = clockStart;
+        // Frames are paced by the synth clock so the offset between the schedule and the
+        // synth timestamps stays fixed, see FrameClock
+        long synthOffset = Math.max(0, this.clock.start()) + this.synth.getLatency();
+        // Created once, the frame loop shouldn't allocate anything it doesn't have to
+        ObjLongConsumer<MidiMessage> send = (msg, time) -> {
+            if (MIDITrack.isNotMeta(msg)) {
+//                if (msg.getStatus() == ShortMessage.NOTE_ON || msg.getStatus() == ShortMessage.NOTE_OFF)
+//                    System.out.println(time + " @ " + DatatypeConverter.printHexBinary(msg.getMessage()));
+                out.send(msg, this.timingEnvironment.ticksToUs(time) + synthOffset);
+            }
+        };
         while (this.running.get()) {
             try {
                 long start = stateTime.getAndAdd(frameDurationInTicks);
@@ -185,100 +381,136 @@ public class CycleScheduler extends Thread {
                 //long nextMeasureStart = stop + (measureDurationTicks - (stop % measureDurationTicks));
                 //System.out.printf("start: %d, stop: %d, nextMeasure: %d%n", start, stop, nextMeasureStart);
 
-                ObjLongConsumer<MidiMessage> send = (msg, time) -> {
-//                    if (msg.getStatus() == ShortMessage.NOTE_ON || msg.getStatus() == ShortMessage.NOTE_OFF)
-//                        System.out.println(time + " @ " + DatatypeConverter.printHexBinary(msg.getMessage()));
-                    out.send(msg, time + synthOffset);
-                };
                 this.flushFrame(start, stop, stop + frameDurationInTicks, send);
 
-                frameStartUs += frameDurationInUs;
-
-                long now = System.nanoTime();
-                TimeUnit.MICROSECONDS.sleep(frameStartUs - TimeUnit.NANOSECONDS.toMicros(now));
+                this.clock.awaitNextFrame();
             } catch (InterruptedException ignored) {
                 this.running.set(false);
             }
         }
     }
 
-    private void startExecutingBlock(ActiveBlock active, long startStateTime) {
-        ActiveBlock nextActive = this.activeBlocks.get().get(active.block.getName());
-        if (nextActive != null && nextActive.state == ActiveState.EXECUTING)
-            return;
-
+    private void startExecutingBlock(BlockSlot slot, ActiveBlock active, long startStateTime) {
         //System.out.printf("Scheduling %s at %d%n", active.block.getName(), startStateTime);
         //System.out.println(active);
 
-        //System.out.println("Compiling " + active.block.getName() + " @ " + startStateTime);
+        // Only the thread that moves the block into EXECUTING starts it
+        ActiveBlock executing = active.withState(ActiveState.EXECUTING);
+        if (!slot.compareAndSet(active, executing))
+            return;
+
+        RenderJob job = new RenderJob(this, slot, executing, startStateTime);
+        slot.pendingRender = job;
+        try {
+            job.future = this.compilationExecutorService.submit(job);
+        } catch (RejectedExecutionException ignored) {
+            // Shutting down
+            return;
+        }
+        // Re-evaluated between publishing the job and submitting it
+        if (job.cancelled) job.future.cancel(false);
+    }
+
+    // Called by the frame loop, which must not wait on `slotsLock`
+    private void queueRemoval(BlockSlot slot) {
+        slot.removalQueued = true;
+        try {
+            this.compilationExecutorService.execute(() -> this.removeSlot(slot));
+        } catch (RejectedExecutionException ignored) {
+            // Shutting down
+        }
+    }
+
+    private void render(RenderJob job) {
+        ActiveBlock active = job.active;
+        MellowDBlock block = active.block;
+
+        // An unchanged deterministic block plays the same thing every iteration, see LoopCache
+        Object[] values = active.loopCache.captureValues(block);
+        MIDITrack nextTrack = active.loopCache.replay(values, job.startStateTime);
+        if (nextTrack != null) {
+            this.replayedRenders.increment();
+        } else {
+            nextTrack = this.execute(job, values);
+            if (nextTrack == null) return;
+        }
+
+        // The frame containing the start was already flushed, move the whole iteration to
+        // the next boundary the block is quantized to rather than playing it part way through.
+        // The frame being flushed right now may still be sending messages before `stateTime`.
+        MIDITrack result = nextTrack;
+        long now = this.stateTime.get();
+        if (job.startStateTime < now) {
+            long shift = this.getNextMeasureStart(now, block.getSchedulerDirectives()) - job.startStateTime;
+            result = nextTrack.shifted(shift);
+            this.missedDeadlines.increment();
+            this.missedDeadlineTicks.addAndGet(shift);
+        }
 
-        this.updateBlock(active.block.getName(), block -> block.withState(ActiveState.EXECUTING));
+        // Only enqueue the result for the code it was rendered from, re-evaluating the
+        // block replaces the state and the render is then superseded
+        MIDITrack finished = result;
+        ActiveBlock updated = job.slot.updateAndGet(b -> b.code == active.code && b.state == ActiveState.EXECUTING
+                ? b.withEnqueuedReplacement(finished)
+                : b);
+        if (updated.code == active.code)
+            this.completedRenders.increment();
+    }
 
+    // Execute the block's code into a new track, returns null if the render was cancelled
+    private MIDITrack execute(RenderJob job, Object[] values) {
+        ActiveBlock active = job.active;
         MellowDBlock block = active.block;
         MIDITrack nextTrack = new MIDITrack(block.getName());
 
-        // TODO save this future and cancel if a reeval before it gets scheduled
-        // TODO the activeBuffer should update it's start time to the frame that it actually ends
-        // up running on incase it runs too late.
-        this.compilationExecutorService.submit(() -> {
-            MIDIChannel channel = block.getMIDIChannel();
-            channel.setTrack(nextTrack);
+        MIDIChannel channel = block.getMIDIChannel();
+        channel.setTrack(nextTrack);
 
-            // Jump to the start of the measure
-            //System.out.printf("%s: %d%n", block.getName(), startStateTime);
-            channel.stepIntoFuture(startStateTime - channel.getStateTime());
+        // Jump to the start of the measure
+        channel.stepIntoFuture(job.startStateTime - channel.getStateTime());
 
-            try {
-                for (Statement statement : active.code)
-                    statement.execute(block, block);
-            } catch (Throwable t) {
-                this.exceptionHandler.accept(block, t);
+        boolean failed = false;
+        try {
+            for (Statement statement : active.code) {
+                if (job.cancelled) return null;
+                statement.execute(block, block);
             }
+        } catch (Throwable t) {
+            if (job.cancelled) return null;
+            failed = true;
+            this.exceptionHandler.accept(block, t);
+        }
 
-            channel.finalizeEOT(Beat.ZERO);
+        channel.finalizeEOT(Beat.ZERO);
+        // Publish the finished track to the scheduler thread
+        nextTrack.seal();
 
-            // TODO if too slow updating wait to replace?
-            this.updateBlock(block.getName(), b -> b.withEnqueuedReplacement(nextTrack));
-        });
+        // Keep executing a failing block so the error is reported every iteration
+        active.loopCache.rendered(failed ? null : values, nextTrack, job.startStateTime);
+        return nextTrack;
     }
 
     private void flushFrame(long start, long stop, long nextFrameStop, ObjLongConsumer<MidiMessage> send) {
-        this.activeBlocks.get().values().forEach(active -> {
+        for (BlockSlot slot : this.slots) {
+            ActiveBlock active = slot.get();
+
             // If there is an active buffer ready, flush this window
-            if (active.activeBuffer != null) {
-                active.activeBuffer.forEachInRange(start, stop, (msg, time) -> {
-                    if (MIDITrack.isNotMeta(msg)) {
-                        //System.out.println(time + " @ " + DatatypeConverter.printHexBinary(msg.getMessage()));
-                        send.accept(msg, this.timingEnvironment.ticksToUs(time));
-                    }
-                });
-            }
+            if (active.activeBuffer != null)
+                active.activeBuffer.forEachInRange(start, stop, send);
 
             long activeEnd = active.activeBuffer == null ? -1 : active.activeBuffer.endTimeStamp();
             if (active.queuedReplacementBuffer != null) {
                 // TODO this currently merges the tracks?
                 // There is a replacement and this one finished mid frame
-                active.queuedReplacementBuffer.forEachInRange(start/*activeEnd*/, stop, (msg, time) -> {
-                    if (MIDITrack.isNotMeta(msg)) {
-                        // System.out.println(time + " @ " + DatatypeConverter.printHexBinary(msg.getMessage()));
-                        send.accept(msg, this.timingEnvironment.ticksToUs(time));
-                    }
-                });
+                active.queuedReplacementBuffer.forEachInRange(start/*activeEnd*/, stop, send);
                 if (activeEnd < stop) {
-                    this.activeBlocks.updateAndGet(blocks -> {
-                        //System.out.println("Updated " + active.block.getName());
-                        Map<String, ActiveBlock> newBlocks = new HashMap<>(blocks);
-                        newBlocks.put(active.block.getName(), new ActiveBlock(active.block, active.code, active.queuedReplacementBuffer, null, ActiveState.READY));
-                        return newBlocks;
-                    });
+                    //System.out.println("Updated " + active.block.getName());
+                    slot.compareAndSet(active, new ActiveBlock(active.block, active.code, active.queuedReplacementBuffer, null, ActiveState.READY, active.loopCache));
                 }
             } else {
                 if (active.state == ActiveState.SHUTTING_DOWN) {
-                    this.activeBlocks.updateAndGet(blocks -> {
-                        Map<String, ActiveBlock> newBlocks = new HashMap<>(blocks);
-                        newBlocks.remove(active.block.getName());
-                        return newBlocks;
-                    });
+                    if (!slot.removalQueued)
+                        this.queueRemoval(slot);
                 } else {
                     // Recompile the block
                     //if (activeEnd < stop) {
@@ -287,14 +519,16 @@ public class CycleScheduler extends Thread {
                             activeEnd += 1;
                     }
                     long nextMeasureStart = this.getNextMeasureStart(activeEnd, active.block.getSchedulerDirectives());
-                    // The next frame contains the start so now is the time to start executing the next frame
-                    if (nextMeasureStart < nextFrameStop || active.state == ActiveState.INITIALIZING) {
-                        this.startExecutingBlock(active, nextMeasureStart);
+                    // The start is within the look ahead window so now is the time to start executing the next iteration
+                    if ((nextMeasureStart < nextFrameStop + this.lookAheadMeasures * this.measureDurationTicks
+                            || active.state == ActiveState.INITIALIZING)
+                            && active.state != ActiveState.EXECUTING) {
+                        this.startExecutingBlock(slot, active, nextMeasureStart);
                     }
                     //}
                 }
             }
-        });
+        }
     }
 
     /*
@@ -350,29 +584,24 @@ public class CycleScheduler extends Thread {
         });
      */
     public void updateBlocks(Collection<MellowDBlock> blocks) {
-        this.activeBlocks.updateAndGet(oldBlocks -> {
-            Map<String, ActiveBlock> newBlocks = new HashMap<>(oldBlocks.size());
-
-            blocks.forEach(newBlock -> {
-                ActiveBlock oldActiveBlock = oldBlocks.get(newBlock.getName());
-                Statement[] newCode = newBlock.getCode();
-                newBlock.clearCode();
-                if (oldActiveBlock != null) {
-                    newBlocks.put(newBlock.getName(), new ActiveBlock(newBlock, newCode, oldActiveBlock.activeBuffer, null, ActiveState.INITIALIZING));
+        blocks.forEach(newBlock -> {
+            // Take the code before any CAS, an updater may run more than once
+            Statement[] newCode = newBlock.getCode();
+            newBlock.clearCode();
+            LoopCache loopCache = LoopCache.analyze(newCode);
+
+            // Holding the lock stops a queued removal from dropping a slot as it is re-evaluated
+            synchronized (this.slotsLock) {
+                BlockSlot slot = this.slotsByName.get(newBlock.getName());
+                if (slot != null) {
+                    // Whatever was being rendered for the old code is superseded
+                    slot.cancelPendingRender();
+                    slot.updateAndGet(old -> new ActiveBlock(newBlock, newCode, old.activeBuffer, null, ActiveState.INITIALIZING, loopCache));
                 } else {
-                    ActiveBlock newActiveBlock = new ActiveBlock(newBlock, newCode, null, null, ActiveState.INITIALIZING);
-                    newBlocks.put(newBlock.getName(), newActiveBlock);
+                    this.addSlot(new BlockSlot(new ActiveBlock(newBlock, newCode, null, null, ActiveState.INITIALIZING, loopCache)));
                     //TODO ? this.startExecutingBlock(newActiveBlock, this.stateTime.get());
                 }
-            });
-
-            oldBlocks.forEach((name, block) -> {
-                if (!newBlocks.containsKey(name)) {
-                    newBlocks.put(name, block);
-                }
-            });
-
-            return newBlocks;
+            }
         });
 
         Set<String> updated = blocks.stream().map(MellowDBlock::getName).collect(Collectors.toSet());
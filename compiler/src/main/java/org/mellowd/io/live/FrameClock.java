@@ -0,0 +1,117 @@
+package org.mellowd.io.live;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+// The clock that paces the frames of the `CycleScheduler`. Messages are sent to the synth
+// timestamped against its own clock so frames must be flushed by that clock too. The
+// synth clock is driven by the audio device and drifts against the system clock, over a
+// long set that is enough to eat the synth's latency headroom (notes play late) or pile
+// up ever further ahead of it.
+//
+// Every frame the elapsed synth time is compared to the elapsed wall time. The difference
+// between two clocks running at slightly different rates grows steadily, so an average of
+// it would always lag behind by a fixed amount. Instead an alpha-beta filter tracks both
+// the drift and the rate it is growing at, and each deadline is shifted by the drift
+// extrapolated to that frame. The error of the estimate goes to zero for a constant rate.
+// The synth position only moves in audio buffer sized steps so it is smoothed rather than
+// followed directly.
+//
+// Parking a thread routinely overshoots by tens to hundreds of microseconds so the thread
+// is parked until the last `SPIN_THRESHOLD_NS` before the deadline and spins from there.
+final class FrameClock {
+    static final long SPIN_THRESHOLD_NS = TimeUnit.MICROSECONDS.toNanos(300);
+    private static final double DRIFT_SMOOTHING = 1d / 32d;
+    // Critically damped for the drift smoothing
+    private static final double RATE_SMOOTHING = DRIFT_SMOOTHING * DRIFT_SMOOTHING / (2 - DRIFT_SMOOTHING);
+
+    private final LongSupplier synthPositionUs;
+    private final LongSupplier nanoTime;
+    private final long frameDurationNs;
+    private final LatenessHistogram lateness;
+
+    private long startNs;
+    private long synthStartUs;
+    private long frame;
+    private long sampleWallUs;
+    private volatile double driftUs;
+    // Microseconds of drift per microsecond of wall time
+    private double driftRate;
+
+    FrameClock(LongSupplier synthPositionUs, long frameDurationUs) {
+        this(synthPositionUs, System::nanoTime, frameDurationUs);
+    }
+
+    FrameClock(LongSupplier synthPositionUs, LongSupplier nanoTime, long frameDurationUs) {
+        this.synthPositionUs = synthPositionUs;
+        this.nanoTime = nanoTime;
+        this.frameDurationNs = TimeUnit.MICROSECONDS.toNanos(frameDurationUs);
+        this.lateness = new LatenessHistogram();
+    }
+
+    // Start counting frames from now. Returns the synth position at the start or
+    // a negative number if the synth doesn't report its position.
+    long start() {
+        this.startNs = this.nanoTime.getAsLong();
+        this.synthStartUs = this.synthPositionUs.getAsLong();
+        this.frame = 0;
+        this.sampleWallUs = 0;
+        this.driftUs = 0;
+        this.driftRate = 0;
+        return this.synthStartUs;
+    }
+
+    // Advance to the next frame and return its deadline in `nanoTime`
+    long nextDeadline() {
+        this.frame++;
+        sampleDrift();
+
+        // The synth reaches the frame when the wall time plus the drift by then is the
+        // frame's time, a synth running ahead of the wall clock reaches each frame sooner
+        double frameUs = this.frame * (double) TimeUnit.NANOSECONDS.toMicros(this.frameDurationNs);
+        double driftAtFrameUs = (this.driftUs + this.driftRate * (frameUs - this.sampleWallUs)) / (1 + this.driftRate);
+        return this.startNs + this.frame * this.frameDurationNs - (long) (driftAtFrameUs * 1000);
+    }
+
+    private void sampleDrift() {
+        long synthNowUs = this.synthPositionUs.getAsLong();
+        if (synthNowUs < 0 || this.synthStartUs < 0) return;
+
+        long wallElapsedUs = TimeUnit.NANOSECONDS.toMicros(this.nanoTime.getAsLong() - this.startNs);
+        long synthElapsedUs = synthNowUs - this.synthStartUs;
+        long sinceSampleUs = wallElapsedUs - this.sampleWallUs;
+        if (sinceSampleUs <= 0) return;
+
+        double predictedUs = this.driftUs + this.driftRate * sinceSampleUs;
+        double residualUs = (synthElapsedUs - wallElapsedUs) - predictedUs;
+        this.driftUs = predictedUs + residualUs * DRIFT_SMOOTHING;
+        this.driftRate += residualUs * RATE_SMOOTHING / sinceSampleUs;
+        this.sampleWallUs = wallElapsedUs;
+    }
+
+    // Block until the next frame should be flushed and record how late the wake up was
+    void awaitNextFrame() throws InterruptedException {
+        long deadline = nextDeadline();
+
+        long remaining;
+        while ((remaining = deadline - this.nanoTime.getAsLong()) > SPIN_THRESHOLD_NS) {
+            LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NS);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+        while (deadline - this.nanoTime.getAsLong() > 0) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            Thread.onSpinWait();
+        }
+
+        this.lateness.record(TimeUnit.NANOSECONDS.toMicros(this.nanoTime.getAsLong() - deadline));
+    }
+
+    double getDriftUs() {
+        return this.driftUs;
+    }
+
+    LatenessHistogram getLateness() {
+        return this.lateness;
+    }
+}
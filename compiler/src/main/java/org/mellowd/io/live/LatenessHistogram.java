@@ -0,0 +1,97 @@
+package org.mellowd.io.live;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of how late the frames of a {@link CycleScheduler} were flushed. Lateness
+ * is recorded in microseconds into power of 2 buckets, bucket {@code 0} holds frames that
+ * were on time and bucket {@code i} holds lateness in {@code [2^(i-1), 2^i)}. Recording
+ * doesn't allocate or lock so it is safe to do from the scheduler thread while another
+ * thread reads the histogram.
+ */
+public class LatenessHistogram {
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong total;
+    private final AtomicLong max;
+
+    public LatenessHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.total = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    static int bucketOf(long latenessUs) {
+        if (latenessUs <= 0) return 0;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(latenessUs));
+    }
+
+    /**
+     * The smallest lateness that is not in the bucket.
+     */
+    static long upperBoundOf(int bucket) {
+        return bucket == 0 ? 1 : 1L << bucket;
+    }
+
+    public void record(long latenessUs) {
+        this.counts.incrementAndGet(bucketOf(latenessUs));
+        this.total.incrementAndGet();
+        this.max.accumulateAndGet(latenessUs, Math::max);
+    }
+
+    public long getCount() {
+        return this.total.get();
+    }
+
+    public long getMaxUs() {
+        return this.max.get();
+    }
+
+    public long getCount(int bucket) {
+        return this.counts.get(bucket);
+    }
+
+    /**
+     * Get an upper bound for the lateness of the given fraction of frames. For
+     * example {@code percentileUs(0.99)} is a lateness that at least 99% of the frames
+     * were flushed within.
+     *
+     * @param fraction the fraction of frames, between 0 and 1
+     * @return the upper bound of the bucket containing the percentile in microseconds
+     */
+    public long percentileUs(double fraction) {
+        long count = getCount();
+        if (count == 0) return 0;
+
+        long needed = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += this.counts.get(bucket);
+            if (seen >= needed)
+                return upperBoundOf(bucket);
+        }
+        return upperBoundOf(BUCKETS - 1);
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+            this.counts.set(bucket, 0);
+        this.total.set(0);
+        this.max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("frames: %d, p50 < %d us, p99 < %d us, max: %d us%n",
+                getCount(), percentileUs(0.5), percentileUs(0.99), getMaxUs()));
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            long count = this.counts.get(bucket);
+            if (count == 0) continue;
+            sb.append(String.format("\t< %8d us: %d%n", upperBoundOf(bucket), count));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package org.mellowd.io.live;
+
+import org.mellowd.compiler.MellowDBlock;
+import org.mellowd.intermediate.Closure;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.statements.Statement;
+import org.mellowd.intermediate.variables.Memory;
+import org.mellowd.midi.MIDITrack;
+
+import java.util.*;
+
+// Remembers the last render of a live block so that an unchanged block can be looped by
+// replaying that render shifted to the start of the next iteration instead of executing
+// its code again.
+//
+// A replay is only used if all of the following hold:
+//
+// * Every statement in the code is deterministic, there are no `once` or `sync`
+//   statements.
+// * The values of the free variables of the code are equal to their values when the last
+//   render started. Any functions among them, and the functions those captured, are
+//   deterministic. Plugin functions are not unless they say so.
+// * The last 2 renders were identical apart from their start time. This catches state
+//   that is carried from one iteration to the next by the channel or the block, like a
+//   note that is held into the next iteration or a relative octave shift.
+//
+// One cache belongs to one version of a block's code and it is only used by the thread
+// rendering that block so it doesn't need any synchronization.
+final class LoopCache {
+    private final QualifiedName[] freeVariables;
+
+    private Object[] lastValues;
+    private MIDITrack lastRender;
+    private long lastStart;
+    private boolean verified;
+
+    private LoopCache(QualifiedName[] freeVariables) {
+        this.freeVariables = freeVariables;
+    }
+
+    static LoopCache analyze(Statement[] code) {
+        Set<QualifiedName> free = new LinkedHashSet<>();
+        for (Statement statement : code) {
+            if (!statement.isDeterministic())
+                return new LoopCache(null);
+            free.addAll(statement.getFreeVariables());
+        }
+        return new LoopCache(free.toArray(new QualifiedName[0]));
+    }
+
+    boolean isCacheable() {
+        return this.freeVariables != null;
+    }
+
+    // The current values of the free variables as seen by the block or null if the
+    // block cannot be looped with them
+    Object[] captureValues(MellowDBlock block) {
+        if (this.freeVariables == null) return null;
+
+        Memory memory = block.getMemory();
+        Object[] values = new Object[this.freeVariables.length];
+        for (int i = 0; i < values.length; i++) {
+            Object value = memory.get(this.freeVariables[i]);
+            if (!isDeterministic(value, Collections.newSetFromMap(new IdentityHashMap<>())))
+                return null;
+            values[i] = value;
+        }
+        return values;
+    }
+
+    private static boolean isDeterministic(Object value, Set<Closure> seen) {
+        if (!(value instanceof Closure closure)) return true;
+        if (!seen.add(closure)) return true;
+
+        if (!closure.getAbstraction().getBody().isDeterministic())
+            return false;
+
+        Memory captured = closure.getCaptured();
+        for (QualifiedName name : closure.getAbstraction().getFreeVariables()) {
+            if (!isDeterministic(captured.get(name), seen))
+                return false;
+        }
+        return true;
+    }
+
+    // The last render moved to `start` if it can be played in place of executing the code
+    // with the given `values`, otherwise null
+    MIDITrack replay(Object[] values, long start) {
+        if (!this.verified || values == null || !Arrays.equals(values, this.lastValues))
+            return null;
+        return this.lastRender.shifted(start - this.lastStart);
+    }
+
+    // Record a render of the code that started at `start` when the free variables had the `values`
+    void rendered(Object[] values, MIDITrack render, long start) {
+        this.verified = values != null
+                && this.lastRender != null
+                && Arrays.equals(values, this.lastValues)
+                && render.isShiftOf(this.lastRender, start - this.lastStart);
+
+        this.lastValues = values;
+        this.lastRender = render;
+        this.lastStart = start;
+    }
+}
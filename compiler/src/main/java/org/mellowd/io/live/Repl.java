@@ -5,7 +5,6 @@ import org.mellowd.io.Compiler;
 import org.mellowd.io.*;
 import org.mellowd.midi.TimingEnvironment;
 
-import javax.sound.midi.MidiSystem;
 import java.io.File;
 import java.util.Scanner;
 
@@ -19,7 +18,7 @@ public class Repl {
         TimingEnvironment timingEnvironment = new TimingEnvironment(4, 4, 120);
 
         MellowD mellowD = new MellowD(srcFinder, timingEnvironment);
-        MellowDSession session = new MellowDSession(mellowD, MidiSystem.getSynthesizer(), workingDir);
+        MellowDSession session = new MellowDSession(mellowD, SynthPool.getInstance().borrow(), workingDir);
 
         Scanner in = new Scanner(System.in);
         System.out.print("mellowd > ");
@@ -7,6 +7,8 @@ import org.antlr.v4.runtime.TokenStream;
 import org.mellowd.compiler.*;
 import org.mellowd.io.Compiler;
 import org.mellowd.io.DirectorySourceFinder;
+import org.mellowd.io.SoundbankCache;
+import org.mellowd.io.SynthPool;
 
 import javax.sound.midi.*;
 import java.io.Closeable;
@@ -26,7 +28,7 @@ public class MellowDKernel implements Closeable {
         this.mellowD = mellowD;
         this.compiler = new MellowDCompiler(mellowD);
         this.workingDirectory = Paths.get(workingDirectory);
-        this.synth = MidiSystem.getSynthesizer();
+        this.synth = SynthPool.getInstance().borrow();
     }
 
     private String formatPath(Path path) {
@@ -64,11 +66,13 @@ public class MellowDKernel implements Closeable {
             return;
         }
 
-        System.out.printf("Loading sound font '%s'...\n", formatPath(path));
+        SoundbankCache soundbanks = SoundbankCache.getInstance();
+        if (!soundbanks.contains(soundFontFile))
+            System.out.printf("Loading sound font '%s'...\n", formatPath(path));
 
         Soundbank soundbank;
         try {
-            soundbank = MidiSystem.getSoundbank(soundFontFile);
+            soundbank = soundbanks.get(soundFontFile);
         } catch (InvalidMidiDataException e) {
             System.err.printf("Invalid sound font '%s'. Problem: %s\n",
                     soundFontFile.getName(), e.getLocalizedMessage());
@@ -124,6 +128,6 @@ public class MellowDKernel implements Closeable {
 
     @Override
     public void close() throws IOException {
-
+        SynthPool.getInstance().release(this.synth);
     }
 }
@@ -0,0 +1,107 @@
+//Compiled Phrase
+//===============
+
+package org.mellowd.midi;
+
+import org.mellowd.intermediate.functions.operations.Articulatable;
+import org.mellowd.primitives.*;
+
+import java.util.*;
+
+//A `CompiledPhrase` is a phrase flattened into parallel arrays so that a
+//[MIDIChannel](../MIDIChannel.html) can play it in a single loop without creating
+//a sound for every note. Element `i` of the phrase plays the pitches in
+//`pitchSets[pitchSet[i]]` with the articulation `articulations[i]` for `ticks[i]`
+//ticks and then steps the channel forward by the beat
+//<sup>beatNumerators[i]</sup>&frasl;<sub>beatDenominators[i]</sub>.
+//
+//Phrases are usually made of a handful of distinct notes and chords so the pitches
+//are stored once in `pitchSets` and each element refers to them by index. The tick
+//durations depend on the resolution of the `TimingEnvironment` the phrase was compiled
+//for, a phrase must be compiled again to be played in a different environment.
+public final class CompiledPhrase {
+    private static final Articulation[] ARTICULATIONS = Articulation.values();
+
+    final TimingEnvironment timingEnvironment;
+    final int size;
+    final Pitch[][] pitchSets;
+    final int[] pitchSet;
+    final byte[] articulations;
+    final long[] ticks;
+    final long[] beatNumerators;
+    final long[] beatDenominators;
+    final boolean[] slurred;
+
+    //Compile the phrase that plays `melody` with `rhythm`. Like a phrase, the shorter of
+    //the two is repeated until the longer one is finished.
+    public static CompiledPhrase compile(Melody melody, Rhythm rhythm, TimingEnvironment timingEnvironment) {
+        int numBeats = rhythm.size();
+        int numNotes = melody.size();
+        int size = numBeats == 0 || numNotes == 0 ? 0 : Math.max(numBeats, numNotes);
+
+        int[] pitchSet = new int[size];
+        byte[] articulations = new byte[size];
+        long[] ticks = new long[size];
+        long[] beatNumerators = new long[size];
+        long[] beatDenominators = new long[size];
+        boolean[] slurred = new boolean[size];
+
+        //Pitch sets are shared by identity, the rest is equal to the lowest pitch
+        Map<Articulatable, Integer> pitchSetIndices = new IdentityHashMap<>();
+        List<Pitch[]> pitchSets = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Articulated sound = melody.getElementAtIndex(i);
+            Beat beat = rhythm.getAtIndex(i);
+
+            Articulatable element = sound.getElement();
+            Integer index = pitchSetIndices.get(element);
+            if (index == null) {
+                index = pitchSets.size();
+                pitchSets.add(element instanceof Chord chord
+                        ? chord.getPitches().toArray(new Pitch[0])
+                        : new Pitch[]{ (Pitch) element });
+                pitchSetIndices.put(element, index);
+            }
+
+            pitchSet[i] = index;
+            articulations[i] = (byte) sound.getArticulation().ordinal();
+            ticks[i] = timingEnvironment.ticksInBeat(beat);
+            beatNumerators[i] = beat.getNumerator();
+            beatDenominators[i] = beat.getDenominator();
+            slurred[i] = beat.isSlurred();
+        }
+
+        return new CompiledPhrase(timingEnvironment, size, pitchSets.toArray(new Pitch[0][]),
+                pitchSet, articulations, ticks, beatNumerators, beatDenominators, slurred);
+    }
+
+    private CompiledPhrase(TimingEnvironment timingEnvironment, int size, Pitch[][] pitchSets,
+                           int[] pitchSet, byte[] articulations, long[] ticks,
+                           long[] beatNumerators, long[] beatDenominators, boolean[] slurred) {
+        this.timingEnvironment = timingEnvironment;
+        this.size = size;
+        this.pitchSets = pitchSets;
+        this.pitchSet = pitchSet;
+        this.articulations = articulations;
+        this.ticks = ticks;
+        this.beatNumerators = beatNumerators;
+        this.beatDenominators = beatDenominators;
+        this.slurred = slurred;
+    }
+
+    public TimingEnvironment getTimingEnvironment() {
+        return this.timingEnvironment;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int getNumPitchSets() {
+        return this.pitchSets.length;
+    }
+
+    Articulation getArticulation(int index) {
+        return ARTICULATIONS[this.articulations[index]];
+    }
+}
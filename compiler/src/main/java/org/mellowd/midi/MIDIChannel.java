@@ -1,6 +1,7 @@
 package org.mellowd.midi;
 
 import org.mellowd.io.Compiler;
+import org.mellowd.primitives.Articulation;
 import org.mellowd.primitives.Beat;
 import org.mellowd.primitives.Dynamic;
 import org.mellowd.primitives.Pitch;
@@ -35,64 +36,41 @@ public class MIDIChannel {
         }
     }
 
-    public static class ScheduledAction {
-        private Runnable action;
-        public final long stateTime;
-
-        public ScheduledAction(Runnable action, long stateTime) {
-            this.action = action;
-            this.stateTime = stateTime;
-        }
-
-        public ScheduledAction andThen(Runnable run) {
-            Runnable old = this.action;
-            this.action = () -> {
-                old.run();
-                run.run();
-            };
-            return this;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            ScheduledAction that = (ScheduledAction) o;
-
-            return stateTime == that.stateTime && action == that.action;
-        }
-
-        @Override
-        public int hashCode() {
-            int result = action.hashCode();
-            result = 31 * result + (int) (stateTime ^ (stateTime >>> 32));
-            return result;
-        }
-
-        @Override
-        public String toString() {
-            return "ScheduledAction{" +
-                    "action=" + action +
-                    ", stateTime=" + stateTime +
-                    '}';
-        }
-    }
+    // The kinds of actions that can be scheduled for later, see `ScheduledActionWheel`
+    private static final byte ACTION_RUN = 0;
+    private static final byte ACTION_NOTE_OFF = 1;
+    private static final byte ACTION_SET_DYNAMIC = 2;
+    private static final byte ACTION_PITCH_BEND = 3;
 
     public static final int DEFAULT_OFF_VELOCITY = 96;
 
+    // How each articulation changes the velocity of its notes, see `playSound`
+    private static final int STACCATISSIMO_VOLUME_INCREASE = 8;
+    private static final int MARCATO_VOLUME_INCREASE = 12;
+    private static final int ACCENT_VOLUME_INCREASE = 16;
+    private static final int ACCENT_OFF_VELOCITY = 113;
+    private static final int TENUTO_OFF_VELOCITY = GeneralMidiConstants.MIN_VELOCITY + 1;
+    //The amount to bend the pitch each glissando step
+    private static final int GLISCANDO_BEND_AMT = 128;
+    private static final int GLISCANDO_BEND_STEPS = 16;
+
     private volatile MIDITrack midiTrack;
     private final boolean percussion;
     private final int channelNum;
     private final TimingEnvironment timingEnvironment;
-    private SortedMap<Long, ScheduledAction> scheduledActions;
-    private final PitchIndexedArray<MidiEvent> noteOffEvents;
+    private final ScheduledActionWheel scheduledActions;
+    // The tick and packed message of the last note off emitted for each midi note, -1 if there is none
+    private final long[] noteOffTicks;
+    private final int[] noteOffMessages;
     private final PitchIndexedArray<NoteState> noteStates;
 
     private int instrument = GeneralMidiInstrument.ACOUSTIC_GRAND_PIANO.midiNum();
     private int soundBank = GeneralMidiConstants.DEFAULT_SOUND_BANK;
     private Dynamic dynamic = Dynamic.mf; //The dynamic is mf by default
     private long stateTime = 0L;
+    //The fraction of a tick the beats stepped through so far were longer than `stateTime`
+    private long tickCarryNumerator = 0L;
+    private long tickCarryDenominator = 1L;
     private int pitchBend = GeneralMidiConstants.NO_PITCH_BEND;
     private final Map<MIDIControl<? extends MIDIController>, MIDIController> controllers;
     private int octaveShift = 0;
@@ -106,11 +84,13 @@ public class MIDIChannel {
         this.percussion = percussion;
         this.channelNum = channelNum;
         this.timingEnvironment = timingEnvironment;
-        this.scheduledActions = new TreeMap<>(Long::compare);
+        this.scheduledActions = new ScheduledActionWheel();
         this.controllers = new HashMap<>();
 
         this.noteStates = new PitchIndexedArray<>(NoteState.OFF);
-        this.noteOffEvents = new PitchIndexedArray<>();
+        this.noteOffTicks = new long[128];
+        this.noteOffMessages = new int[128];
+        Arrays.fill(this.noteOffTicks, -1L);
     }
 
     public MIDITrack replaceTrack(MIDITrack newTrack) {
@@ -122,16 +102,10 @@ public class MIDIChannel {
         this.midiTrack = newTrack;
 
         // Reschedule all of the actions to be relative to the new reset time
-        SortedMap<Long, ScheduledAction> rolledBackActions = new TreeMap<>(Long::compare);
-        this.scheduledActions.values().forEach(action -> {
-            long rolledBackTime = action.stateTime - timeDiff;
-            ScheduledAction rolledBackAction = new ScheduledAction(action.action, rolledBackTime);
-            rolledBackActions.put(rolledBackTime, rolledBackAction);
-        });
-        this.scheduledActions = rolledBackActions;
+        this.scheduledActions.shift(-timeDiff);
 
         // Clear the note off events because they don't exist on the new track
-        this.noteOffEvents.setAll(null);
+        Arrays.fill(this.noteOffTicks, -1L);
 
         // Turn on all notes that should be on at the average velocity
         // TODO this velocity should not be arbitrary. Consider even excluding this and leaving the notes off
@@ -196,6 +170,22 @@ public class MIDIChannel {
             this.midiTrack.add(event);
     }
 
+    private void addPackedMessage(int packedMessage, boolean overrideMute) {
+        if (overrideMute || !muted)
+            this.midiTrack.add(getStateTime(), packedMessage);
+    }
+
+    // Pack a note on or off message after performing the same validation as `ShortMessage`.
+    // The error message is only built when the data is invalid so that emitting a note
+    // doesn't allocate.
+    private int packNoteMessage(int command, int midiNum, int velocity) {
+        if ((midiNum & ~0x7F) != 0 || (velocity & ~0x7F) != 0)
+            throw new MidiRuntimeException("Cannot turn note " + (command == ShortMessage.NOTE_ON ? "on" : "off")
+                    + " (" + midiNum + ") with dynamic of " + velocity + ".",
+                    new InvalidMidiDataException("Data out of range: " + midiNum + ", " + velocity));
+        return MIDITrack.packShortMessage(command | this.channelNum, midiNum, velocity, 3);
+    }
+
     public long getStateTime() {
         return stateTime;
     }
@@ -257,18 +247,211 @@ public class MIDIChannel {
     public synchronized final long stepIntoFuture(long stateTimeMod) {
         long newTime = this.stateTime + stateTimeMod;
 
-        Long earliest;
-        while (!scheduledActions.isEmpty()
-                && (earliest = scheduledActions.firstKey()) <= newTime) {
-            this.stateTime = earliest;
-            scheduledActions.remove(earliest).action.run();
+        int entry;
+        while ((entry = scheduledActions.poll(newTime)) >= 0) {
+            this.stateTime = scheduledActions.tick(entry);
+            byte kind = scheduledActions.kind(entry);
+            int payload = scheduledActions.payload(entry);
+            Object ref = scheduledActions.ref(entry);
+            scheduledActions.release(entry);
+
+            switch (kind) {
+                case ACTION_NOTE_OFF:
+                    emitNoteOff(payload);
+                    break;
+                case ACTION_SET_DYNAMIC:
+                    setDynamic(Dynamic.getDynamic(payload));
+                    break;
+                case ACTION_PITCH_BEND:
+                    setPitchBend(payload);
+                    break;
+                default:
+                    ((Runnable) ref).run();
+                    break;
+            }
         }
+        scheduledActions.advanceTo(newTime);
 
         return this.stateTime = newTime;
     }
 
+    //Stepping by a beat carries the fraction of a tick that doesn't fit in the beat's
+    //whole ticks into the next step. Seven notes of a 7:4 quarter note tuplet then step
+    //exactly 4 quarter notes instead of losing part of a tick on every note.
     public synchronized final long stepIntoFuture(Beat beat) {
-        return stepIntoFuture(this.timingEnvironment.ticksInBeat(beat));
+        return stepIntoFuture(beat.getNumerator(), beat.getDenominator());
+    }
+
+    //Step forward by <sup>numerator</sup>&frasl;<sub>denominator</sub> quarter notes.
+    //The beat's ticks are reduced before the carried fraction is added to them over their
+    //least common denominator so the carry's denominator only grows to the least common
+    //multiple of the tuplets played. If even that overflows (which takes several huge,
+    //co-prime denominators) the carry is rounded to the nearest
+    //<sup>1</sup>&frasl;<sub>beatDenominator</sub> of a tick, which is less than half a tick.
+    private long stepIntoFuture(long numerator, long denominator) {
+        long beatNumerator = this.timingEnvironment.getPPQ() * numerator;
+        long reduce = TimingEnvironment.gcd(beatNumerator, denominator);
+        beatNumerator /= reduce;
+        long beatDenominator = denominator / reduce;
+
+        long tickNumerator;
+        long tickDenominator;
+        try {
+            long common = TimingEnvironment.gcd(beatDenominator, this.tickCarryDenominator);
+            tickNumerator = Math.addExact(
+                    Math.multiplyExact(beatNumerator, this.tickCarryDenominator / common),
+                    Math.multiplyExact(this.tickCarryNumerator, beatDenominator / common));
+            tickDenominator = Math.multiplyExact(beatDenominator / common, this.tickCarryDenominator);
+        } catch (ArithmeticException e) {
+            long roundedCarry = Math.round((double) this.tickCarryNumerator / this.tickCarryDenominator * beatDenominator);
+            tickNumerator = beatNumerator + roundedCarry;
+            tickDenominator = beatDenominator;
+        }
+
+        long carry = tickNumerator % tickDenominator;
+        long gcd = TimingEnvironment.gcd(carry, tickDenominator);
+        this.tickCarryNumerator = carry / gcd;
+        this.tickCarryDenominator = tickDenominator / gcd;
+
+        return stepIntoFuture(tickNumerator / tickDenominator);
+    }
+
+    //Play a [CompiledPhrase](../CompiledPhrase.html). Each element is played with its
+    //articulation and then the channel steps forward by its beat. Slurred runs of beats
+    //are played with the sustain pedal down. The slur always ends with the phrase as it
+    //cannot cross a phrase boundary.
+    public synchronized void play(CompiledPhrase phrase) {
+        if (phrase.size == 0) return;
+
+        Pedal sustainPedal = getController(MIDIControl.SUSTAIN);
+        boolean lastSlurred = false;
+        for (int i = 0; i < phrase.size; i++) {
+            boolean slurred = phrase.slurred[i];
+            if (slurred && !lastSlurred) {
+                //This note is the first is a section of slurred components
+                sustainPedal.press();
+                setSlurred(true);
+            } else if (!slurred && lastSlurred) {
+                //This note is the first of a section of non-slurred components
+                setSlurred(false);
+                sustainPedal.release();
+            }
+
+            playSound(phrase.pitchSets[phrase.pitchSet[i]], phrase.getArticulation(i), phrase.ticks[i],
+                    phrase.beatNumerators[i], phrase.beatDenominators[i], true);
+
+            lastSlurred = slurred;
+        }
+
+        setSlurred(false);
+        sustainPedal.release();
+    }
+
+    //Play `pitches` together for the `duration` with the `articulation` and step
+    //forward by the `duration`.
+    public synchronized void playSound(Pitch[] pitches, Articulation articulation, Beat duration) {
+        playSound(pitches, articulation, ticksInBeat(duration), duration.getNumerator(), duration.getDenominator(), true);
+    }
+
+    //Play `pitches` as a gliscando, bending the pitch up or down.
+    public synchronized void playGliscando(Pitch[] pitches, Beat duration, boolean bendUp) {
+        playSound(pitches, Articulation.GLISCANDO, ticksInBeat(duration), duration.getNumerator(), duration.getDenominator(), bendUp);
+    }
+
+    private void playSound(Pitch[] pitches, Articulation articulation, long tickDuration,
+                           long beatNumerator, long beatDenominator, boolean bendUp) {
+        switch (articulation) {
+            default:
+                playNotes(pitches, 0, tickDuration, DEFAULT_OFF_VELOCITY);
+                stepIntoFuture(beatNumerator, beatDenominator);
+                break;
+            case STACCATO: {
+                Knob releaseTime = getController(MIDIControl.RELEASE_TIME);
+                releaseTime.twist(128 / 4);
+
+                //Staccato makes the performance short and choppy. Described in jazz
+                //as `dit`. To achieve this effect the duration will be chopped to a
+                //forth of its value and the note will be ended very quickly.
+                playNotes(pitches, 0, tickDuration / 4, GeneralMidiConstants.MAX_VELOCITY);
+                stepIntoFuture(beatNumerator, beatDenominator);
+
+                releaseTime.twist(128 / 2);
+                break;
+            }
+            case STACCATISSIMO: {
+                Knob releaseTime = getController(MIDIControl.RELEASE_TIME);
+                releaseTime.twist(0);
+
+                //Staccatissimo makes the performance short but more powerful. It is
+                //given some more emphasis. It is similar to staccato but the duration
+                //is going to be chopped to a third (rather than a forth) and it will be
+                //played with a bit more velocity.
+                playNotes(pitches, STACCATISSIMO_VOLUME_INCREASE, tickDuration / 3, GeneralMidiConstants.MAX_VELOCITY);
+                stepIntoFuture(beatNumerator, beatDenominator);
+
+                releaseTime.twist(128 / 2);
+                break;
+            }
+            case MARCATO: {
+                Knob releaseTime = getController(MIDIControl.RELEASE_TIME);
+                Knob attackTime = getController(MIDIControl.ATTACK_TIME);
+                attackTime.twist(10);
+                releaseTime.twist(60);
+
+                //Marcato is the same a staccato but with more power. It is referred to
+                //as `dhat` by jazz musicians and to preform a note with articulated with marcato
+                //the note's duration will be chopped to a third, the velocity will be increased
+                //and the note will be release very quickly.
+                playNotes(pitches, MARCATO_VOLUME_INCREASE, tickDuration / 3, GeneralMidiConstants.MAX_VELOCITY);
+                stepIntoFuture(beatNumerator, beatDenominator);
+
+                attackTime.twist(0);
+                releaseTime.twist(128 / 2);
+                break;
+            }
+            case ACCENT:
+                //An accent is played by attacking the note. This gives it a much faster velocity and
+                //will also drop off a bit quicker than the average note. This is sometimes referred to
+                //as `dah` by jazz musicians.
+                playNotes(pitches, ACCENT_VOLUME_INCREASE, tickDuration, ACCENT_OFF_VELOCITY);
+                stepIntoFuture(beatNumerator, beatDenominator);
+                break;
+            case TENUTO:
+                //Tenuto is the equivalent of a single note slur. It is also called `doo` by jazz musicians
+                //and so in order to preform a tenuto note the note will be let off as slow as possible with
+                //a slightly longer duration.
+                playNotes(pitches, 0, tickDuration + tickDuration / 8, TENUTO_OFF_VELOCITY);
+                stepIntoFuture(beatNumerator, beatDenominator);
+                break;
+            case GLISCANDO:
+                //Gliscando is a glide. It can be preformed as a pitch bend. To preform a gliscando a total of
+                //16 pitch bend changes will give the effect that the note is falling or climbing (depending
+                //on the direction of bend). These changes will be equally spaced over the duration of the note
+                //as to not interfere with the next note. Additionally a reset message will be queued for the
+                //next note to take.
+                if (pitches.length > 1) {
+                    //If the sound is a chord a gliscando should be preformed as a roll. The roll will
+                    //play the first note in the chord right on the down beat. Each consecutive note in
+                    //the chord will be delayed by the `offsetStep`.
+                    long offsetStep = tickDuration / (pitches.length * 4);
+                    long offset = 0;
+                    for (Pitch p : pitches) {
+                        long duration = tickDuration - offset;
+                        doLater(offset, () -> playNote(p, 0, duration, DEFAULT_OFF_VELOCITY));
+                        offset += offsetStep;
+                    }
+                } else {
+                    //otherwise preform the gliscando as a pitch bend.
+                    playNotes(pitches, 0, tickDuration, DEFAULT_OFF_VELOCITY);
+                    for (int offset = 0; offset < GLISCANDO_BEND_STEPS; offset++) {
+                        int bendAmount = GeneralMidiConstants.NO_PITCH_BEND + ( offset * ( bendUp ? GLISCANDO_BEND_AMT : -GLISCANDO_BEND_AMT ) );
+                        setPitchBendLater(tickDuration * offset / GLISCANDO_BEND_STEPS, bendAmount);
+                    }
+                    setPitchBendLater(tickDuration, GeneralMidiConstants.NO_PITCH_BEND);
+                }
+                stepIntoFuture(beatNumerator, beatDenominator);
+                break;
+        }
     }
 
     public boolean isNoteOn(Pitch pitch) {
@@ -309,9 +492,19 @@ public class MIDIChannel {
     }
 
     public final void doLater(long stateTimeOffset, Runnable action) {
-        long time = this.stateTime + stateTimeOffset;
-        this.scheduledActions.compute(time, (schTime, schAction) ->
-                schAction == null ? new ScheduledAction(action, time) : schAction.andThen(action));
+        this.scheduledActions.schedule(this.stateTime + stateTimeOffset, ACTION_RUN, 0, action);
+    }
+
+    public final void setDynamicLater(long stateTimeOffset, Dynamic dynamic) {
+        this.scheduledActions.schedule(this.stateTime + stateTimeOffset, ACTION_SET_DYNAMIC, dynamic.getVelocity(), null);
+    }
+
+    public final void setDynamicLater(Beat timeOffset, Dynamic dynamic) {
+        setDynamicLater(this.timingEnvironment.ticksInBeat(timeOffset), dynamic);
+    }
+
+    public final void setPitchBendLater(long stateTimeOffset, int bendAmt) {
+        this.scheduledActions.schedule(this.stateTime + stateTimeOffset, ACTION_PITCH_BEND, bendAmt, null);
     }
 
     //This method should be called to put the EOT in the correct place. The EOT (end of track message)
@@ -377,14 +570,15 @@ public class MIDIChannel {
     public void playNote(Pitch pitch, int velocityMod, long duration, int offVelocity) {
         if (pitch == Pitch.REST) return;
         Pitch toPlay = pitch.shiftOctave(this.getOctaveShift()).transpose(this.getTranspose());
+        int midiNum = toPlay.getMidiNum();
 
         if (this.isSlurred() && this.noteStates.get(toPlay).isSlurred) {
-            MidiEvent offEvent = noteOffEvents.get(toPlay);
+            long offTick = this.noteOffTicks[midiNum];
             // TODO this should make sure that the off event corresponds to the last note played, 1 doesn't properly capture this
-            if (offEvent != null && (this.getStateTime() - offEvent.getTick()) < 1) {
+            if (offTick >= 0 && (this.getStateTime() - offTick) < 1) {
                 //Skipping the last off and play the on softer
-                this.midiTrack.remove(offEvent);
-                noteOffEvents.set(toPlay, null);
+                this.midiTrack.remove(offTick, this.noteOffMessages[midiNum]);
+                this.noteOffTicks[midiNum] = -1L;
             }
 
             this.noteOn(toPlay, (int) (-(dynamic.getVelocity() + velocityMod) / 3d));
@@ -393,7 +587,8 @@ public class MIDIChannel {
             this.noteOn(toPlay, velocityMod);
         }
 
-        this.doLater(duration, () -> this.noteOff(toPlay, offVelocity));
+        this.scheduledActions.schedule(this.stateTime + duration, ACTION_NOTE_OFF,
+                packNoteOff(midiNum, offVelocity), null);
     }
 
     public void playNote(Pitch pitch, int velocityMod, Beat duration, int offVelocity) {
@@ -401,39 +596,42 @@ public class MIDIChannel {
     }
 
     public void playNotes(Collection<Pitch> pitches, int velocityMod, Beat duration, int offVelocity) {
-        long ticks = ticksInBeat(duration);
-        pitches.forEach(p -> playNote(p, velocityMod, ticks, offVelocity));
+        playNotes(pitches, velocityMod, ticksInBeat(duration), offVelocity);
     }
 
     public void playNotes(Collection<Pitch> pitches, int velocityMod, long duration, int offVelocity) {
-        pitches.forEach(p -> playNote(p, velocityMod, duration, offVelocity));
+        for (Pitch p : pitches)
+            playNote(p, velocityMod, duration, offVelocity);
+    }
+
+    public void playNotes(Pitch[] pitches, int velocityMod, long duration, int offVelocity) {
+        for (Pitch p : pitches)
+            playNote(p, velocityMod, duration, offVelocity);
     }
 
     protected final void noteOn(Pitch pitch, int velocityMod) {
-        ShortMessage message;
-        try {
-            message = new ShortMessage(ShortMessage.NOTE_ON, channelNum, pitch.getMidiNum(), this.dynamic.louder(velocityMod).getVelocity());
-        } catch (InvalidMidiDataException e) {
-            throw new MidiRuntimeException("Cannot turn note on (" + pitch.getMidiNum() + ") with dynamic of " + this.dynamic.louder(velocityMod).getVelocity() + ".", e);
-        }
-        addMessage(message, false);
+        int velocity = this.dynamic.louder(velocityMod).getVelocity();
+        int message = packNoteMessage(ShortMessage.NOTE_ON, pitch.getMidiNum(), velocity);
+        addPackedMessage(message, false);
 
-        this.noteOffEvents.set(pitch, null);
+        this.noteOffTicks[pitch.getMidiNum()] = -1L;
         this.noteStates.set(pitch, NoteState.getState(true, isSlurred()));
     }
 
     protected final void noteOff(Pitch pitch, int offVelocity) {
-        ShortMessage message;
-        try {
-            message = new ShortMessage(ShortMessage.NOTE_OFF, channelNum, pitch.getMidiNum(), offVelocity);
-        } catch (InvalidMidiDataException e) {
-            throw new MidiRuntimeException("Cannot turn note off (" + pitch.getMidiNum() + ") with dynamic of " + offVelocity + ".", e);
-        }
+        emitNoteOff(packNoteOff(pitch.getMidiNum(), offVelocity));
+    }
+
+    private int packNoteOff(int midiNum, int offVelocity) {
+        return packNoteMessage(ShortMessage.NOTE_OFF, midiNum, offVelocity);
+    }
 
-        MidiEvent offEvent = new MidiEvent(message, this.stateTime);
-        addEvent(offEvent, true);
-        this.noteOffEvents.set(pitch, offEvent);
+    private void emitNoteOff(int packedNoteOff) {
+        int midiNum = (packedNoteOff >>> 8) & 0x7F;
+        addPackedMessage(packedNoteOff, true);
+        this.noteOffTicks[midiNum] = this.stateTime;
+        this.noteOffMessages[midiNum] = packedNoteOff;
 
-        this.noteStates.set(pitch, NoteState.getState(false, isSlurred()));
+        this.noteStates.set(Pitch.getPitch(midiNum), NoteState.getState(false, isSlurred()));
     }
 }
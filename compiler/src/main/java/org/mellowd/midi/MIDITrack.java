@@ -1,63 +1,150 @@
 package org.mellowd.midi;
 
 import javax.sound.midi.*;
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.NavigableMap;
-import java.util.TreeMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.ObjLongConsumer;
 
+// A MIDITrack stores its events in a columnar form. The time stamps live in a `long[]` and
+// the messages in a parallel `int[]`. Short messages (at most 3 bytes) are packed into the int directly as
+// `status | data1 << 8 | data2 << 16 | length << 24` which is always positive. Anything else
+// (meta and sysex messages) is kept in a side table and the int column stores the negative
+// `-(index + 1)` pointing into that table.
+//
+// Appends are amortized O(1). Events appended out of order simply mark the track as unsorted
+// and `seal()` stably sorts the columns by time so that events with the same time stamp
+// keep their insertion order. `javax.sound.midi` messages are only created when the track is
+// sealed. Each distinct packed message is decoded once per track and the decoded messages are
+// published alongside the columns, so reading a track (even many times, like the live
+// scheduler does every frame) doesn't create any messages.
+//
+// A track has a single writer and any number of readers. None of the methods lock. The writer
+// (`add`, `remove` and `seal`) works on its own columns and `seal()` publishes an immutable
+// view of them through a volatile field. Readers only ever see the last published view, so the
+// live scheduler can flush a frame while a block is still being compiled into the same track
+// without waiting on it. The published view shares the writer's arrays: appends only touch
+// indices past the published size and anything that would reorder or shift published
+// events (sorting or removing) copies the arrays first.
 public class MIDITrack {
-    private static int comapreEvents(MidiEvent left, MidiEvent right) {
-        int timeCmp = Long.compare(left.getTick(), right.getTick());
-        if (timeCmp != 0) return timeCmp;
+    private static final int INITIAL_CAPACITY = 16;
 
-        MidiMessage leftMsg = left.getMessage();
-        MidiMessage rightMsg = right.getMessage();
+    public static boolean isNotMeta(MidiEvent event) {
+        return event.getMessage().getStatus() != MetaMessage.META;
+    }
 
-        // If same, don't do the complicated comparisons
-        if (leftMsg == rightMsg) return 0;
+    public static boolean isNotMeta(MidiMessage msg) {
+        return msg.getStatus() != MetaMessage.META;
+    }
 
-        // Try and get a quick status comparison to make the distinction
-        int statusCmp = Integer.compare(leftMsg.getStatus(), rightMsg.getStatus());
-        if (statusCmp != 0) return statusCmp;
+    public static int packShortMessage(int status, int data1, int data2, int length) {
+        return (status & 0xFF) | (data1 & 0xFF) << 8 | (data2 & 0xFF) << 16 | length << 24;
+    }
 
-        // Resort to the shorter message
-        int lenCmp = Integer.compare(leftMsg.getLength(), rightMsg.getLength());
-        if (lenCmp != 0) return lenCmp;
+    public static int packShortMessage(ShortMessage message) {
+        byte[] data = message.getMessage();
+        int length = message.getLength();
+        return packShortMessage(
+                data[0],
+                length > 1 ? data[1] : 0,
+                length > 2 ? data[2] : 0,
+                length);
+    }
 
-        // Worst case, compare contents
-        byte[] leftData = leftMsg.getMessage();
-        byte[] rightData = rightMsg.getMessage();
-        for (int i = 0; i < leftData.length; i++) {
-            int dataCmp = Byte.compare(leftData[i], rightData[i]);
-            if (dataCmp != 0) return dataCmp;
-        }
+    public static ShortMessage unpackShortMessage(int packed) {
+        int length = packed >>> 24;
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = (byte) (packed >>> (8 * i));
+        return new PackedShortMessage(data);
+    }
 
-        // They are the same...
-        return 0;
+    // ShortMessage only exposes the raw byte constructor to subclasses. Using it skips the
+    // re-validation of data that was already validated when it was first packed.
+    private static class PackedShortMessage extends ShortMessage {
+        PackedShortMessage(byte[] data) {
+            super(data);
+        }
     }
 
-    public static boolean isNotMeta(MidiEvent event) {
-        return event.getMessage().getStatus() != MetaMessage.META;
+    private static boolean isPackable(MidiMessage message) {
+        return message instanceof ShortMessage && message.getLength() <= 3;
     }
 
-    public static boolean isNotMeta(MidiMessage msg) {
-        return msg.getStatus() != MetaMessage.META;
+    private static final MidiMessage[] NO_SIDE_TABLE = new MidiMessage[0];
+
+    // An immutable, sorted view of the track. Only the first `size` entries of the arrays belong to it.
+    // `decoded` holds the message for each entry of `messages`.
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new long[0], new int[0], 0, NO_SIDE_TABLE, NO_SIDE_TABLE);
+
+        final long[] ticks;
+        final int[] messages;
+        final int size;
+        final MidiMessage[] sideTable;
+        final MidiMessage[] decoded;
+
+        Snapshot(long[] ticks, int[] messages, int size, MidiMessage[] sideTable, MidiMessage[] decoded) {
+            this.ticks = ticks;
+            this.messages = messages;
+            this.size = size;
+            this.sideTable = sideTable;
+            this.decoded = decoded;
+        }
+
+        long startTimeStamp() {
+            return size == 0 ? 0 : ticks[0];
+        }
+
+        long endTimeStamp() {
+            return size == 0 ? 0 : ticks[size - 1];
+        }
+
+        MidiMessage messageAt(int index) {
+            return this.decoded[index];
+        }
+
+        // The index of the first event with a time stamp >= tick
+        int lowerBound(long tick) {
+            return MIDITrack.lowerBound(this.ticks, this.size, tick);
+        }
+
+        void forEachIndex(int from, int to, long offset, ObjLongConsumer<MidiMessage> consumer) {
+            for (int i = from; i < to; i++)
+                consumer.accept(messageAt(i), offset + this.ticks[i]);
+        }
     }
 
     private final String name;
 
-    private final NavigableMap<Long, Collection<MidiEvent>> events;
-    private final AtomicLong lastNonMetaMessageTime;
+    // Writer state
+    private long[] ticks;
+    private int[] messages;
+    private int size;
+    private boolean sorted;
+    private boolean shared;
+    private final List<MidiMessage> sideTable;
+    private final Map<Integer, MidiMessage> decodedShortMessages;
+    private volatile long lastNonMetaMessageTime;
+
+    // Reader state
+    private volatile Snapshot published;
 
     public MIDITrack(String name) {
         this.name = name;
 
-        this.events = new TreeMap<>(Long::compare);
-        this.lastNonMetaMessageTime = new AtomicLong();
+        this.ticks = new long[INITIAL_CAPACITY];
+        this.messages = new int[INITIAL_CAPACITY];
+        this.size = 0;
+        this.sorted = true;
+        this.shared = false;
+        this.sideTable = new ArrayList<>();
+        this.decodedShortMessages = new HashMap<>();
+        this.lastNonMetaMessageTime = 0;
+        this.published = Snapshot.EMPTY;
     }
 
     public String getName() {
@@ -70,71 +157,227 @@ public class MIDITrack {
         return track;
     }
 
+    // Exporting is done once writing has finished so this seals the track first
     public void addAllToTrack(Track track) {
+        this.seal();
         this.forEach(track::add);
     }
 
-    private synchronized void updateLastNonMetaMessageTime() {
-        this.events.descendingMap().values().stream()
-                .flatMap(e -> e.stream().filter(MIDITrack::isNotMeta))
-                .findFirst()
-                .ifPresent(e -> {
-                    this.lastNonMetaMessageTime.set(e.getTick());
-                });
+    // The number of events visible to readers
+    public int size() {
+        return this.published.size;
+    }
+
+    public void add(MidiEvent event) {
+        MidiMessage message = event.getMessage();
+        if (isPackable(message)) {
+            this.add(event.getTick(), packShortMessage((ShortMessage) message));
+        } else {
+            this.sideTable.add(message);
+            this.append(event.getTick(), -this.sideTable.size());
+            if (isNotMeta(message) && event.getTick() >= this.lastNonMetaMessageTime)
+                this.lastNonMetaMessageTime = event.getTick();
+        }
+    }
+
+    // Add a packed short message (see `packShortMessage`) without allocating any message objects
+    public void add(long tick, int packedShortMessage) {
+        this.append(tick, packedShortMessage);
+        if (tick >= this.lastNonMetaMessageTime)
+            this.lastNonMetaMessageTime = tick;
+    }
+
+    private void append(long tick, int message) {
+        if (this.size == this.ticks.length) {
+            int newCapacity = this.size + (this.size >> 1) + 1;
+            this.ticks = Arrays.copyOf(this.ticks, newCapacity);
+            this.messages = Arrays.copyOf(this.messages, newCapacity);
+            this.shared = false;
+        }
+
+        if (this.size > 0 && tick < this.ticks[this.size - 1])
+            this.sorted = false;
+
+        this.ticks[this.size] = tick;
+        this.messages[this.size] = message;
+        this.size++;
+    }
+
+    public void remove(MidiEvent event) {
+        MidiMessage message = event.getMessage();
+        long tick = event.getTick();
+        this.sort();
+
+        int index = -1;
+        for (int i = lowerBound(this.ticks, this.size, tick); i < this.size && this.ticks[i] == tick; i++) {
+            if (matches(this.messages[i], message)) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) return;
+
+        removeAt(index);
+        if (isNotMeta(message) && this.lastNonMetaMessageTime >= tick)
+            this.updateLastNonMetaMessageTime();
+    }
+
+    // Remove a single packed short message at the given time, returns true if an event was removed
+    public boolean remove(long tick, int packedShortMessage) {
+        this.sort();
+        for (int i = lowerBound(this.ticks, this.size, tick); i < this.size && this.ticks[i] == tick; i++) {
+            if (this.messages[i] == packedShortMessage) {
+                removeAt(i);
+                if (this.lastNonMetaMessageTime >= tick)
+                    this.updateLastNonMetaMessageTime();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(int packed, MidiMessage message) {
+        if (packed >= 0)
+            return isPackable(message) && packed == packShortMessage((ShortMessage) message);
+
+        MidiMessage stored = this.sideTable.get(-packed - 1);
+        return stored == message || Arrays.equals(stored.getMessage(), message.getMessage());
     }
 
-    public synchronized void add(MidiEvent event) {
-        this.lastNonMetaMessageTime.updateAndGet(last ->
-                MIDITrack.isNotMeta(event) && event.getTick() >= event.getTick()
-                        ? event.getTick() : last);
+    private void removeAt(int index) {
+        this.unshare();
+        int tail = this.size - index - 1;
+        if (tail > 0) {
+            System.arraycopy(this.ticks, index + 1, this.ticks, index, tail);
+            System.arraycopy(this.messages, index + 1, this.messages, index, tail);
+        }
+        this.size--;
+    }
 
-        this.events.compute(event.getTick(), (time, events) -> {
-            if (events == null)
-                events = new LinkedList<>();
-            events.add(event);
-            return events;
-        });
+    // Readers may be looking at the published prefix of the arrays, take a private copy before mutating it
+    private void unshare() {
+        if (!this.shared) return;
+        this.ticks = this.ticks.clone();
+        this.messages = this.messages.clone();
+        this.shared = false;
     }
 
-    public synchronized void remove(MidiEvent event) {
-        this.events.computeIfPresent(event.getTick(), (time, events) -> {
-            if (events.remove(event) && MIDITrack.isNotMeta(event) && this.lastNonMetaMessageTime.get() >= time)
-                this.updateLastNonMetaMessageTime();
+    private void updateLastNonMetaMessageTime() {
+        long last = 0;
+        for (int i = this.size - 1; i >= 0; i--) {
+            if (isNotMeta(this.messages[i])) {
+                last = this.ticks[i];
+                break;
+            }
+        }
+        this.lastNonMetaMessageTime = last;
+    }
 
-            return events.isEmpty() ? null : events;
-        });
+    private boolean isNotMeta(int packed) {
+        return packed >= 0 || isNotMeta(this.sideTable.get(-packed - 1));
     }
 
     public long lastNonMetaEventTime() {
-        return this.lastNonMetaMessageTime.get();
+        return this.lastNonMetaMessageTime;
+    }
+
+    // Sort the writer's columns and publish them to readers. Must be called by the writer
+    // (or after the writer is done, with a happens-before edge such as a Thread.join).
+    public void seal() {
+        this.sort();
+
+        Snapshot last = this.published;
+        MidiMessage[] sideTable = last.sideTable.length == this.sideTable.size()
+                ? last.sideTable
+                : this.sideTable.toArray(NO_SIDE_TABLE);
+
+        // If the columns are still shared with the last view then its events are untouched
+        // and only the events appended since need decoding. Readers of the last view never
+        // look past its size.
+        MidiMessage[] decoded;
+        int from;
+        if (this.messages == last.messages) {
+            decoded = last.decoded;
+            from = last.size;
+        } else {
+            decoded = new MidiMessage[this.messages.length];
+            from = 0;
+        }
+        for (int i = from; i < this.size; i++)
+            decoded[i] = this.decode(this.messages[i], sideTable);
+
+        this.shared = true;
+        this.published = new Snapshot(this.ticks, this.messages, this.size, sideTable, decoded);
+    }
+
+    private MidiMessage decode(int packed, MidiMessage[] sideTable) {
+        if (packed < 0)
+            return sideTable[-packed - 1];
+        return this.decodedShortMessages.computeIfAbsent(packed, MIDITrack::unpackShortMessage);
     }
 
-    public synchronized long endTimeStamp() {
-        if (this.events.isEmpty())
-            return 0;
-        return this.events.lastKey();
+    public long endTimeStamp() {
+        return this.published.endTimeStamp();
     }
 
-    public synchronized long startTimeStamp() {
-        if (this.events.isEmpty())
-            return 0;
-        return this.events.firstKey();
+    public long startTimeStamp() {
+        return this.published.startTimeStamp();
     }
 
-    public synchronized void forEach(Consumer<MidiEvent> consumer) {
-        this.events.forEach((time, events) -> events.forEach(consumer));
+    // A sealed copy of the published events with every time stamp moved by `offset` ticks.
+    // The copy shares the decoded messages of this track.
+    public MIDITrack shifted(long offset) {
+        Snapshot snapshot = this.published;
+        MIDITrack copy = new MIDITrack(this.name);
+        copy.ticks = new long[Math.max(snapshot.size, INITIAL_CAPACITY)];
+        for (int i = 0; i < snapshot.size; i++)
+            copy.ticks[i] = snapshot.ticks[i] + offset;
+        copy.messages = Arrays.copyOf(snapshot.messages, copy.ticks.length);
+        copy.size = snapshot.size;
+        copy.sideTable.addAll(Arrays.asList(snapshot.sideTable));
+        copy.updateLastNonMetaMessageTime();
+
+        copy.shared = true;
+        copy.published = new Snapshot(copy.ticks, copy.messages, copy.size, snapshot.sideTable,
+                Arrays.copyOf(snapshot.decoded, copy.messages.length));
+        return copy;
+    }
+
+    // True if the published events of this track are exactly the events of `other` moved by `offset` ticks
+    public boolean isShiftOf(MIDITrack other, long offset) {
+        Snapshot mine = this.published;
+        Snapshot theirs = other.published;
+        if (mine.size != theirs.size) return false;
+
+        for (int i = 0; i < mine.size; i++) {
+            if (mine.ticks[i] != theirs.ticks[i] + offset) return false;
+
+            int packed = mine.messages[i];
+            if (packed >= 0 || theirs.messages[i] >= 0) {
+                if (packed != theirs.messages[i]) return false;
+            } else if (!Arrays.equals(mine.messageAt(i).getMessage(), theirs.messageAt(i).getMessage())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void forEach(Consumer<MidiEvent> consumer) {
+        Snapshot snapshot = this.published;
+        for (int i = 0; i < snapshot.size; i++)
+            consumer.accept(new MidiEvent(snapshot.messageAt(i), snapshot.ticks[i]));
     }
 
     // TODO should have alternatives, not necessarily all tracks are infinte
 
     // Loops indefinitely, stop is exclusive
     // Consumer accepts an absolute time stamp between start (inclusive) and stop (exclusive)
-    public synchronized void forEachInRange(long start, long stop, ObjLongConsumer<MidiMessage> consumer) {
+    public void forEachInRange(long start, long stop, ObjLongConsumer<MidiMessage> consumer) {
+        Snapshot snapshot = this.published;
         long rangeDuration = stop - start;
-        long trackDuration = this.endTimeStamp();
+        long trackDuration = snapshot.endTimeStamp();
         if (trackDuration == 0)
             return;
-        //System.out.printf("start: %d, stop: %d, rangeDur: %d, trackDur: %d%n", start, stop, rangeDuration, trackDuration);
 
         // |----------|----------|----------|----------|
         //                  ^----|----------|-^
@@ -148,35 +391,73 @@ public class MIDITrack {
         long virtualTrackStart = (start / trackDuration) * trackDuration;
 
         boolean overflows = (virtualStart + rangeDuration) >= trackDuration;
-        //System.out.printf("virtualStart: %d, virtualStop: %d, virtualTrackStart: %d, overflows: %b%n", virtualStart, virtualStop, virtualTrackStart, overflows);
-
 
         // If doesn't overflow then simply iterate over all those values
         if (!overflows) {
-            this.events.subMap(virtualStart, virtualStop).values().forEach(es ->
-                    es.forEach(e -> consumer.accept(e.getMessage(), virtualTrackStart + e.getTick())));
+            snapshot.forEachIndex(snapshot.lowerBound(virtualStart), snapshot.lowerBound(virtualStop), virtualTrackStart, consumer);
             return;
         }
 
         // Consume the first segment
-        this.events.tailMap(virtualStart).values().forEach(es ->
-                es.forEach(e ->
-                        consumer.accept(e.getMessage(), virtualTrackStart + e.getTick())));
+        snapshot.forEachIndex(snapshot.lowerBound(virtualStart), snapshot.size, virtualTrackStart, consumer);
 
         // Consume the looped segments
         int loops = (int) ((stop - start) / trackDuration);
         // from [1,loops] inclusive
         for (int loop = 1; loop <= loops; loop++) {
             long loopTrackStart = virtualTrackStart + (loop * trackDuration);
-            this.events.values().forEach(es ->
-                    es.forEach(e ->
-                            consumer.accept(e.getMessage(), loopTrackStart + e.getTick())));
+            snapshot.forEachIndex(0, snapshot.size, loopTrackStart, consumer);
         }
 
         // Consume the tail segment
         long virtualLoopTailTrackStart = virtualTrackStart + ((1 + loops) * trackDuration);
-        this.events.headMap(virtualStop).values().forEach(es ->
-                es.forEach(e ->
-                        consumer.accept(e.getMessage(), virtualLoopTailTrackStart + e.getTick())));
+        snapshot.forEachIndex(0, snapshot.lowerBound(virtualStop), virtualLoopTailTrackStart, consumer);
+    }
+
+    private static int lowerBound(long[] ticks, int size, long tick) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ticks[mid] < tick) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Stable sort of the writer's columns by time stamp. Only does work if something was appended out of order.
+    private void sort() {
+        if (this.sorted) return;
+
+        this.unshare();
+        long[] tickBuf = new long[this.size];
+        int[] msgBuf = new int[this.size];
+        mergeSort(this.ticks, this.messages, tickBuf, msgBuf, 0, this.size);
+        this.sorted = true;
+    }
+
+    private static void mergeSort(long[] ticks, int[] msgs, long[] tickBuf, int[] msgBuf, int from, int to) {
+        if (to - from < 2) return;
+        int mid = (from + to) >>> 1;
+        mergeSort(ticks, msgs, tickBuf, msgBuf, from, mid);
+        mergeSort(ticks, msgs, tickBuf, msgBuf, mid, to);
+
+        // Already in order, nothing to merge
+        if (ticks[mid - 1] <= ticks[mid]) return;
+
+        System.arraycopy(ticks, from, tickBuf, from, to - from);
+        System.arraycopy(msgs, from, msgBuf, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            // Taking from the left on ties keeps the insertion order
+            if (right >= to || (left < mid && tickBuf[left] <= tickBuf[right])) {
+                ticks[i] = tickBuf[left];
+                msgs[i] = msgBuf[left++];
+            } else {
+                ticks[i] = tickBuf[right];
+                msgs[i] = msgBuf[right++];
+            }
+        }
     }
 }
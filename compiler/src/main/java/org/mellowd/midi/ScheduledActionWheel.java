@@ -0,0 +1,248 @@
+package org.mellowd.midi;
+
+import java.util.Arrays;
+
+// A timer wheel holding the actions a `MIDIChannel` has scheduled for later. Actions are
+// small typed records (a kind, an int payload and an optional object) stored in a pooled
+// arena of parallel arrays so scheduling one doesn't allocate.
+//
+// The wheel has one slot per tick covering the `SLOTS` ticks starting at the cursor. Almost
+// everything a channel schedules (note offs, dynamic steps, pitch bends) lands within a few
+// beats of the current time and so goes straight into its slot's FIFO list. Anything further
+// out, or scheduled before the cursor, goes into a small overflow heap. Polling takes the
+// earlier of the first occupied slot and the top of the heap, ordered by tick and then by the
+// order things were scheduled in, so actions at the same tick always run in insertion order.
+//
+// Ticks are stored relative to an `origin`. Rolling back every pending action by the same
+// amount (as `MIDIChannel.replaceTrack` does) only moves the origin.
+final class ScheduledActionWheel {
+    private static final int SLOT_BITS = 12;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NONE = -1;
+
+    // Entry arena
+    private byte[] kinds;
+    private long[] ticks;
+    private long[] seqs;
+    private int[] payloads;
+    private Object[] refs;
+    private int[] next;
+    private int freeHead;
+    private int allocated;
+    private long seq;
+
+    // Wheel
+    private final int[] slotHeads;
+    private final int[] slotTails;
+    private final long[] occupied;
+    private long cursor;
+    private long origin;
+
+    // Overflow heap of entry indices
+    private int[] overflow;
+    private int overflowSize;
+
+    private int size;
+
+    ScheduledActionWheel() {
+        this.kinds = new byte[INITIAL_CAPACITY];
+        this.ticks = new long[INITIAL_CAPACITY];
+        this.seqs = new long[INITIAL_CAPACITY];
+        this.payloads = new int[INITIAL_CAPACITY];
+        this.refs = new Object[INITIAL_CAPACITY];
+        this.next = new int[INITIAL_CAPACITY];
+        this.freeHead = NONE;
+        this.allocated = 0;
+        this.seq = 0;
+
+        this.slotHeads = new int[SLOTS];
+        this.slotTails = new int[SLOTS];
+        Arrays.fill(this.slotHeads, NONE);
+        this.occupied = new long[SLOTS / 64];
+        this.cursor = 0;
+        this.origin = 0;
+
+        this.overflow = new int[INITIAL_CAPACITY];
+        this.overflowSize = 0;
+        this.size = 0;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    void schedule(long tick, byte kind, int payload, Object ref) {
+        int entry = allocate();
+        long stored = tick + this.origin;
+        this.kinds[entry] = kind;
+        this.ticks[entry] = stored;
+        this.seqs[entry] = this.seq++;
+        this.payloads[entry] = payload;
+        this.refs[entry] = ref;
+        this.next[entry] = NONE;
+
+        if (stored >= this.cursor && stored - this.cursor < SLOTS) {
+            int slot = (int) (stored & SLOT_MASK);
+            if (this.slotHeads[slot] == NONE) {
+                this.slotHeads[slot] = entry;
+                this.occupied[slot >>> 6] |= 1L << slot;
+            } else {
+                this.next[this.slotTails[slot]] = entry;
+            }
+            this.slotTails[slot] = entry;
+        } else {
+            pushOverflow(entry);
+        }
+        this.size++;
+    }
+
+    // Shift every pending action by `delta` ticks
+    void shift(long delta) {
+        this.origin -= delta;
+    }
+
+    // Remove and return the earliest entry due at or before `limit`, or -1 if there is none.
+    // The returned entry must be released with `release` once its fields have been read.
+    int poll(long limit) {
+        if (this.size == 0) return NONE;
+        long storedLimit = limit + this.origin;
+
+        int slot = nextOccupiedSlot(storedLimit);
+        int slotEntry = slot == NONE ? NONE : this.slotHeads[slot];
+        int heapEntry = this.overflowSize > 0 && this.ticks[this.overflow[0]] <= storedLimit ? this.overflow[0] : NONE;
+
+        int entry;
+        if (slotEntry != NONE && (heapEntry == NONE || before(slotEntry, heapEntry))) {
+            entry = slotEntry;
+            this.slotHeads[slot] = this.next[entry];
+            if (this.slotHeads[slot] == NONE)
+                this.occupied[slot >>> 6] &= ~(1L << slot);
+        } else if (heapEntry != NONE) {
+            entry = heapEntry;
+            popOverflow();
+        } else {
+            return NONE;
+        }
+
+        // Nothing pending is earlier than this entry so the window can move up to it
+        if (this.ticks[entry] > this.cursor)
+            this.cursor = this.ticks[entry];
+        this.size--;
+        return entry;
+    }
+
+    // Move the window up to `tick` once everything due by then has been polled
+    void advanceTo(long tick) {
+        long stored = tick + this.origin;
+        if (stored > this.cursor)
+            this.cursor = stored;
+    }
+
+    byte kind(int entry) {
+        return this.kinds[entry];
+    }
+
+    long tick(int entry) {
+        return this.ticks[entry] - this.origin;
+    }
+
+    int payload(int entry) {
+        return this.payloads[entry];
+    }
+
+    Object ref(int entry) {
+        return this.refs[entry];
+    }
+
+    void release(int entry) {
+        this.refs[entry] = null;
+        this.next[entry] = this.freeHead;
+        this.freeHead = entry;
+    }
+
+    private int allocate() {
+        if (this.freeHead != NONE) {
+            int entry = this.freeHead;
+            this.freeHead = this.next[entry];
+            return entry;
+        }
+
+        if (this.allocated == this.kinds.length) {
+            int newCapacity = this.allocated << 1;
+            this.kinds = Arrays.copyOf(this.kinds, newCapacity);
+            this.ticks = Arrays.copyOf(this.ticks, newCapacity);
+            this.seqs = Arrays.copyOf(this.seqs, newCapacity);
+            this.payloads = Arrays.copyOf(this.payloads, newCapacity);
+            this.refs = Arrays.copyOf(this.refs, newCapacity);
+            this.next = Arrays.copyOf(this.next, newCapacity);
+        }
+        return this.allocated++;
+    }
+
+    private boolean before(int left, int right) {
+        long leftTick = this.ticks[left];
+        long rightTick = this.ticks[right];
+        return leftTick < rightTick || (leftTick == rightTick && this.seqs[left] < this.seqs[right]);
+    }
+
+    // The first occupied slot for a tick in [cursor, limit] or -1 if there isn't one
+    private int nextOccupiedSlot(long storedLimit) {
+        if (storedLimit < this.cursor) return NONE;
+        long span = Math.min(storedLimit - this.cursor, SLOTS - 1);
+        int start = (int) (this.cursor & SLOT_MASK);
+
+        int scanned = 0;
+        int slot = start;
+        while (scanned <= span) {
+            int word = slot >>> 6;
+            long bits = this.occupied[word] & (-1L << slot);
+            if (bits != 0) {
+                int found = (word << 6) | Long.numberOfTrailingZeros(bits);
+                int distance = (found - start) & SLOT_MASK;
+                return distance <= span ? found : NONE;
+            }
+            int nextSlot = ((word + 1) << 6) & SLOT_MASK;
+            scanned += ((word + 1) << 6) - slot;
+            slot = nextSlot;
+        }
+        return NONE;
+    }
+
+    private void pushOverflow(int entry) {
+        if (this.overflowSize == this.overflow.length)
+            this.overflow = Arrays.copyOf(this.overflow, this.overflowSize << 1);
+
+        int i = this.overflowSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(entry, this.overflow[parent])) break;
+            this.overflow[i] = this.overflow[parent];
+            i = parent;
+        }
+        this.overflow[i] = entry;
+    }
+
+    private void popOverflow() {
+        int last = this.overflow[--this.overflowSize];
+        if (this.overflowSize == 0) return;
+
+        int i = 0;
+        int half = this.overflowSize >>> 1;
+        while (i < half) {
+            int child = (i << 1) + 1;
+            int right = child + 1;
+            if (right < this.overflowSize && before(this.overflow[right], this.overflow[child]))
+                child = right;
+            if (!before(this.overflow[child], last)) break;
+            this.overflow[i] = this.overflow[child];
+            i = child;
+        }
+        this.overflow[i] = last;
+    }
+}
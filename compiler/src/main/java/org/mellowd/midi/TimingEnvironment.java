@@ -4,6 +4,7 @@
 package org.mellowd.midi;
 
 import org.mellowd.primitives.Beat;
+import org.mellowd.primitives.Rhythm;
 
 import javax.sound.midi.*;
 
@@ -84,15 +85,47 @@ public class TimingEnvironment {
     public Beat getBeatValue() {
         // The value of a "beat" in this time signature. In */4 time this is a quarter note.
         // In */8 time, an eighth.
-        double numQuarters = 1.0 / (this.timeSigDen / 4.0);
-        return new Beat(numQuarters);
+        return Beat.of(4, this.timeSigDen);
     }
 
     //The `PPQN` was chosen as to support triplets on an integer number of
-    //endTimeStamp but the resolution of other ratios will vary and some precision
-    //may be lost when cast to a long.
+    //endTimeStamp but the resolution of other ratios will vary. The duration of a
+    //beat is exact so this is the number of whole ticks in the beat, the fraction
+    //of a tick that is left over is dropped. Channels carry that fraction over to
+    //the next beat when they step through a phrase, see `MIDIChannel#stepIntoFuture`.
     public long ticksInBeat(Beat beat) {
-        return (long) (ppqn * beat.getNumQuarters());
+        return (ppqn * beat.getNumerator()) / beat.getDenominator();
+    }
+
+    //The number of ticks in `count` beats of `rhythm`, repeating the rhythm from the start
+    //if it has less than `count` beats. The beats are summed exactly before they are
+    //converted to ticks so this is the same as the number of ticks a channel steps
+    //through when it plays them.
+    public long ticksInBeats(Rhythm rhythm, int count) {
+        long numerator = 0;
+        long denominator = 1;
+        for (int i = 0; i < count; i++) {
+            Beat beat = rhythm.getAtIndex(i);
+            if (beat.getDenominator() == denominator) {
+                numerator += beat.getNumerator();
+            } else {
+                numerator = numerator * beat.getDenominator() + beat.getNumerator() * denominator;
+                denominator *= beat.getDenominator();
+                long gcd = gcd(numerator, denominator);
+                numerator /= gcd;
+                denominator /= gcd;
+            }
+        }
+        return (ppqn * numerator) / denominator;
+    }
+
+    static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a == 0 ? 1 : a;
     }
 
     public long approxDurationOfBeatInUs(Beat beat) {
@@ -10,6 +10,8 @@ import org.mellowd.intermediate.functions.Parameters;
 import org.mellowd.intermediate.variables.Memory;
 import org.mellowd.intermediate.variables.NullMemory;
 import org.mellowd.plugin.MellowDPlugin;
+import org.mellowd.primitives.Articulated;
+import org.mellowd.primitives.ArticulatedPitch;
 import org.mellowd.primitives.Melody;
 import org.mellowd.primitives.Pitch;
 
@@ -32,7 +34,7 @@ public class Bjorklund implements MellowDPlugin {
         this.bjorklundFunctionName = QualifiedName.fromString("mellowd.euclid");
         this.bjorklundFunction = new Abstraction(
                 new Parameters(this.melodyParam, this.pulsesParam, this.stepsParam), false,
-                Statement.lift((env, out) -> {
+                Statement.liftDeterministic((env, out) -> {
                     Memory locals = env.getMemory();
 
                     Melody melodyMap = melodyParam.dereference(locals);
@@ -66,21 +68,21 @@ public class Bjorklund implements MellowDPlugin {
             numChunks = newNumChunks;
         }
 
-        Melody melody = new Melody();
+        List<Articulated> sounds = new ArrayList<>();
         int mapIndex = 0;
         for (int i = 0; i < numChunks; i++) {
             for (boolean play : chunk) {
-                if (play) melody.append(melodyMap.getAtIndex(mapIndex++));
-                else melody.append(Pitch.REST);
+                if (play) sounds.add(melodyMap.getAtIndex(mapIndex++));
+                else sounds.add(new ArticulatedPitch(Pitch.REST));
             }
         }
         for (int i = 0; i < numRemainder; i++)
             for (boolean play : remainder) {
-                if (play) melody.append(melodyMap.getAtIndex(mapIndex++));
-                else melody.append(Pitch.REST);
+                if (play) sounds.add(melodyMap.getAtIndex(mapIndex++));
+                else sounds.add(new ArticulatedPitch(Pitch.REST));
             }
 
-        return melody;
+        return new Melody(sounds);
     }
 
     @Override
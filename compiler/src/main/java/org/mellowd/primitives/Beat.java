@@ -5,35 +5,95 @@ package org.mellowd.primitives;
 
 import org.mellowd.intermediate.functions.operations.Slurrable;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 //A `Beat` represent a classical definition of a note duration.
 //Each beat has the number of quarter notes it is equivalent to (possibly a fraction),
 //for converting from `PPQN` (endTimeStamp per quarter note) to a duration in endTimeStamp that the
 //beat should be held for.
+//
+//The number of quarter notes is kept as an exact fraction <sup>numerator</sup>&frasl;<sub>denominator</sub>
+//in lowest terms so that dotted beats and tuplets add up exactly, seven notes of a 7:4 tuplet are
+//exactly 4 beats long. Beats are immutable and the beats a source file is made of are a handful of
+//durations so they are interned, `Beat.QUARTER()` always returns the same instance.
 public class Beat implements Slurrable<Beat> {
+    //Fractions with a larger numerator or denominator are rounded to the nearest
+    //<sup>1</sup>&frasl;<sub>2<sup>24</sup></sub> quarter notes. A tick is normally
+    //<sup>1</sup>&frasl;<sub>960</sub> so this is far below anything audible and it
+    //keeps the cross multiplications in `compare` and `add` from overflowing.
+    private static final long MAX_TERM = Integer.MAX_VALUE;
+    private static final long ROUNDING_DENOMINATOR = 1L << 24;
+
+    //Interned beats keyed by their packed numerator, denominator and slur. Once the table
+    //is full new durations are simply not interned.
+    private static final int MAX_INTERNED = 4096;
+    private static final ConcurrentMap<Long, Beat> interned = new ConcurrentHashMap<>();
+
     //All beats must start out as one of the following durations which can then
     //later on be manipulated via dots to extend the duration or wrapping inside a tuplet.
-    public static Beat WHOLE()          { return new Beat(4d);   }
-    public static Beat HALF()           { return new Beat(2d);   }
-    public static Beat QUARTER()        { return new Beat(1d);   }
-    public static Beat EIGHTH()         { return new Beat(1/2d); }
-    public static Beat SIXTEENTH()      { return new Beat(1/4d); }
-    public static Beat THIRTYSECOND()   { return new Beat(1/8d); }
-    
-    public static final Beat ZERO = new Beat(0d);
+    public static Beat WHOLE()          { return of(4, 1); }
+    public static Beat HALF()           { return of(2, 1); }
+    public static Beat QUARTER()        { return of(1, 1); }
+    public static Beat EIGHTH()         { return of(1, 2); }
+    public static Beat SIXTEENTH()      { return of(1, 4); }
+    public static Beat THIRTYSECOND()   { return of(1, 8); }
+
+    public static final Beat ZERO = of(0, 1);
 
     public static int compare(Beat left, Beat right) {
-        return (int) (left.numQuarters - right.numQuarters);
+        return Long.compare(left.numerator * right.denominator, right.numerator * left.denominator);
     }
 
-    private final double numQuarters;
-    private boolean slurred;
+    //Get the beat that is <sup>numerator</sup>&frasl;<sub>denominator</sub> quarter notes long.
+    public static Beat of(long numerator, long denominator) {
+        return of(numerator, denominator, false);
+    }
+
+    public static Beat of(long numerator, long denominator, boolean slurred) {
+        if (denominator <= 0 || numerator < 0)
+            throw new IllegalArgumentException("Cannot create a beat of " + numerator + "/" + denominator + " quarter notes");
+
+        long gcd = gcd(numerator, denominator);
+        numerator /= gcd;
+        denominator /= gcd;
+
+        if (numerator > MAX_TERM || denominator > MAX_TERM) {
+            long scaled = Math.round((numerator / (double) denominator) * ROUNDING_DENOMINATOR);
+            gcd = gcd(scaled, ROUNDING_DENOMINATOR);
+            numerator = scaled / gcd;
+            denominator = ROUNDING_DENOMINATOR / gcd;
+            //Too long to be interned, more than 2^31 quarter notes
+            if (numerator > MAX_TERM)
+                return new Beat(numerator, denominator, slurred);
+        }
 
-    public Beat(double numQuarters) {
-        this.numQuarters = numQuarters;
+        long key = (numerator << 32) | (denominator << 1) | (slurred ? 1 : 0);
+        Beat beat = interned.get(key);
+        if (beat != null) return beat;
+
+        beat = new Beat(numerator, denominator, slurred);
+        if (interned.size() >= MAX_INTERNED) return beat;
+        Beat existing = interned.putIfAbsent(key, beat);
+        return existing != null ? existing : beat;
     }
 
-    public Beat(double numQuarters, boolean slurred) {
-        this.numQuarters = numQuarters;
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a == 0 ? 1 : a;
+    }
+
+    private final long numerator;
+    private final long denominator;
+    private final boolean slurred;
+
+    private Beat(long numerator, long denominator, boolean slurred) {
+        this.numerator = numerator;
+        this.denominator = denominator;
         this.slurred = slurred;
     }
 
@@ -48,12 +108,8 @@ public class Beat implements Slurrable<Beat> {
     //  = 1 <sup>3</sup>&frasl;<sub>4</sub> quarter notes
     //</pre>
     public Beat dot(int amount) {
-        double numQuarters = this.numQuarters;
-        double prevAdded = this.numQuarters;
-        for (int i = 0; i < amount; i++) {
-            numQuarters += prevAdded/2;
-        }
-        return new Beat(numQuarters);
+        //Every dot adds half of the undotted duration, this is how dots have always been played
+        return of(this.numerator * (2 + amount), this.denominator * 2);
     }
 
     //A tuplet is a sequence of equivalent notes played in the time it takes
@@ -84,19 +140,31 @@ public class Beat implements Slurrable<Beat> {
     public Beat tuplet(int num, int div) {
         if (num <= 0 || div <= 0)
             throw new IllegalArgumentException("Cannot create a tuplet of "+num+":"+div);
-        return new Beat(numQuarters * (div / (double) num));
+        return of(this.numerator * div, this.denominator * num);
     }
 
     public Beat add(Beat other) {
-        return new Beat(this.numQuarters + other.numQuarters);
+        if (this.denominator == other.denominator)
+            return of(this.numerator + other.numerator, this.denominator);
+        return of(this.numerator * other.denominator + other.numerator * this.denominator,
+                this.denominator * other.denominator);
     }
 
     public Beat times(int amt) {
-        return new Beat(this.numQuarters * amt);
+        return of(this.numerator * amt, this.denominator);
+    }
+
+    //The duration is exactly <sup>numerator</sup>&frasl;<sub>denominator</sub> quarter notes.
+    public long getNumerator() {
+        return this.numerator;
+    }
+
+    public long getDenominator() {
+        return this.denominator;
     }
 
     public double getNumQuarters() {
-        return this.numQuarters;
+        return this.numerator / (double) this.denominator;
     }
 
     public boolean isSlurred() {
@@ -105,26 +173,42 @@ public class Beat implements Slurrable<Beat> {
 
     @Override
     public Beat toggleSlur() {
-        return new Beat(this.numQuarters, !this.slurred);
+        return of(this.numerator, this.denominator, !this.slurred);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Beat beat = (Beat) o;
+        return this.numerator == beat.numerator
+                && this.denominator == beat.denominator
+                && this.slurred == beat.slurred;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Long.hashCode(this.numerator) + Long.hashCode(this.denominator)) + (this.slurred ? 1 : 0);
     }
 
     @Override
     public String toString() {
         String str;
-        if (this.numQuarters == 4d) {
+        if (this.denominator == 1 && this.numerator == 4) {
             str = "w";
-        } else if (this.numQuarters == 2d) {
+        } else if (this.denominator == 1 && this.numerator == 2) {
             str = "h";
-        } else if (this.numQuarters == 1d) {
+        } else if (this.denominator == 1 && this.numerator == 1) {
             str = "q";
-        } else if (this.numQuarters == 1/2d) {
+        } else if (this.denominator == 2 && this.numerator == 1) {
             str = "e";
-        } else if (this.numQuarters == 1/4d) {
+        } else if (this.denominator == 4 && this.numerator == 1) {
             str = "s";
-        } else if (this.numQuarters == 1/8d) {
+        } else if (this.denominator == 8 && this.numerator == 1) {
             return "t";
         } else {
-            str = String.format("r{%.2f}", this.numQuarters);
+            str = String.format("r{%.2f}", getNumQuarters());
         }
         return isSlurred() ? str + "_" : str;
     }
@@ -17,6 +17,9 @@ import java.util.regex.Pattern;
 //are defined between `(` and `)` tokens. The `,` separated pitches make up the chord.
 //
 //This class contains a variety of standard chords frequently used in compositions.
+//
+//Chords are immutable, appending to a chord returns a new chord. Chords are only ever
+//a handful of pitches so unlike melodies they simply copy their pitches.
 public class Chord implements Transposable<Chord>, Articulatable, Indexable<Pitch, Chord>, OctaveShiftable<Chord> {
 
     public static int compare(Chord left, Chord right) {
@@ -50,7 +53,7 @@ public class Chord implements Transposable<Chord>, Articulatable, Indexable<Pitc
     );
 
     //At its core, a chord is simply a collection of pitches. These are those pitches.
-    private Pitch[] pitches;
+    private final Pitch[] pitches;
 
     //The varargs constructor is deigned for use by the various chord building methods.
     public Chord(Pitch... pitches) {
@@ -117,25 +120,24 @@ public class Chord implements Transposable<Chord>, Articulatable, Indexable<Pitc
         return new Chord(pitches);
     }
 
-    public void append(Pitch p) {
-        this.pitches = Arrays.copyOf(this.pitches, this.pitches.length + 1);
-        this.pitches[this.pitches.length - 1] = p;
+    public Chord append(Pitch p) {
+        Pitch[] pitches = Arrays.copyOf(this.pitches, this.pitches.length + 1);
+        pitches[pitches.length - 1] = p;
+        return new Chord(pitches);
     }
 
-    public void append(Chord chord) {
-        int i = size();
-        pitches = Arrays.copyOf(pitches, size() + chord.size());
-        for (Pitch p : chord.pitches) {
-            pitches[i++] = p;
-        }
+    public Chord append(Chord chord) {
+        Pitch[] pitches = Arrays.copyOf(this.pitches, size() + chord.size());
+        System.arraycopy(chord.pitches, 0, pitches, size(), chord.size());
+        return new Chord(pitches);
     }
 
-    public void append(Articulated articulated) {
+    public Chord append(Articulated articulated) {
         Articulatable element = articulated.getElement();
         if (element instanceof Pitch)
-            this.append((Pitch) element);
+            return this.append((Pitch) element);
         else if (element instanceof Chord)
-            this.append((Chord) element);
+            return this.append((Chord) element);
         else
             throw new IllegalArgumentException("Articualted should be sealed wrt elements.");
     }
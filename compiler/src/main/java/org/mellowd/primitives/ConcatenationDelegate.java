@@ -1,7 +1,8 @@
 package org.mellowd.primitives;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Essentially acts as a dynamic method invoker for selecting methods
@@ -9,22 +10,33 @@ import java.util.Map;
  */
 public class ConcatenationDelegate<R> {
 
+    /**
+     * Appends an object to an immutable root, returning the result. The root
+     * itself is left unchanged.
+     *
+     * @param <R> the type of the root
+     * @param <T> the type of the appended object
+     */
     @FunctionalInterface
     public interface AppendDelegate<R, T> {
-        void append(R root, T toAppend);
+        R append(R root, T toAppend);
     }
 
-    private final Map<Class<?>, AppendDelegate<R, ?>> appendDelegates;
+    // The registered delegates are stored wrapped in a cast to the type they append so
+    // that they can be invoked with any object that passed the lookup
+    private final Map<Class<?>, AppendDelegate<R, Object>> appendDelegates;
+    private final Map<Class<?>, AppendDelegate<R, Object>> resolvedDelegates;
 
     public ConcatenationDelegate() {
-        this.appendDelegates = new HashMap<>();
+        this.appendDelegates = new LinkedHashMap<>();
+        this.resolvedDelegates = new ConcurrentHashMap<>();
     }
 
     /**
      * Add a new delegate to the collection of supported {@link AppendDelegate}s. This
      * usually looks something like:
      * <pre>
-     *     addDelegate(Melody.class, Melody::appendTo);
+     *     addDelegate(Melody.class, Melody::append);
      * </pre>
      * for adding the melody append delegate for a melody concatenation delegate.
      *
@@ -33,34 +45,65 @@ public class ConcatenationDelegate<R> {
      * @param <T>        the type of the object that can now be appended to the root.
      */
     public <T> void addDelegate(Class<T> appendType, AppendDelegate<R, T> delegate) {
-        this.appendDelegates.put(appendType, delegate);
+        this.appendDelegates.put(appendType, (root, toAppend) -> delegate.append(root, appendType.cast(toAppend)));
+        this.resolvedDelegates.clear();
     }
 
     /**
-     * Append {@code other} to the {@code root}. This invokes the appropriate delegate. If
-     * one is not found it throws an {@link IllegalArgumentException}.
+     * Find the delegate that appends objects of the exact class {@code type}. This
+     * is the first registered delegate whose type {@code type} is assignable to.
+     * The result is cached per class so only the first lookup for a class searches
+     * the registered delegates.
      *
-     * @param root  the root object that is being built upon
-     * @param other the object being appended to the root
+     * @param type the class of the objects being appended
      *
-     * @throws IllegalArgumentException if concatenation with the given object is not supported
-     * @see #addDelegate(Class, AppendDelegate)
+     * @return the delegate that appends objects of the given class, it must only be given
+     * objects of that class, or null if concatenation with the given class is not supported
      */
-    @SuppressWarnings("unchecked")
-    public void append(R root, Object other) {
-        Class<?> type = other.getClass();
+    public AppendDelegate<R, Object> lookup(Class<?> type) {
+        AppendDelegate<R, Object> delegate = this.resolvedDelegates.get(type);
+        if (delegate != null) return delegate;
 
-        AppendDelegate delegate = null;
-        for (Map.Entry<Class<?>, AppendDelegate<R, ?>> appendDelegateEntry : this.appendDelegates.entrySet()) {
+        for (Map.Entry<Class<?>, AppendDelegate<R, Object>> appendDelegateEntry : this.appendDelegates.entrySet()) {
             if (appendDelegateEntry.getKey().isAssignableFrom(type)) {
                 delegate = appendDelegateEntry.getValue();
-                break;
+                this.resolvedDelegates.put(type, delegate);
+                return delegate;
             }
         }
 
+        return null;
+    }
+
+    /**
+     * Append {@code other} to the {@code root}. This invokes the appropriate delegate. If
+     * one is not found it throws an {@link IllegalArgumentException}.
+     *
+     * @param root  the root object that is being built upon
+     * @param other the object being appended to the root
+     *
+     * @return the result of appending {@code other} to {@code root}
+     *
+     * @throws IllegalArgumentException if concatenation with the given object is not supported
+     * @see #addDelegate(Class, AppendDelegate)
+     */
+    public R append(R root, Object other) {
+        AppendDelegate<R, Object> delegate = lookup(other.getClass());
         if (delegate == null)
-            throw new IllegalArgumentException("Concatenation with " + root.getClass().getSimpleName() + " and " + other.getClass().getSimpleName() + " is not supported");
+            throw unsupported(root, other);
 
-        delegate.append(root, other);
+        return delegate.append(root, other);
+    }
+
+    /**
+     * Create the exception thrown when {@code other} cannot be appended to {@code root}.
+     *
+     * @param root  the root object that is being built upon
+     * @param other the object that has no delegate
+     *
+     * @return the exception to throw
+     */
+    public IllegalArgumentException unsupported(R root, Object other) {
+        return new IllegalArgumentException("Concatenation with " + root.getClass().getSimpleName() + " and " + other.getClass().getSimpleName() + " is not supported");
     }
 }
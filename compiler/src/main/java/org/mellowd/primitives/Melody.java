@@ -17,7 +17,9 @@ import java.util.*;
 //articulation as this is typically the way that chords are played. In the future glissando
 //may function more like a trill but never the less, this class will function the same.
 //
-//The Melody class is simply a list wrapper. The order of the sounds is important.
+//The Melody class is an immutable sequence of sounds, the order of the sounds is important.
+//Appending to a melody or taking a range of it returns a new melody that shares the sounds
+//of the melody it was made from, see [Rope](../Rope.html).
 public class Melody implements Indexable<Articulated, Melody>, OctaveShiftable<Melody> {
 
     public static int compare(Melody left, Melody right) {
@@ -51,47 +53,49 @@ public class Melody implements Indexable<Articulated, Melody>, OctaveShiftable<M
     }
 
     //This is the data that supports the melody.
-    private final List<Articulated> sounds;
+    private final Rope<Articulated> sounds;
 
     public Melody() {
-        this.sounds = new ArrayList<>();
+        this(Rope.empty());
     }
 
     public Melody(Articulated... comps) {
-        this.sounds = new ArrayList<>();
-        Collections.addAll(this.sounds, comps);
+        this(Rope.of(Arrays.asList(comps)));
     }
 
     public Melody(List<Articulated> sounds) {
+        this(Rope.of(sounds));
+    }
+
+    private Melody(Rope<Articulated> sounds) {
         this.sounds = sounds;
     }
 
     //`append` is overloaded to support single or multiple concatenation. When
     //concatenated with another melody the ordering of the additions remains
-    //the same, just appended to the end of the melody.
-    public void append(Melody melody) {
-        this.sounds.addAll(melody.sounds);
+    //the same, just appended to the end of the melody. This melody is unchanged,
+    //the result is a new melody.
+    public Melody append(Melody melody) {
+        return new Melody(this.sounds.concat(melody.sounds));
     }
 
-    public void append(Articulated sound) {
-        this.sounds.add(sound);
+    public Melody append(Articulated sound) {
+        return new Melody(this.sounds.append(sound));
     }
 
-    public void append(Pitch pitch) {
-        this.sounds.add(new ArticulatedPitch(pitch));
+    public Melody append(Pitch pitch) {
+        return append(new ArticulatedPitch(pitch));
     }
 
-    public void append(Chord chord) {
-        this.sounds.add(new ArticulatedChord(chord));
+    public Melody append(Chord chord) {
+        return append(new ArticulatedChord(chord));
     }
 
+    //Shifting the octave is a view of this melody, each sound is shifted when it is read.
     @Override
     public Melody shiftOctave(int octaveShift) {
-        List<Articulated> sounds = new ArrayList<>(this.sounds.size());
-        for (Articulated s : this.sounds) {
-            sounds.add(s.shiftOctave(octaveShift));
-        }
-        return new Melody(sounds);
+        if (octaveShift == 0) return this;
+        return new Melody(this.sounds.map(s -> s.shiftOctave(octaveShift)));
     }
 
     public int size() {
@@ -110,11 +114,15 @@ public class Melody implements Indexable<Articulated, Melody>, OctaveShiftable<M
         return this.sounds.get(Indexable.calcIndex(index, size()));
     }
 
+    //A forward range inside the melody shares its sounds. Ranges that wrap around
+    //or run backwards are copied.
     @Override
     public Melody getAtRange(int lower, int upper) {
-        List<Articulated> newElements = new ArrayList<>(Indexable.sizeOfRange(lower, upper));
-
         int size = size();
+        if (0 <= lower && lower <= upper && upper < size)
+            return new Melody(this.sounds.slice(lower, upper + 1));
+
+        List<Articulated> newElements = new ArrayList<>(Indexable.sizeOfRange(lower, upper));
         Indexable.forEachInRange(lower, upper, i -> newElements.add(sounds.get(Indexable.calcIndex(i, size))));
 
         return new Melody(newElements);
@@ -7,17 +7,19 @@ import org.mellowd.intermediate.functions.operations.Indexable;
 import org.mellowd.intermediate.functions.operations.Slurrable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.StringJoiner;
-import java.util.stream.Collectors;
 
 //The `Rhythm` is responsible for the timing considerations in playable sounds. It specifies
 //the duration in the form of a [Beat](../Beat.html). In a Mellow D source file a rhythm is
 //a comma separated list of beats wrapped in `<` and `>`. Each beat is referred to by the first
 //letter in it's name. Additionally beats can be slurred together. This results in the durations
 //overlapping and the notes connecting more smoothly.
+//
+//Rhythms are immutable. Like a [Melody](../Melody.html) appending to a rhythm, slurring it
+//or taking a range of it returns a new rhythm that shares the beats of this one.
 public class Rhythm implements Slurrable<Rhythm>, Indexable<Beat, Rhythm> {
-    // TODO make Rhythms immutable as well as melodies and chords. Create builder classes for construction.
 
     public static int compare(Rhythm left, Rhythm right) {
         for (int i = 0; i < left.size(); i++) {
@@ -37,14 +39,22 @@ public class Rhythm implements Slurrable<Rhythm>, Indexable<Beat, Rhythm> {
         return 0;
     }
 
-    private final List<Beat> beats;
+    private final Rope<Beat> beats;
 
     //Creating a rhythm is done by specifying zero or more beats that make up the rhythm.
     public Rhythm() {
-        this(new ArrayList<>());
+        this(Rope.empty());
     }
 
-    private Rhythm(List<Beat> beats) {
+    public Rhythm(Beat... beats) {
+        this(Rope.of(Arrays.asList(beats)));
+    }
+
+    public Rhythm(List<Beat> beats) {
+        this(Rope.of(beats));
+    }
+
+    private Rhythm(Rope<Beat> beats) {
         this.beats = beats;
     }
 
@@ -52,23 +62,19 @@ public class Rhythm implements Slurrable<Rhythm>, Indexable<Beat, Rhythm> {
         return getAtIndex(Indexable.calcIndex(index, size())).isSlurred();
     }
 
-    //`append` adds a beat to the rhythm. It is equivalent to calling `append(beat, false)`
-    //as the added beat will not be slurred.
-    public void append(Beat beat) {
-        this.beats.add(beat);
+    //`append` returns a new rhythm with the beat added to the end of this one. The
+    //added beat is slurred only if it was already slurred.
+    public Rhythm append(Beat beat) {
+        return new Rhythm(this.beats.append(beat));
     }
 
-    public void append(Rhythm other) {
-        this.beats.addAll(other.beats);
+    public Rhythm append(Rhythm other) {
+        return new Rhythm(this.beats.concat(other.beats));
     }
 
     @Override
     public Rhythm toggleSlur() {
-        List<Beat> slurred = this.beats.stream()
-                .map(Slurrable::toggleSlur)
-                .collect(Collectors.toList());
-
-        return new Rhythm(slurred);
+        return new Rhythm(this.beats.map(Slurrable::toggleSlur));
     }
 
     public int size() {
@@ -76,12 +82,10 @@ public class Rhythm implements Slurrable<Rhythm>, Indexable<Beat, Rhythm> {
     }
 
     public Beat getDuration() {
-        double numQuarters = 0;
-
-        for (Beat beat : this.beats)
-            numQuarters += beat.getNumQuarters();
+        Beat[] duration = { Beat.ZERO };
+        this.beats.forEach(beat -> duration[0] = duration[0].add(beat));
 
-        return new Beat(numQuarters);
+        return duration[0];
     }
 
     @Override
@@ -89,14 +93,17 @@ public class Rhythm implements Slurrable<Rhythm>, Indexable<Beat, Rhythm> {
         return this.beats.get(Indexable.calcIndex(index, size()));
     }
 
+    //A forward range inside the rhythm shares its beats, other ranges are copied.
     @Override
     public Rhythm getAtRange(int lower, int upper) {
-        Rhythm r = new Rhythm();
-
         int size = size();
-        Indexable.forEachInRange(lower, upper, i -> r.append(this.beats.get(Indexable.calcIndex(i, size))));
+        if (0 <= lower && lower <= upper && upper < size)
+            return new Rhythm(this.beats.slice(lower, upper + 1));
+
+        List<Beat> beats = new ArrayList<>(Indexable.sizeOfRange(lower, upper));
+        Indexable.forEachInRange(lower, upper, i -> beats.add(this.beats.get(Indexable.calcIndex(i, size))));
 
-        return r;
+        return new Rhythm(beats);
     }
 
     @Override
@@ -0,0 +1,297 @@
+//Rope
+//====
+
+package org.mellowd.primitives;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+//A `Rope` is the immutable sequence behind melodies and rhythms. Concatenating two ropes,
+//taking a slice of one or mapping every element (like shifting the octave of every note)
+//doesn't copy the elements, it creates a small node that refers to the ropes it was made
+//from. Values built from other values share the elements of the values they were built
+//from so a large generated melody isn't copied every time something is added to it.
+//
+//Small ropes are kept flat, a concatenation that fits in `LEAF_SIZE` elements is copied
+//into a single leaf so that appending one element at a time doesn't build a long chain
+//of tiny nodes. Larger concatenations are kept balanced. A rope is flattened into a leaf
+//the first time it is indexed, as every element of a played melody is.
+abstract class Rope<E> {
+    private static final int LEAF_SIZE = 32;
+    private static final int MAX_DEPTH = 48;
+
+    private static final Rope<?> EMPTY = new Leaf<>(new Object[0], 0, 0);
+
+    @SuppressWarnings("unchecked")
+    static <E> Rope<E> empty() {
+        return (Rope<E>) EMPTY;
+    }
+
+    static <E> Rope<E> of(Collection<? extends E> elements) {
+        if (elements.isEmpty()) return empty();
+        Object[] copy = elements.toArray();
+        return new Leaf<>(copy, 0, copy.length);
+    }
+
+    protected final int size;
+    protected final int depth;
+
+    private Rope(int size, int depth) {
+        this.size = size;
+        this.depth = depth;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    //Get the element at `index`, in the range `[0, size)`
+    abstract E get(int index);
+
+    //Apply `action` to each element in order. This doesn't flatten the rope.
+    abstract void forEach(Consumer<? super E> action);
+
+    //Copy the elements in `[from, to)` into `dest` starting at `destPos`
+    protected abstract void copyTo(int from, int to, Object[] dest, int destPos);
+
+    Rope<E> append(E element) {
+        if (this.size < LEAF_SIZE) {
+            Object[] elements = new Object[this.size + 1];
+            copyTo(0, this.size, elements, 0);
+            elements[this.size] = element;
+            return new Leaf<>(elements, 0, elements.length);
+        }
+        return concat(new Leaf<>(new Object[]{ element }, 0, 1));
+    }
+
+    Rope<E> concat(Rope<E> other) {
+        if (other.isEmpty()) return this;
+        if (this.isEmpty()) return other;
+
+        Rope<E> result = join(this, other);
+        return result.depth > MAX_DEPTH ? flatten(result) : result;
+    }
+
+    //Join two ropes keeping the depths of the two sides of every concatenation within one
+    //of each other, like an AVL tree. The taller rope is descended along the side it is
+    //being joined on until a subtree as short as the other rope is found so a rope built by
+    //repeated concatenation stays `O(log n)` deep. Small neighbours are merged into a leaf.
+    private static <E> Rope<E> join(Rope<E> left, Rope<E> right) {
+        if (left.size + right.size <= LEAF_SIZE)
+            return flatten(left, right);
+
+        //Merge a small tail with the small rope being added to it so that a rope
+        //built a few elements at a time is made of full leaves
+        if (left instanceof Concat<E> l && l.right.size + right.size <= LEAF_SIZE)
+            return join(l.left, flatten(l.right, right));
+        if (right instanceof Concat<E> r && left.size + r.left.size <= LEAF_SIZE)
+            return join(flatten(left, r.left), r.right);
+
+        if (left.depth > right.depth + 1 && left instanceof Concat<E> l)
+            return balance(l.left, join(l.right, right));
+        if (right.depth > left.depth + 1 && right instanceof Concat<E> r)
+            return balance(join(left, r.left), r.right);
+        return new Concat<>(left, right);
+    }
+
+    //Concatenate two ropes whose depths differ by at most two, rotating if they differ by two
+    private static <E> Rope<E> balance(Rope<E> left, Rope<E> right) {
+        if (left.depth > right.depth + 1 && left instanceof Concat<E> l) {
+            if (l.left.depth >= l.right.depth)
+                return new Concat<>(l.left, new Concat<>(l.right, right));
+            if (l.right instanceof Concat<E> lr)
+                return new Concat<>(new Concat<>(l.left, lr.left), new Concat<>(lr.right, right));
+        } else if (right.depth > left.depth + 1 && right instanceof Concat<E> r) {
+            if (r.right.depth >= r.left.depth)
+                return new Concat<>(new Concat<>(left, r.left), r.right);
+            if (r.left instanceof Concat<E> rl)
+                return new Concat<>(new Concat<>(left, rl.left), new Concat<>(rl.right, r.right));
+        }
+        return new Concat<>(left, right);
+    }
+
+    //The elements in `[from, to)`, sharing the elements of this rope
+    abstract Rope<E> slice(int from, int to);
+
+    //A view of this rope with `mapper` applied to each element. The mapper is applied
+    //when an element is read so it must not have side effects. Mapping a mapped rope
+    //composes the mappers rather than adding a node but each composition still nests a
+    //call, so like a concatenation the result is flattened once it is too deep.
+    Rope<E> map(UnaryOperator<E> mapper) {
+        if (this.isEmpty()) return this;
+
+        Rope<E> result = this instanceof Mapped<E> m
+                ? new Mapped<>(m.source, e -> mapper.apply(m.mapper.apply(e)), m.depth + 1)
+                : new Mapped<>(this, mapper, this.depth + 1);
+        return result.depth > MAX_DEPTH ? flatten(result) : result;
+    }
+
+    @SafeVarargs
+    private static <E> Leaf<E> flatten(Rope<E>... ropes) {
+        int size = 0;
+        for (Rope<E> rope : ropes)
+            size += rope.size;
+
+        Object[] elements = new Object[size];
+        int pos = 0;
+        for (Rope<E> rope : ropes) {
+            rope.copyTo(0, rope.size, elements, pos);
+            pos += rope.size;
+        }
+        return new Leaf<>(elements, 0, size);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Rope<?> other) || this.size != other.size) return false;
+
+        Object[] mine = new Object[this.size];
+        Object[] theirs = new Object[other.size];
+        this.copyTo(0, this.size, mine, 0);
+        other.copyTo(0, other.size, theirs, 0);
+        return Arrays.equals(mine, theirs);
+    }
+
+    //Hashes like a `List` of the same elements
+    @Override
+    public int hashCode() {
+        int[] hash = { 1 };
+        forEach(e -> hash[0] = 31 * hash[0] + (e == null ? 0 : e.hashCode()));
+        return hash[0];
+    }
+
+    //A view of `length` elements of an array, starting at `offset`. The array is never
+    //modified after the leaf is created so slices can share it.
+    private static final class Leaf<E> extends Rope<E> {
+        private final Object[] elements;
+        private final int offset;
+
+        private Leaf(Object[] elements, int offset, int length) {
+            super(length, 0);
+            this.elements = elements;
+            this.offset = offset;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        E get(int index) {
+            return (E) this.elements[this.offset + index];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void forEach(Consumer<? super E> action) {
+            for (int i = 0; i < this.size; i++)
+                action.accept((E) this.elements[this.offset + i]);
+        }
+
+        @Override
+        protected void copyTo(int from, int to, Object[] dest, int destPos) {
+            System.arraycopy(this.elements, this.offset + from, dest, destPos, to - from);
+        }
+
+        @Override
+        Rope<E> slice(int from, int to) {
+            if (from == 0 && to == this.size) return this;
+            if (from == to) return empty();
+            return new Leaf<>(this.elements, this.offset + from, to - from);
+        }
+    }
+
+    //A rope made of other ropes that is flattened the first time it is indexed. The
+    //flattened leaf only has final fields so it is safe to publish to other threads
+    //without synchronization, at worst two threads both flatten the rope.
+    private abstract static class Composite<E> extends Rope<E> {
+        private Leaf<E> flattened;
+
+        private Composite(int size, int depth) {
+            super(size, depth);
+        }
+
+        @Override
+        E get(int index) {
+            Leaf<E> flattened = this.flattened;
+            if (flattened == null) {
+                flattened = flatten(this);
+                this.flattened = flattened;
+            }
+            return flattened.get(index);
+        }
+    }
+
+    private static final class Concat<E> extends Composite<E> {
+        private final Rope<E> left;
+        private final Rope<E> right;
+
+        private Concat(Rope<E> left, Rope<E> right) {
+            super(left.size + right.size, Math.max(left.depth, right.depth) + 1);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        void forEach(Consumer<? super E> action) {
+            this.left.forEach(action);
+            this.right.forEach(action);
+        }
+
+        @Override
+        protected void copyTo(int from, int to, Object[] dest, int destPos) {
+            int split = this.left.size;
+            if (from < split) {
+                int leftTo = Math.min(to, split);
+                this.left.copyTo(from, leftTo, dest, destPos);
+                destPos += leftTo - from;
+            }
+            if (to > split)
+                this.right.copyTo(Math.max(from, split) - split, to - split, dest, destPos);
+        }
+
+        @Override
+        Rope<E> slice(int from, int to) {
+            if (from == 0 && to == this.size) return this;
+
+            int split = this.left.size;
+            if (to <= split) return this.left.slice(from, to);
+            if (from >= split) return this.right.slice(from - split, to - split);
+            return this.left.slice(from, split).concat(this.right.slice(0, to - split));
+        }
+    }
+
+    private static final class Mapped<E> extends Composite<E> {
+        private final Rope<E> source;
+        private final UnaryOperator<E> mapper;
+
+        private Mapped(Rope<E> source, UnaryOperator<E> mapper, int depth) {
+            super(source.size, depth);
+            this.source = source;
+            this.mapper = mapper;
+        }
+
+        @Override
+        void forEach(Consumer<? super E> action) {
+            this.source.forEach(e -> action.accept(this.mapper.apply(e)));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void copyTo(int from, int to, Object[] dest, int destPos) {
+            this.source.copyTo(from, to, dest, destPos);
+            for (int i = destPos; i < destPos + (to - from); i++)
+                dest[i] = this.mapper.apply((E) dest[i]);
+        }
+
+        @Override
+        Rope<E> slice(int from, int to) {
+            if (from == 0 && to == this.size) return this;
+            return this.source.slice(from, to).map(this.mapper);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.mellowd;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.mellowd.compiler.ExecutionMode;
+import org.mellowd.io.Compiler;
+import org.mellowd.io.CompilerOptions;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+import java.io.File;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// The cooperative scheduler must produce exactly what the threaded one does
+public class ExecutionModeTest {
+
+    public static List<File> sources() throws Exception {
+        File dir = new File(Thread.currentThread().getContextClassLoader().getResource("compilertest").toURI());
+        File[] files = dir.listFiles((d, name) -> name.endsWith(Compiler.FILE_EXTENSION));
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    private static List<String> dump(Sequence sequence) {
+        List<String> tracks = new ArrayList<>();
+        for (Track track : sequence.getTracks()) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < track.size(); i++) {
+                MidiEvent event = track.get(i);
+                sb.append(event.getTick()).append(':').append(HexFormat.of().formatHex(event.getMessage().getMessage())).append(' ');
+            }
+            tracks.add(sb.toString());
+        }
+        // Track order follows block registration which is not part of the contract
+        Collections.sort(tracks);
+        return tracks;
+    }
+
+    private static Sequence compile(File source, ExecutionMode mode) throws Exception {
+        return Compiler.compile(source, new CompilerOptions.Builder()
+                .setSilent(true)
+                .setExecutionMode(mode)
+                .build());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("sources")
+    public void cooperativeMatchesThreaded(File source) throws Exception {
+        List<String> threaded = dump(compile(source, ExecutionMode.THREADED));
+        List<String> cooperative = dump(compile(source, ExecutionMode.COOPERATIVE));
+        assertEquals(threaded, cooperative, "Execution modes disagree on " + source.getName());
+
+        // And it is the same every time
+        assertEquals(cooperative, dump(compile(source, ExecutionMode.COOPERATIVE)));
+    }
+}
@@ -0,0 +1,138 @@
+package org.mellowd.compiler;
+
+import org.junit.jupiter.api.Test;
+import org.mellowd.intermediate.NullOutput;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.expressions.Constant;
+import org.mellowd.intermediate.executable.expressions.Expression;
+import org.mellowd.intermediate.executable.statements.Statement;
+import org.mellowd.primitives.ArticulatedPitch;
+import org.mellowd.primitives.Melody;
+import org.mellowd.primitives.Pitch;
+import org.mellowd.testutil.CompilerTestFrame;
+import org.mellowd.testutil.TestEnvironment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConstantFoldingTest extends CompilerTestFrame {
+    private static final QualifiedName MEL = QualifiedName.ofUnqualified("mel");
+    private static final QualifiedName X = QualifiedName.ofUnqualified("x");
+
+    public ConstantFoldingTest() {
+        super(ConstantFoldingTest.class.getSimpleName());
+    }
+
+    private Statement compileStmt(String src) {
+        super.init(src);
+        Statement stmt = super.compiler.visitStmt(super.parser.stmt());
+        super.errorListener.assertNoErrors();
+        return stmt;
+    }
+
+    private static Melody melody(Pitch... pitches) {
+        Melody melody = new Melody();
+        for (Pitch pitch : pitches)
+            melody = melody.append(new ArticulatedPitch(pitch));
+        return melody;
+    }
+
+    @Test
+    public void literalMelodiesAreFolded() {
+        super.init("[a, b, (c, e)]");
+        Expression<Melody> expr = super.compiler.visitMelody(super.parser.melody());
+        super.errorListener.assertNoErrors();
+
+        assertInstanceOf(Constant.class, expr);
+        // Each articulated note, the chord and the melody
+        assertEquals(5, super.compiler.getFoldedExpressions());
+
+        Melody first = expr.evaluate(new TestEnvironment());
+        assertSame(first, expr.evaluate(new TestEnvironment()));
+    }
+
+    @Test
+    public void referencesAreNotFolded() {
+        super.init("[a, mel]");
+        Expression<Melody> expr = super.compiler.visitMelody(super.parser.melody());
+        super.errorListener.assertNoErrors();
+
+        assertFalse(expr instanceof Constant);
+        // Only the note
+        assertEquals(1, super.compiler.getFoldedExpressions());
+    }
+
+    @Test
+    public void literalPhrasesAreFolded() {
+        compileStmt("[a, b]*<q, e>");
+
+        // 2 notes, the melody, the rhythm and the phrase
+        assertEquals(5, super.compiler.getFoldedExpressions());
+    }
+
+    @Test
+    public void invariantsAreHoistedOutOfLoops() {
+        super.init("def mel -> [e]\n4 * { x -> [mel, a] }");
+        super.compiler.visitStmt(super.parser.stmt());
+        Statement stmt = super.compiler.visitStmt(super.parser.stmt());
+        super.errorListener.assertNoErrors();
+        assertEquals(1, super.compiler.getHoistedExpressions());
+
+        TestEnvironment env = new TestEnvironment();
+        env.getMemory().define(MEL, melody(Pitch.E));
+        stmt.execute(env, NullOutput.getInstance());
+        assertEquals(melody(Pitch.E, Pitch.A), env.getMemory().get(X));
+
+        // Running the loop again computes the value again
+        env = new TestEnvironment();
+        env.getMemory().define(MEL, melody(Pitch.F));
+        stmt.execute(env, NullOutput.getInstance());
+        assertEquals(melody(Pitch.F, Pitch.A), env.getMemory().get(X));
+    }
+
+    @Test
+    public void parametersAreHoistedOutOfLoops() {
+        compileStmt("riff -> func mel => { 4 * { x -> [mel, a] } }");
+        assertEquals(1, super.compiler.getHoistedExpressions());
+    }
+
+    // Another block may assign `mel` while the loop runs, through `globals.mel` or its
+    // qualified name, so it is read on every iteration
+    @Test
+    public void variablesOtherBlocksCanAssignAreNotInvariant() {
+        Statement stmt = compileStmt("4 * { x -> [mel, a] }");
+        assertEquals(0, super.compiler.getHoistedExpressions());
+
+        TestEnvironment env = new TestEnvironment();
+        env.getMemory().set(MEL, melody(Pitch.E));
+        stmt.execute(env, NullOutput.getInstance());
+        assertEquals(melody(Pitch.E, Pitch.A), env.getMemory().get(X));
+    }
+
+    @Test
+    public void assignedVariablesAreNotInvariant() {
+        Statement stmt = compileStmt("2 * { x -> [mel, a] mel -> [b] }");
+        assertEquals(0, super.compiler.getHoistedExpressions());
+
+        TestEnvironment env = new TestEnvironment();
+        env.getMemory().set(MEL, melody(Pitch.E));
+        stmt.execute(env, NullOutput.getInstance());
+        assertEquals(melody(Pitch.B, Pitch.A), env.getMemory().get(X));
+    }
+
+    @Test
+    public void assignmentsInInnerLoopsChangeOuterLoops() {
+        compileStmt("2 * { x -> [mel, a] 2 * { mel -> [b] } }");
+        assertEquals(0, super.compiler.getHoistedExpressions());
+    }
+
+    @Test
+    public void loopCounterIsNotInvariant() {
+        Statement stmt = compileStmt("3 * { x -> mel:it }");
+        assertEquals(0, super.compiler.getHoistedExpressions());
+
+        TestEnvironment env = new TestEnvironment();
+        env.getMemory().set(MEL, melody(Pitch.C, Pitch.D, Pitch.E));
+        stmt.execute(env, NullOutput.getInstance());
+        assertEquals(new ArticulatedPitch(Pitch.E), env.getMemory().get(X));
+    }
+}
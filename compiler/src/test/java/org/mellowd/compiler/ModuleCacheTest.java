@@ -0,0 +1,116 @@
+package org.mellowd.compiler;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mellowd.io.Compiler;
+import org.mellowd.io.DirectorySourceFinder;
+import org.mellowd.midi.TimingEnvironment;
+
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModuleCacheTest {
+    private static final String SONG = "" +
+            "import * from lib\n" +
+            "import tune from lib as other\n" +
+            "def block myblock\n" +
+            "myblock {\n" +
+            "    lib.tune*<q>\n" +
+            "    other.tune*<q>\n" +
+            "}\n";
+
+    @TempDir
+    Path dir;
+
+    private Path lib;
+    private ModuleCache cache;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        this.lib = dir.resolve("lib" + Compiler.FILE_EXTENSION);
+        Files.writeString(this.lib, "def tune -> [a, b, c]\n");
+        this.cache = new ModuleCache();
+    }
+
+    private Sequence compileSong() throws Exception {
+        return compileSong(dir);
+    }
+
+    private Sequence compileSong(Path sourceRoot) throws Exception {
+        MellowD mellowD = new MellowD(new DirectorySourceFinder(sourceRoot.toFile(), Compiler.FILE_EXTENSION),
+                new TimingEnvironment(4, 4, 120));
+        mellowD.setModuleCache(this.cache);
+
+        MellowDCompiler compiler = new MellowDCompiler(mellowD);
+        MellowDParser.SongContext song = new MellowDParser(new CommonTokenStream(
+                new MellowDLexer(CharStreams.fromString(SONG)))).song();
+        song.importStmt().forEach(compiler::visitImportStmt);
+        compiler.visitSong(song);
+        return mellowD.execute().toSequence();
+    }
+
+    private static int events(Sequence sequence) {
+        int count = 0;
+        for (Track track : sequence.getTracks())
+            count += track.size();
+        return count;
+    }
+
+    @Test
+    public void testModuleIsOnlyParsedOnce() throws Exception {
+        Sequence first = compileSong();
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits(), "The second import of the same module should hit");
+
+        Sequence second = compileSong();
+        assertEquals(1, cache.getMisses());
+        assertEquals(3, cache.getHits());
+        assertEquals(events(first), events(second));
+    }
+
+    @Test
+    public void testChangedModuleIsParsedAgain() throws Exception {
+        int before = events(compileSong());
+
+        Files.writeString(this.lib, "def tune -> [a, b, c, d, e]\n");
+        int after = events(compileSong());
+
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.size());
+        assertTrue(after > before, "The changed module was not recompiled");
+    }
+
+    @Test
+    public void testSameImportInDifferentDirectoriesIsCachedSeparately() throws Exception {
+        Path otherDir = Files.createDirectory(dir.resolve("other"));
+        Files.writeString(otherDir.resolve("lib" + Compiler.FILE_EXTENSION), "def tune -> [a, b, c, d, e]\n");
+
+        int here = events(compileSong());
+        int there = events(compileSong(otherDir));
+        assertTrue(there > here, "The other directory's module was not compiled");
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMisses());
+
+        // Alternating between the songs doesn't evict either module
+        assertEquals(here, events(compileSong()));
+        assertEquals(there, events(compileSong(otherDir)));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testModuleWithErrorsIsNotCached() throws Exception {
+        Files.writeString(this.lib, "def tune -> [a, b, \n");
+        try {
+            compileSong();
+        } catch (Exception ignored) {
+        }
+        assertEquals(0, cache.size());
+    }
+}
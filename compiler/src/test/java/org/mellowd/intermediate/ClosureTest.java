@@ -0,0 +1,121 @@
+package org.mellowd.intermediate;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.intermediate.executable.expressions.Constant;
+import org.mellowd.intermediate.executable.statements.Statement;
+import org.mellowd.intermediate.functions.Argument;
+import org.mellowd.intermediate.functions.Parameter;
+import org.mellowd.intermediate.variables.Memory;
+import org.mellowd.intermediate.variables.SymbolTable;
+import org.mellowd.testutil.CompilerTestFrame;
+import org.mellowd.testutil.TestEnvironment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClosureTest extends CompilerTestFrame {
+    public ClosureTest() {
+        super(ClosureTest.class.getSimpleName());
+    }
+
+    private ExecutionEnvironment run(String src) {
+        super.init(src);
+
+        Statement stmt = super.compiler.visitStmtList(super.parser.stmtList());
+        super.errorListener.assertNoErrors();
+
+        ExecutionEnvironment env = new TestEnvironment();
+        stmt.execute(env, NullOutput.getInstance());
+        return env;
+    }
+
+    private static Object get(ExecutionEnvironment env, String name) {
+        return env.getMemory().get(QualifiedName.ofUnqualified(name));
+    }
+
+    @Test
+    public void returnsThroughTheReturnSlot() {
+        ExecutionEnvironment env = run("{ fn -> func x => { return -> x } r -> { fn <= 3 } }");
+
+        assertEquals(3, get(env, "r"));
+    }
+
+    @Test
+    public void localsStayInTheCall() {
+        ExecutionEnvironment env = run("{ fn -> func x => { y -> x return -> y } r -> { fn <= 1 } }");
+
+        assertEquals(1, get(env, "r"));
+        assertNull(get(env, "y"));
+        assertNull(((Closure) get(env, "fn")).getCaptured().get(QualifiedName.ofUnqualified("y")));
+    }
+
+    @Test
+    public void optionalParametersFallBackToTheirDefaults() {
+        ExecutionEnvironment env = run("{ fn -> func x, y? -> 5 => { return -> y } "
+                + "ra -> { fn <= 1 } rb -> { fn <= 1, 2 } rc -> { fn <= x: 1, y: 7 } }");
+
+        assertEquals(5, get(env, "ra"));
+        assertEquals(2, get(env, "rb"));
+        assertEquals(7, get(env, "rc"));
+    }
+
+    @Test
+    public void loopsInTheBodySeeParametersAndLocals() {
+        ExecutionEnvironment env = run("{ fn -> func n => { 3 * { total -> n last -> it } return -> total } r -> { fn <= 4 } }");
+
+        assertEquals(4, get(env, "r"));
+        assertNull(get(env, "last"));
+    }
+
+    @Test
+    public void innerClosuresCaptureParameters() {
+        ExecutionEnvironment env = run("{ fn -> func x => { return -> func => { return -> x } } gn -> { fn <= 9 } r -> { gn <= } }");
+
+        assertEquals(9, get(env, "r"));
+    }
+
+    // The original call: copy the arguments into a new symbol table in front of the captured
+    // memory and read the return value out of it.
+    private static Object callWithSymbolTable(Closure closure, ExecutionEnvironment env, Argument<?>... args) {
+        Memory memory = new SymbolTable(closure.getCaptured());
+        int i = 0;
+        for (Parameter<?> parameter : closure.getAbstraction().getParameters())
+            memory.set(parameter.getNameAsQualified(), args[i++].getValue().evaluate(env));
+
+        ExecutionEnvironment bodyEnv = new ClosureEvaluationEnvironment(env, memory, closure.getAbstraction().isPercussion());
+        closure.getAbstraction().getBody().execute(bodyEnv, NullOutput.getInstance());
+        return memory.get(Closure.RETURN_NAME);
+    }
+
+    // Compares calling a small function with a call frame against calling it with a
+    // symbol table per call.
+    @Test
+    @Tag("benchmark")
+    public void benchmarkCalls() {
+        int calls = 2_000_000;
+        ExecutionEnvironment env = run("{ fn -> func x, y => { return -> y } }");
+        Closure fn = (Closure) get(env, "fn");
+        Argument<?>[] args = { new Argument<>(new Constant<>(1)), new Argument<>(new Constant<>(2)) };
+
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += (Integer) fn.call(env, NullOutput.getInstance(), args);
+            sum += (Integer) callWithSymbolTable(fn, env, args);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++)
+            sum += (Integer) callWithSymbolTable(fn, env, args);
+        long tableTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < calls; i++)
+            sum += (Integer) fn.call(env, NullOutput.getInstance(), args);
+        long frameTime = System.nanoTime() - start;
+
+        assertEquals(8L * calls, sum);
+        System.out.printf("%d calls: symbol table %.0f calls/s, call frame %.0f calls/s%n",
+                calls, calls / (tableTime / 1e9), calls / (frameTime / 1e9));
+    }
+}
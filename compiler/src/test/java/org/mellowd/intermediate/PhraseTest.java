@@ -0,0 +1,146 @@
+package org.mellowd.intermediate;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mellowd.intermediate.functions.operations.Articulatable;
+import org.mellowd.midi.*;
+import org.mellowd.primitives.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PhraseTest {
+    private static final Pitch[] PITCHES = { Pitch.A, Pitch.B, Pitch.C, Pitch.D, Pitch.E, Pitch.F, Pitch.G, Pitch.REST };
+    private static final Beat[] BEATS = {
+            Beat.QUARTER(), Beat.EIGHTH(), Beat.HALF(), Beat.SIXTEENTH(),
+            Beat.EIGHTH().tuplet(3), Beat.QUARTER().tuplet(7, 4), Beat.QUARTER().dot(1)
+    };
+
+    private static Phrase randomPhrase(Random random, int notes, int beats) {
+        Articulation[] articulations = Articulation.values();
+        List<Articulated> sounds = new ArrayList<>();
+        for (int i = 0; i < notes; i++) {
+            Pitch pitch = PITCHES[random.nextInt(PITCHES.length)];
+            Articulatable element = pitch != Pitch.REST && random.nextInt(5) == 0 ? Chord.minor(pitch) : pitch;
+            sounds.add(element.articulate(articulations[random.nextInt(articulations.length)]));
+        }
+        List<Beat> rhythm = new ArrayList<>();
+        for (int i = 0; i < beats; i++) {
+            Beat beat = BEATS[random.nextInt(BEATS.length)];
+            rhythm.add(random.nextInt(4) == 0 ? beat.toggleSlur() : beat);
+        }
+        return new Phrase(new Melody(sounds), new Rhythm(rhythm));
+    }
+
+    // The original playback: create and play a sound for every note
+    private static void playBySound(Phrase phrase, MIDIChannel channel) {
+        Melody melody = phrase.getMelody();
+        Rhythm rhythm = phrase.getRhythm();
+        int numElements = Math.max(rhythm.size(), melody.size());
+        if (rhythm.size() == 0 || melody.size() == 0) return;
+
+        boolean lastSlurred = false;
+        Pedal sustainPedal = channel.getController(MIDIControl.SUSTAIN);
+        for (int i = 0; i < numElements; i++) {
+            boolean slurred = rhythm.isSlurred(i);
+            if (slurred && !lastSlurred) {
+                sustainPedal.press();
+                channel.setSlurred(true);
+            } else if (!slurred && lastSlurred) {
+                channel.setSlurred(false);
+                sustainPedal.release();
+            }
+
+            melody.getElementAtIndex(i).createSound(rhythm.getAtIndex(i)).play(channel);
+            lastSlurred = slurred;
+        }
+        channel.setSlurred(false);
+        sustainPedal.release();
+    }
+
+    private static List<String> events(MIDITrack track) {
+        track.seal();
+        List<String> events = new ArrayList<>();
+        track.forEach(e -> {
+            StringBuilder event = new StringBuilder().append(e.getTick()).append(':');
+            for (byte b : e.getMessage().getMessage()) event.append(String.format("%02x", b));
+            events.add(event.toString());
+        });
+        return events;
+    }
+
+    @Test
+    public void compiledPhrasesPlayLikeTheirSounds() throws Exception {
+        Random random = new Random(17);
+        TimingEnvironment env = new TimingEnvironment(4, 4, 120);
+        for (int run = 0; run < 20; run++) {
+            Phrase phrase = randomPhrase(random, 1 + random.nextInt(60), 1 + random.nextInt(60));
+
+            MIDITrack bySound = new MIDITrack("sounds");
+            MIDIChannel soundChannel = new MIDIChannel(bySound, false, 0, env);
+            playBySound(phrase, soundChannel);
+            playBySound(phrase, soundChannel);
+            soundChannel.stepIntoFuture(env.getPPQ() * 8L);
+
+            MIDITrack compiled = new MIDITrack("compiled");
+            MIDIChannel compiledChannel = new MIDIChannel(compiled, false, 0, env);
+            phrase.play(compiledChannel);
+            phrase.play(compiledChannel);
+            compiledChannel.stepIntoFuture(env.getPPQ() * 8L);
+
+            assertEquals(soundChannel.getStateTime(), compiledChannel.getStateTime());
+            assertEquals(events(bySound), events(compiled));
+        }
+    }
+
+    @Test
+    public void compiledOncePerTimingEnvironment() {
+        Phrase phrase = randomPhrase(new Random(3), 30, 8);
+        TimingEnvironment env = new TimingEnvironment(4, 4, 120);
+
+        CompiledPhrase compiled = phrase.compile(env);
+        assertSame(compiled, phrase.compile(env));
+        assertEquals(30, compiled.size());
+        // A handful of distinct notes and chords
+        assertTrue(compiled.getNumPitchSets() <= 30);
+
+        TimingEnvironment other = new TimingEnvironment(3, 4, 90);
+        assertNotSame(compiled, phrase.compile(other));
+        assertSame(other, phrase.compile(other).getTimingEnvironment());
+
+        assertEquals(0, new Phrase(new Melody(), new Rhythm(Beat.QUARTER())).compile(env).size());
+    }
+
+    // Compares playing a long phrase by creating a sound for every note against playing
+    // the compiled phrase.
+    @Test
+    @Tag("benchmark")
+    public void benchmarkPlayback() {
+        int notes = 10_000;
+        int plays = 20;
+        Phrase phrase = randomPhrase(new Random(5), notes, 16);
+        TimingEnvironment env = new TimingEnvironment(4, 4, 120);
+
+        for (int i = 0; i < 3; i++) {
+            playBySound(phrase, new MIDIChannel(new MIDITrack("warmup"), false, 0, env));
+            phrase.play(new MIDIChannel(new MIDITrack("warmup"), false, 0, env));
+        }
+
+        MIDIChannel soundChannel = new MIDIChannel(new MIDITrack("sounds"), false, 0, env);
+        long start = System.nanoTime();
+        for (int i = 0; i < plays; i++) playBySound(phrase, soundChannel);
+        long soundTime = System.nanoTime() - start;
+
+        MIDIChannel compiledChannel = new MIDIChannel(new MIDITrack("compiled"), false, 0, env);
+        start = System.nanoTime();
+        for (int i = 0; i < plays; i++) phrase.play(compiledChannel);
+        long compiledTime = System.nanoTime() - start;
+
+        assertEquals(soundChannel.getStateTime(), compiledChannel.getStateTime());
+        System.out.printf("Play a %d note phrase %d times: sound per note %.1f ms, compiled %.1f ms%n",
+                notes, plays, soundTime / 1e6, compiledTime / 1e6);
+    }
+}
@@ -0,0 +1,110 @@
+package org.mellowd.intermediate;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Many blocks syncing many times. A lost wakeup or a deadlock shows up as a timeout.
+public class SyncLinkStressTest {
+    private static final int BLOCKS = 48;
+
+    private static class CountingOutput implements Output {
+        private long stateTime = 0;
+        private final long[] syncedTimes;
+
+        private CountingOutput(int syncs) {
+            this.syncedTimes = new long[syncs];
+        }
+
+        @Override
+        public void put(Playable playable) {
+            if (playable instanceof LeapInTime)
+                this.stateTime += ((LeapInTime) playable).getTicks();
+        }
+
+        @Override
+        public long getStateTime() {
+            return this.stateTime;
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    // Returns how long the syncs took in ns
+    private long stress(ExecutorService service, int syncs) throws Exception {
+        Set<CountingOutput> outputs = new LinkedHashSet<>();
+        for (int i = 0; i < BLOCKS; i++)
+            outputs.add(new CountingOutput(syncs));
+        SyncLink link = new SyncLink(outputs);
+
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (CountingOutput output : outputs) {
+            futures.add(service.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int sync = 0; sync < syncs; sync++) {
+                    output.stateTime += random.nextInt(960);
+                    link.sync(output);
+                    output.syncedTimes[sync] = output.stateTime;
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get(60, TimeUnit.SECONDS);
+        long took = System.nanoTime() - start;
+
+        for (int sync = 0; sync < syncs; sync++) {
+            long expected = -1;
+            for (CountingOutput output : outputs) {
+                if (expected < 0) expected = output.syncedTimes[sync];
+                assertEquals(expected, output.syncedTimes[sync], "Outputs out of sync at sync " + sync);
+            }
+        }
+        return took;
+    }
+
+    private long stressVirtualThreads(int syncs) throws Exception {
+        try (ExecutorService service = Executors.newVirtualThreadPerTaskExecutor()) {
+            return stress(service, syncs);
+        }
+    }
+
+    private long stressSmallForkJoinPool(int syncs) throws Exception {
+        // Fewer workers than blocks, the pool has to compensate for the ones waiting on the link
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            return stress(pool, syncs);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        stressVirtualThreads(100);
+    }
+
+    @Test
+    public void testSmallForkJoinPool() throws Exception {
+        stressSmallForkJoinPool(100);
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkSyncs() throws Exception {
+        int syncs = 400;
+        long virtual = stressVirtualThreads(syncs);
+        long forkJoin = stressSmallForkJoinPool(syncs);
+        System.out.printf("%d blocks x %d syncs: virtual threads %.2f ms (%.2f us per sync), ForkJoinPool(4) %.2f ms (%.2f us per sync)%n",
+                BLOCKS, syncs, virtual / 1e6, virtual / 1e3 / syncs, forkJoin / 1e6, forkJoin / 1e3 / syncs);
+    }
+}
@@ -0,0 +1,169 @@
+package org.mellowd.intermediate.executable.expressions;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mellowd.compiler.CompilationException;
+import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.SourceLink;
+import org.mellowd.primitives.*;
+import org.mellowd.testutil.CompilerTestFrame;
+import org.mellowd.testutil.TestEnvironment;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcatenationTest extends CompilerTestFrame {
+    public ConcatenationTest() {
+        super(ConcatenationTest.class.getSimpleName());
+    }
+
+    // An expression that evaluates to each of the `values` in turn
+    private static Expression<Object> sequence(Object... values) {
+        Iterator<Object> it = Arrays.asList(values).iterator();
+        return Expression.lift(env -> it.next());
+    }
+
+    @Test
+    public void typeCheckNoticesANewType() {
+        super.init("x");
+        RuntimeTypeCheck<Melody> check = new RuntimeTypeCheck<>(Melody.class,
+                sequence(new Melody(), new Melody(), Pitch.A), new SourceLink(super.parser.name()));
+
+        check.evaluate(new TestEnvironment());
+        check.evaluate(new TestEnvironment());
+        // The site was specialized for melodies but a pitch must still fail
+        assertThrows(CompilationException.class, () -> check.evaluate(new TestEnvironment()));
+    }
+
+    @Test
+    public void argumentsThatChangeTypeStillAppend() {
+        Expression<Object> arg = sequence(Pitch.A, new Melody(new ArticulatedPitch(Pitch.B)), Pitch.C);
+        Concatenation<Melody> concatenation = new Concatenation<>(Melody::new, melodyDelegate());
+        concatenation.addArgument(arg);
+
+        ExecutionEnvironment env = new TestEnvironment();
+        assertEquals(new Melody(new ArticulatedPitch(Pitch.A)), concatenation.evaluate(env));
+        assertEquals(new Melody(new ArticulatedPitch(Pitch.B)), concatenation.evaluate(env));
+        assertEquals(new Melody(new ArticulatedPitch(Pitch.C)), concatenation.evaluate(env));
+    }
+
+    @Test
+    public void unsupportedArgumentThrows() {
+        Concatenation<Melody> concatenation = new Concatenation<>(Melody::new, melodyDelegate());
+        concatenation.addArgument(new Constant<>(Beat.QUARTER()));
+
+        assertThrows(IllegalArgumentException.class, () -> concatenation.evaluate(new TestEnvironment()));
+    }
+
+    @Test
+    public void cacheGivesUpOnMegamorphicSites() {
+        InlineTypeCache<String> cache = new InlineTypeCache<>();
+        Class<?>[] types = { Integer.class, String.class };
+        for (int i = 0; i <= InlineTypeCache.MAX_RESPECIALIZATIONS; i++) {
+            Class<?> type = types[i % 2];
+            assertNull(cache.get(type));
+            cache.specialize(type, type.getSimpleName());
+            assertEquals(type.getSimpleName(), cache.get(type));
+        }
+
+        cache.specialize(Integer.class, "Integer");
+        assertTrue(cache.isMegamorphic());
+        assertNull(cache.get(Integer.class));
+    }
+
+    private static ConcatenationDelegate<Melody> melodyDelegate() {
+        ConcatenationDelegate<Melody> delegate = new ConcatenationDelegate<>();
+        delegate.addDelegate(Melody.class, Melody::append);
+        delegate.addDelegate(Articulated.class, Melody::append);
+        delegate.addDelegate(Pitch.class, Melody::append);
+        delegate.addDelegate(Chord.class, Melody::append);
+        return delegate;
+    }
+
+    // The original delegate: scan every registered type for each appended value
+    @SuppressWarnings("unchecked")
+    private static <R> R appendByScan(Map<Class<?>, ConcatenationDelegate.AppendDelegate<R, ?>> delegates, R root, Object value) {
+        for (Map.Entry<Class<?>, ConcatenationDelegate.AppendDelegate<R, ?>> entry : delegates.entrySet()) {
+            if (entry.getKey().isAssignableFrom(value.getClass()))
+                return ((ConcatenationDelegate.AppendDelegate<R, Object>) entry.getValue()).append(root, value);
+        }
+        throw new IllegalArgumentException();
+    }
+
+    // Compares appending the values of melody and rhythm literals through the inline caches
+    // of a concatenation against the original delegate scan.
+    @Test
+    @Tag("benchmark")
+    public void benchmarkConcatenation() {
+        int evaluations = 100_000;
+        ExecutionEnvironment env = new TestEnvironment();
+        env.getMemory().set(QualifiedName.ofUnqualified("mel"), new Melody(new ArticulatedPitch(Pitch.E)));
+        Rhythm rhy = new Rhythm(Beat.QUARTER());
+        env.getMemory().set(QualifiedName.ofUnqualified("rhy"), rhy);
+
+        super.init("[a, b, c, (d, f), mel, e, f, g, mel, a, b, c]");
+        Expression<Melody> melody = super.compiler.visitMelody(super.parser.melody());
+        super.init("<q, e, e, rhy, q, s, s, e, rhy, q, q>");
+        Expression<Rhythm> rhythm = super.compiler.visitRhythm(super.parser.rhythm());
+        super.errorListener.assertNoErrors();
+
+        Melody expectedMelody = melody.evaluate(env);
+        Rhythm expectedRhythm = rhythm.evaluate(env);
+        List<Object> melodyValues = new ArrayList<>();
+        for (int i = 0; i < expectedMelody.size(); i++)
+            melodyValues.add(expectedMelody.getElementAtIndex(i));
+        List<Object> rhythmValues = new ArrayList<>();
+        for (int i = 0; i < expectedRhythm.size(); i++)
+            rhythmValues.add(expectedRhythm.getAtIndex(i));
+
+        Map<Class<?>, ConcatenationDelegate.AppendDelegate<Melody, ?>> melodyDelegates = new HashMap<>();
+        melodyDelegates.put(Melody.class, (ConcatenationDelegate.AppendDelegate<Melody, Melody>) Melody::append);
+        melodyDelegates.put(Articulated.class, (ConcatenationDelegate.AppendDelegate<Melody, Articulated>) Melody::append);
+        melodyDelegates.put(Pitch.class, (ConcatenationDelegate.AppendDelegate<Melody, Pitch>) Melody::append);
+        melodyDelegates.put(Chord.class, (ConcatenationDelegate.AppendDelegate<Melody, Chord>) Melody::append);
+        Map<Class<?>, ConcatenationDelegate.AppendDelegate<Rhythm, ?>> rhythmDelegates = new HashMap<>();
+        rhythmDelegates.put(Beat.class, (ConcatenationDelegate.AppendDelegate<Rhythm, Beat>) Rhythm::append);
+        rhythmDelegates.put(Rhythm.class, (ConcatenationDelegate.AppendDelegate<Rhythm, Rhythm>) Rhythm::append);
+
+        Runnable scanned = () -> {
+            Melody m = new Melody();
+            for (Object value : melodyValues) m = appendByScan(melodyDelegates, m, value);
+            Rhythm r = new Rhythm();
+            for (Object value : rhythmValues) r = appendByScan(rhythmDelegates, r, value);
+        };
+        // Same values appended through the compiled concatenations
+        Concatenation<Melody> melodyConcatenation = new Concatenation<>(Melody::new, melodyDelegate());
+        melodyValues.forEach(value -> melodyConcatenation.addArgument(new Constant<>(value)));
+        ConcatenationDelegate<Rhythm> rhythmDelegate = new ConcatenationDelegate<>();
+        rhythmDelegate.addDelegate(Beat.class, Rhythm::append);
+        rhythmDelegate.addDelegate(Rhythm.class, Rhythm::append);
+        Concatenation<Rhythm> rhythmConcatenation = new Concatenation<>(Rhythm::new, rhythmDelegate);
+        rhythmValues.forEach(value -> rhythmConcatenation.addArgument(new Constant<>(value)));
+        Runnable cached = () -> {
+            melodyConcatenation.evaluate(env);
+            rhythmConcatenation.evaluate(env);
+        };
+
+        for (int i = 0; i < evaluations; i++) {
+            scanned.run();
+            cached.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < evaluations; i++) scanned.run();
+        long scanTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < evaluations; i++) cached.run();
+        long cachedTime = System.nanoTime() - start;
+
+        assertEquals(expectedMelody, melody.evaluate(env));
+        assertEquals(expectedMelody, melodyConcatenation.evaluate(env));
+        assertEquals(expectedRhythm.toString(), rhythm.evaluate(env).toString());
+        assertEquals(expectedRhythm.toString(), rhythmConcatenation.evaluate(env).toString());
+        System.out.printf("%d melody and rhythm concatenations: delegate scan %.1f ms, inline caches %.1f ms%n",
+                evaluations, scanTime / 1e6, cachedTime / 1e6);
+    }
+}
@@ -0,0 +1,117 @@
+package org.mellowd.intermediate.executable.statements;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mellowd.compiler.ExecutionEnvironment;
+import org.mellowd.intermediate.FrameEnvironment;
+import org.mellowd.intermediate.NullOutput;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.expressions.Expression;
+import org.mellowd.intermediate.executable.expressions.ReferenceResolution;
+import org.mellowd.intermediate.executable.expressions.SlotReference;
+import org.mellowd.intermediate.variables.Frame;
+import org.mellowd.testutil.CompilerTestFrame;
+import org.mellowd.testutil.TestEnvironment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RepeatedStatementListTest extends CompilerTestFrame {
+    public RepeatedStatementListTest() {
+        super(RepeatedStatementListTest.class.getSimpleName());
+    }
+
+    private ExecutionEnvironment run(String src) {
+        super.init(src);
+
+        Statement stmt = super.compiler.visitStmt(super.parser.stmt());
+        super.errorListener.assertNoErrors();
+
+        ExecutionEnvironment env = new TestEnvironment();
+        stmt.execute(env, NullOutput.getInstance());
+        return env;
+    }
+
+    private static Object get(ExecutionEnvironment env, String name) {
+        return env.getMemory().get(QualifiedName.ofUnqualified(name));
+    }
+
+    @Test
+    public void countsFromZero() {
+        ExecutionEnvironment env = run("4 * { last -> it }");
+
+        assertEquals(3, get(env, "last"));
+        // The counter only exists while the loop runs
+        assertNull(get(env, "it"));
+    }
+
+    @Test
+    public void innerCounterHidesOuter() {
+        ExecutionEnvironment env = run("2 * { 3 * { inner -> it } outer -> it }");
+
+        assertEquals(2, get(env, "inner"));
+        assertEquals(1, get(env, "outer"));
+    }
+
+    @Test
+    public void repetitionsMayUseTheOuterCounter() {
+        ExecutionEnvironment env = run("3 * { count -> 0 it * { count -> it } }");
+
+        // The last outer iteration repeats it (2) times
+        assertEquals(1, get(env, "count"));
+    }
+
+    @Test
+    public void slotFallsBackToTheMemory() {
+        QualifiedName it = RepeatedStatementList.IMPLICIT_LOOP_COUNTER_ID;
+        SlotReference ref = new SlotReference(it, RepeatedStatementList.FRAME_LAYOUT, 0, RepeatedStatementList.LOOP_COUNTER_SLOT);
+
+        // Not running in a frame
+        ExecutionEnvironment env = new TestEnvironment();
+        env.getMemory().set(it, 7);
+        assertEquals(7, ref.evaluate(env));
+
+        // Running in a frame with the slot set
+        Frame frame = new Frame(RepeatedStatementList.FRAME_LAYOUT, env.getMemory());
+        frame.setCounter(RepeatedStatementList.LOOP_COUNTER_SLOT, 3);
+        assertEquals(3, ref.evaluate(new FrameEnvironment(env, frame)));
+    }
+
+    // Compares reading a loop counter from its slot with looking it up by name.
+    @Test
+    @Tag("benchmark")
+    public void benchmarkCounterReads() {
+        int reads = 5_000_000;
+        QualifiedName it = RepeatedStatementList.IMPLICIT_LOOP_COUNTER_ID;
+
+        // The counter used to be stored in the memory of the loop
+        ExecutionEnvironment tableEnv = new TestEnvironment();
+        tableEnv.getMemory().set(it, 1);
+        Expression<Object> byName = new ReferenceResolution(it);
+
+        ExecutionEnvironment env = new TestEnvironment();
+        Frame frame = new Frame(RepeatedStatementList.FRAME_LAYOUT, env.getMemory());
+        frame.setCounter(RepeatedStatementList.LOOP_COUNTER_SLOT, 1);
+        ExecutionEnvironment frameEnv = new FrameEnvironment(env, frame);
+        Expression<Object> bySlot = new SlotReference(it, RepeatedStatementList.FRAME_LAYOUT, 0, RepeatedStatementList.LOOP_COUNTER_SLOT);
+
+        long sum = 0;
+        for (int i = 0; i < reads; i++) {
+            sum += (Integer) byName.evaluate(tableEnv);
+            sum += (Integer) bySlot.evaluate(frameEnv);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < reads; i++)
+            sum += (Integer) byName.evaluate(tableEnv);
+        long nameTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < reads; i++)
+            sum += (Integer) bySlot.evaluate(frameEnv);
+        long slotTime = System.nanoTime() - start;
+
+        assertEquals(4L * reads, sum);
+        System.out.printf("%d counter reads: by name %.1f ms, by slot %.1f ms%n",
+                reads, nameTime / 1e6, slotTime / 1e6);
+    }
+}
@@ -1,6 +1,9 @@
 package org.mellowd.io;
 
 import org.junit.jupiter.api.Test;
+import org.mellowd.compiler.ExecutionMode;
+
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -317,6 +320,60 @@ public class ArgParserTest {
         assertTrue(options.wantsSilent(), "Silent flag not set when --silent is given");
     }
 
+    @Test
+    public void execFlag() throws Exception {
+        String[] args = new String[]{
+                "--exec", "cooperative"
+        };
+
+        CompilerOptions options = ArgParser.parse(args);
+
+        assertEquals(ExecutionMode.COOPERATIVE, options.getExecutionMode(), "Incorrect execution mode set in the options");
+    }
+
+    @Test
+    public void execFlagBadMode() throws Exception {
+        testThrowsException("No exception thrown when exec flag given but mode missing",
+                "-x"
+        );
+        testThrowsException("No exception thrown when exec flag given an unknown mode",
+                "-x", "parallel"
+        );
+    }
+
+    @Test
+    public void cacheFlag() throws Exception {
+        String[] args = new String[]{
+                "--cache", "build/cache"
+        };
+
+        CompilerOptions options = ArgParser.parse(args);
+
+        assertTrue(options.shouldUseCache(), "Cache not enabled when --cache is given");
+        assertEquals("build/cache", options.getCacheDirectory(), "Incorrect cache directory set in the options");
+    }
+
+    @Test
+    public void batchFlag() throws Exception {
+        String[] args = new String[]{
+                "songs", "more/*.mlod", "-b", "-j", "3"
+        };
+
+        CompilerOptions options = ArgParser.parse(args);
+
+        assertTrue(options.isBatch(), "Batch mode not enabled when -b is given");
+        assertEquals(3, options.getJobs(), "Incorrect number of jobs set in the options");
+        assertEquals(List.of("songs", "more/*.mlod"), options.getSources(), "Incorrect sources set in the options");
+    }
+
+    @Test
+    public void multipleSourcesRequireBatch() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> ArgParser.parse(new String[]{ "a.mlod", "b.mlod" }));
+        testThrowsException("No exception thrown when jobs is not positive",
+                "-b", "-j", "0"
+        );
+    }
+
     @Test
     public void defaults() throws Exception {
         String[] args = new String[]{};
@@ -339,5 +396,12 @@ public class ArgParserTest {
         assertFalse(options.shouldOutputWAV(), "WAVE output flag not disabled by default");
 
         assertFalse(options.wantsSilent(), "Silent not disabled by default");
+
+        assertEquals(ExecutionMode.THREADED, options.getExecutionMode(), "Execution mode is not threaded by default");
+
+        assertFalse(options.shouldUseCache(), "Cache not disabled by default");
+
+        assertFalse(options.isBatch(), "Batch mode not disabled by default");
+        assertEquals(Runtime.getRuntime().availableProcessors(), options.getJobs(), "Jobs is not the number of cpus by default");
     }
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package org.mellowd.io;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchCompilerTest {
+    private static final String SONG = "" +
+            "def block myblock\n" +
+            "myblock {\n" +
+            "    [a, b, c]*<q>\n" +
+            "}\n";
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Files.createDirectories(dir.resolve("songs/more"));
+        Files.writeString(dir.resolve("songs/one.mlod"), SONG);
+        Files.writeString(dir.resolve("songs/two.mlod"), SONG);
+        Files.writeString(dir.resolve("songs/more/three.mlod"), SONG);
+        Files.writeString(dir.resolve("songs/notes.txt"), "not a source");
+    }
+
+    private static List<String> names(List<File> files) {
+        return files.stream().map(File::getName).toList();
+    }
+
+    @Test
+    public void testDirectoryIsSearchedRecursively() throws Exception {
+        List<File> sources = BatchCompiler.findSources(List.of(dir.resolve("songs").toString()));
+        assertEquals(List.of("three.mlod", "one.mlod", "two.mlod"), names(sources));
+    }
+
+    @Test
+    public void testGlob() throws Exception {
+        List<File> sources = BatchCompiler.findSources(List.of(dir.resolve("songs").toString() + "/t*.mlod"));
+        assertEquals(List.of("two.mlod"), names(sources));
+    }
+
+    @Test
+    public void testDuplicatesAreOnlyCompiledOnce() throws Exception {
+        String one = dir.resolve("songs/one.mlod").toString();
+        List<File> sources = BatchCompiler.findSources(List.of(one, dir.resolve("songs").toString()));
+        assertEquals(List.of("one.mlod", "three.mlod", "two.mlod"), names(sources));
+    }
+
+    @Test
+    public void testCompileAll() throws Exception {
+        Path out = dir.resolve("out");
+        Files.createDirectories(out);
+        CompilerOptions options = new CompilerOptions.Builder()
+                .setBatch(true)
+                .setJobs(2)
+                .setSilent(true)
+                .addSource(dir.resolve("songs").toString())
+                .build();
+
+        assertTrue(new BatchCompiler(options, out.toFile()).compileAll());
+        for (String name : List.of("one", "two", "three"))
+            assertTrue(Files.size(out.resolve(name + ".mid")) > 0, name + " was not written");
+    }
+
+    @Test
+    public void testFailureDoesNotStopTheBatch() throws Exception {
+        Files.writeString(dir.resolve("songs/broken.mlod"), "myblock { [a, b");
+        Path out = dir.resolve("out");
+        Files.createDirectories(out);
+        CompilerOptions options = new CompilerOptions.Builder()
+                .setBatch(true)
+                .setSilent(true)
+                .addSource(dir.resolve("songs").toString())
+                .build();
+
+        assertFalse(new BatchCompiler(options, out.toFile()).compileAll());
+        assertTrue(Files.exists(out.resolve("one.mid")));
+        assertFalse(Files.exists(out.resolve("broken.mid")));
+    }
+
+    @Test
+    public void testBadSoundFontFailsEachWavOutput() throws Exception {
+        Path soundFont = dir.resolve("broken.sf2");
+        Files.writeString(soundFont, "not a sound font");
+        Path out = dir.resolve("out");
+        Files.createDirectories(out);
+        CompilerOptions options = new CompilerOptions.Builder()
+                .setBatch(true)
+                .setJobs(2)
+                .setSilent(true)
+                .enableOutputType(CompilerOptions.OUTPUT_MIDI | CompilerOptions.OUTPUT_WAV)
+                .addSoundFont(soundFont.toString())
+                .addSource(dir.resolve("songs").toString())
+                .build();
+
+        // Reported per source instead of exiting, the MIDI outputs are still written
+        assertFalse(new BatchCompiler(options, out.toFile()).compileAll());
+        for (String name : List.of("one", "two", "three")) {
+            assertTrue(Files.size(out.resolve(name + ".mid")) > 0, name + " was not written");
+            assertFalse(Files.exists(out.resolve(name + ".wav")), name + " left a partial WAV");
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.mellowd.io;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.midi.Sequence;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompilationCacheTest {
+    @TempDir
+    Path dir;
+
+    private File song;
+    private Path lib;
+    private CompilationCache cache;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        this.lib = dir.resolve("lib" + Compiler.FILE_EXTENSION);
+        Files.writeString(this.lib, "def tune -> [a, b, c]\n");
+
+        this.song = dir.resolve("song" + Compiler.FILE_EXTENSION).toFile();
+        Files.writeString(this.song.toPath(), "" +
+                "import * from lib\n" +
+                "def block myblock\n" +
+                "myblock {\n" +
+                "    lib.tune*<q>\n" +
+                "}\n");
+
+        this.cache = new CompilationCache(dir.resolve("cache").toFile());
+    }
+
+    private Sequence compile(int tempo) throws Exception {
+        return this.cache.compile(this.song, new CompilerOptions.Builder()
+                .setSilent(true)
+                .setTempo(tempo)
+                .build(), null);
+    }
+
+    private static byte[] bytes(Sequence sequence) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MIDIIODelegate.getInstance().save(sequence, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testUnchangedSourceIsAHit() throws Exception {
+        Sequence compiled = compile(120);
+        Sequence cached = compile(120);
+
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertArrayEquals(bytes(compiled), bytes(cached));
+    }
+
+    @Test
+    public void testOptionsArePartOfTheKey() throws Exception {
+        compile(120);
+        compile(90);
+
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testChangedImportIsAMiss() throws Exception {
+        byte[] before = bytes(compile(120));
+
+        Files.writeString(this.lib, "def tune -> [a, b, c, d, e]\n");
+        byte[] after = bytes(compile(120));
+
+        assertEquals(2, cache.getMisses());
+        assertFalse(Arrays.equals(before, after), "The changed import was not recompiled");
+
+        compile(120);
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testDamagedEntryIsRecompiled() throws Exception {
+        compile(120);
+        File[] results = cache.getDirectory().listFiles((d, name) -> name.endsWith(".mid"));
+        assertEquals(1, results.length);
+        Files.writeString(results[0].toPath(), "not midi");
+
+        compile(120);
+        assertEquals(2, cache.getMisses());
+    }
+}
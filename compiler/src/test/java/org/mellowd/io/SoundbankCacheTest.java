@@ -0,0 +1,55 @@
+package org.mellowd.io;
+
+import com.sun.media.sound.SF2Soundbank;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.midi.Soundbank;
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SoundbankCacheTest {
+    @TempDir
+    Path dir;
+
+    private File font;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        this.font = dir.resolve("font.sf2").toFile();
+        SF2Soundbank soundbank = new SF2Soundbank();
+        soundbank.setName("test");
+        soundbank.save(this.font);
+    }
+
+    @Test
+    public void readsEachFileOnce() throws Exception {
+        SoundbankCache cache = new SoundbankCache();
+        assertFalse(cache.contains(this.font));
+
+        Soundbank first = cache.get(this.font);
+        assertTrue(cache.contains(this.font));
+        assertEquals("test", first.getName());
+
+        // A different path to the same file is the same entry
+        File sameFile = dir.resolve(".").resolve("font.sf2").toFile();
+        assertSame(first, cache.get(sameFile));
+        assertEquals(1, cache.getLoads());
+    }
+
+    @Test
+    public void readsAgainWhenTheFileChanges() throws Exception {
+        SoundbankCache cache = new SoundbankCache();
+        Soundbank first = cache.get(this.font);
+
+        assertTrue(this.font.setLastModified(this.font.lastModified() - 10000));
+        assertFalse(cache.contains(this.font));
+
+        Soundbank second = cache.get(this.font);
+        assertNotSame(first, second);
+        assertEquals(2, cache.getLoads());
+    }
+}
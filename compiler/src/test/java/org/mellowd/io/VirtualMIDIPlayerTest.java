@@ -0,0 +1,164 @@
+package org.mellowd.io;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VirtualMIDIPlayerTest {
+    private static final int RESOLUTION = 480;
+
+    // The original player: find each event by scanning the next event of every track
+    // and keep all of them as objects.
+    private static List<TimeStampedMIDIMessage> linearScan(Sequence sequence) {
+        Track[] tracks = sequence.getTracks();
+        int[] positions = new int[tracks.length];
+        List<TimeStampedMIDIMessage> messages = new ArrayList<>();
+        int usPerBeat = 500000;
+        long lastTick = 0;
+        long currentTime = 0;
+        while (true) {
+            MidiEvent next = null;
+            int selected = -1;
+            for (int i = 0; i < tracks.length; i++) {
+                if (positions[i] < tracks[i].size()) {
+                    MidiEvent event = tracks[i].get(positions[i]);
+                    if (next == null || event.getTick() < next.getTick()) {
+                        next = event;
+                        selected = i;
+                    }
+                }
+            }
+            if (selected < 0) break;
+            positions[selected]++;
+
+            currentTime += ((next.getTick() - lastTick) * usPerBeat) / sequence.getResolution();
+            lastTick = next.getTick();
+
+            MidiMessage msg = next.getMessage();
+            if (msg instanceof MetaMessage meta) {
+                if (meta.getType() == 0x51) {
+                    byte[] data = meta.getData();
+                    usPerBeat = ((data[0] & 0xff) << 16) | ((data[1] & 0xff) << 8) | (data[2] & 0xff);
+                }
+            } else {
+                messages.add(new TimeStampedMIDIMessage(currentTime, msg));
+            }
+        }
+        return messages;
+    }
+
+    private static Sequence randomSequence(int trackCount, int eventsPerTrack, long seed) throws Exception {
+        Random random = new Random(seed);
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        for (int t = 0; t < trackCount; t++) {
+            Track track = sequence.createTrack();
+            long tick = 0;
+            for (int e = 0; e < eventsPerTrack; e++) {
+                // Coarse steps so that many events across the tracks land on the same tick
+                tick += random.nextInt(4) * (RESOLUTION / 4);
+                if (t == 0 && random.nextInt(50) == 0) {
+                    int usPerBeat = 300000 + random.nextInt(400000);
+                    byte[] data = {(byte) (usPerBeat >> 16), (byte) (usPerBeat >> 8), (byte) usPerBeat};
+                    track.add(new MidiEvent(new MetaMessage(0x51, data, 3), tick));
+                } else {
+                    track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, t % 16, random.nextInt(128), 64), tick));
+                }
+            }
+        }
+        return sequence;
+    }
+
+    private static class Recorder implements Receiver {
+        private final List<MidiMessage> messages = new ArrayList<>();
+        private final List<Long> timestamps = new ArrayList<>();
+
+        @Override
+        public void send(MidiMessage message, long timeStamp) {
+            this.messages.add(message);
+            this.timestamps.add(timeStamp);
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    @Test
+    public void matchesTheLinearScan() throws Exception {
+        Sequence sequence = randomSequence(12, 400, 42);
+        List<TimeStampedMIDIMessage> expected = linearScan(sequence);
+
+        Recorder recorder = new Recorder();
+        VirtualMIDIPlayer player = new VirtualMIDIPlayer(sequence);
+        player.playTrackFor(recorder);
+
+        assertEquals(expected.size(), recorder.messages.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i).getMessage(), recorder.messages.get(i), "message " + i);
+            assertEquals(expected.get(i).getTimestamp(), (long) recorder.timestamps.get(i), "timestamp " + i);
+        }
+    }
+
+    @Test
+    public void cursorsFeedInPieces() throws Exception {
+        Sequence sequence = randomSequence(4, 200, 7);
+        VirtualMIDIPlayer player = new VirtualMIDIPlayer(sequence);
+
+        Recorder whole = new Recorder();
+        player.playTrackFor(whole);
+
+        Recorder pieces = new Recorder();
+        VirtualMIDIPlayer.Cursor cursor = player.cursor();
+        for (long until = 0; cursor.hasNext(); until += 100000) {
+            cursor.feedUntil(pieces, until);
+            if (!pieces.timestamps.isEmpty()) {
+                assertTrue(pieces.timestamps.get(pieces.timestamps.size() - 1) < until);
+                assertEquals(pieces.timestamps.get(pieces.timestamps.size() - 1), cursor.getTime());
+            }
+        }
+        assertEquals(whole.messages, pieces.messages);
+        assertEquals(whole.timestamps, pieces.timestamps);
+    }
+
+    @Test
+    public void emptySequence() throws Exception {
+        VirtualMIDIPlayer player = new VirtualMIDIPlayer(new Sequence(Sequence.PPQ, RESOLUTION));
+        assertFalse(player.cursor().hasNext());
+        assertEquals(0, player.getDuration());
+    }
+
+    // Compares preparing a large sequence with the original linear scan and the heap merge.
+    @Test
+    @Tag("benchmark")
+    public void benchmarkPrepare() throws Exception {
+        int trackCount = 32;
+        int eventsPerTrack = 5_000;
+        Sequence sequence = randomSequence(trackCount, eventsPerTrack, 1);
+
+        // Warm up both
+        for (int i = 0; i < 2; i++) {
+            linearScan(sequence);
+            new VirtualMIDIPlayer(sequence);
+        }
+
+        long start = System.nanoTime();
+        List<TimeStampedMIDIMessage> scanned = linearScan(sequence);
+        long scanTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        VirtualMIDIPlayer player = new VirtualMIDIPlayer(sequence);
+        long mergeTime = System.nanoTime() - start;
+
+        Recorder recorder = new Recorder();
+        player.playTrackFor(recorder);
+        assertEquals(scanned.size(), recorder.messages.size());
+
+        System.out.printf("Prepare %d tracks x %d events: linear scan %.1f ms, heap merge %.1f ms%n",
+                trackCount, eventsPerTrack, scanTime / 1e6, mergeTime / 1e6);
+    }
+}
@@ -0,0 +1,116 @@
+package org.mellowd.io;
+
+import com.sun.media.sound.AudioSynthesizer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.sampled.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WavIODelegateTest {
+    @TempDir
+    Path dir;
+
+    private Sequence sequence;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        File song = dir.resolve("song" + Compiler.FILE_EXTENSION).toFile();
+        Files.writeString(song.toPath(), "" +
+                "def block myblock\n" +
+                "myblock {\n" +
+                "    [a, b, (c, e, g), d]*<q, e, h, q>\n" +
+                "}\n");
+        this.sequence = Compiler.compile(song, new CompilerOptions.Builder().build());
+    }
+
+    @Test
+    public void headerDescribesTheSamples() throws Exception {
+        WavIODelegate wav = new WavIODelegate(null);
+        wav.setChannels(1);
+        wav.setSampleSize(16);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wav.save(this.sequence, out);
+
+        AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(AudioFileFormat.Type.WAVE, fileFormat.getType());
+        assertEquals(1, fileFormat.getFormat().getChannels());
+        assertEquals(16, fileFormat.getFormat().getSampleSizeInBits());
+
+        long frames = (long) (44100 * new VirtualMIDIPlayer(this.sequence).getDuration());
+        assertEquals(frames, fileFormat.getFrameLength());
+        assertEquals(44 + frames * 2, out.size());
+    }
+
+    @Test
+    public void streamingMatchesRenderingEverythingUpFront() throws Exception {
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        new WavIODelegate(null).save(this.sequence, streamed);
+
+        // Feed the whole sequence before reading any audio
+        VirtualMIDIPlayer player = new VirtualMIDIPlayer(this.sequence);
+        AudioFormat format = new AudioFormat(44100, 24, 2, true, false);
+        AudioSynthesizer synth = (AudioSynthesizer) MidiSystem.getSynthesizer();
+        AudioInputStream stream = synth.openStream(format, Map.of("interpolation", "sinc", "max polyphony", "1024"));
+        player.playTrackFor(synth.getReceiver());
+
+        ByteArrayOutputStream upFront = new ByteArrayOutputStream();
+        long frames = (long) (format.getFrameRate() * player.getDuration());
+        AudioSystem.write(new AudioInputStream(stream, format, frames), AudioFileFormat.Type.WAVE, upFront);
+        synth.close();
+
+        assertArrayEquals(upFront.toByteArray(), streamed.toByteArray());
+    }
+
+    private static int[] samples24(byte[] wav) {
+        int[] samples = new int[(wav.length - 44) / 3];
+        for (int i = 0; i < samples.length; i++) {
+            int at = 44 + 3 * i;
+            samples[i] = (wav[at] & 0xFF) | ((wav[at + 1] & 0xFF) << 8) | (wav[at + 2] << 16);
+        }
+        return samples;
+    }
+
+    @Test
+    public void splitChannelsMixesToTheSingleSynthRender() throws Exception {
+        File song = dir.resolve("duet" + Compiler.FILE_EXTENSION).toFile();
+        Files.writeString(song.toPath(), "" +
+                "def block lead\n" +
+                "def block bass\n" +
+                "lead { [a, b, c, d]*<q> }\n" +
+                "bass { do { 3 => octave } [c, g]*<h> }\n");
+        Sequence duet = Compiler.compile(song, new CompilerOptions.Builder().build());
+
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        new WavIODelegate(null).save(duet, single);
+
+        Map<Integer, ByteArrayOutputStream> stems = new TreeMap<>();
+        WavIODelegate split = new WavIODelegate(null);
+        split.setStemOutput(channel -> stems.computeIfAbsent(channel, c -> new ByteArrayOutputStream()));
+        ByteArrayOutputStream mixed = new ByteArrayOutputStream();
+        split.save(duet, mixed);
+
+        assertEquals(2, stems.size());
+        assertEquals(single.size(), mixed.size());
+        for (ByteArrayOutputStream stem : stems.values())
+            assertEquals(single.size(), stem.size());
+
+        // Each synth rounds its own samples so the mix may be off by a bit per channel
+        int[] expected = samples24(single.toByteArray());
+        int[] actual = samples24(mixed.toByteArray());
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], actual[i], stems.size(), "sample " + i);
+    }
+}
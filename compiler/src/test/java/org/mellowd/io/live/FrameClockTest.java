@@ -0,0 +1,91 @@
+package org.mellowd.io.live;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameClockTest {
+    private static final long FRAME_US = 250_000;
+
+    private long nowNs;
+    private long frames;
+
+    // Step through `frames` more frames waking up exactly at each deadline and return how
+    // far the synth clock is from the start of the frame when the last one is flushed
+    private long errorAfter(FrameClock clock, double synthRate, int frames) {
+        for (int i = 0; i < frames; i++)
+            this.nowNs = clock.nextDeadline();
+        this.frames += frames;
+
+        long synthUs = (long) (this.nowNs / 1000 * synthRate);
+        return synthUs - this.frames * FRAME_US;
+    }
+
+    @Test
+    public void testFollowsAFastSynth() {
+        double rate = 1.001;
+        FrameClock clock = new FrameClock(() -> (long) (this.nowNs / 1000 * rate), () -> this.nowNs, FRAME_US);
+        this.nowNs = 0;
+        clock.start();
+
+        // After a minute the rate is known, uncorrected an hour would be 3.6 s ahead
+        long error = errorAfter(clock, rate, 4 * 60);
+        assertTrue(Math.abs(error) < 1_000, "Synth clock is " + error + " us off the schedule");
+        error = errorAfter(clock, rate, 4 * 59 * 60);
+        assertTrue(Math.abs(error) < 100, "Synth clock is " + error + " us off the schedule");
+        assertTrue(clock.getDriftUs() > 0);
+    }
+
+    @Test
+    public void testFollowsASlowSynth() {
+        double rate = 0.999;
+        FrameClock clock = new FrameClock(() -> (long) (this.nowNs / 1000 * rate), () -> this.nowNs, FRAME_US);
+        this.nowNs = 0;
+        clock.start();
+
+        long error = errorAfter(clock, rate, 4 * 60);
+        assertTrue(Math.abs(error) < 1_000, "Synth clock is " + error + " us off the schedule");
+        error = errorAfter(clock, rate, 4 * 59 * 60);
+        assertTrue(Math.abs(error) < 100, "Synth clock is " + error + " us off the schedule");
+        assertTrue(clock.getDriftUs() < 0);
+    }
+
+    @Test
+    public void testWallClockWithoutSynthPosition() {
+        FrameClock clock = new FrameClock(() -> -1, () -> this.nowNs, FRAME_US);
+        this.nowNs = 0;
+        clock.start();
+
+        for (int i = 1; i <= 100; i++)
+            assertEquals(i * FRAME_US * 1000, clock.nextDeadline());
+    }
+
+    @Test
+    public void testHistogram() {
+        LatenessHistogram histogram = new LatenessHistogram();
+        for (int i = 0; i < 98; i++)
+            histogram.record(0);
+        histogram.record(300);
+        histogram.record(5_000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(98, histogram.getCount(0));
+        assertEquals(1, histogram.getCount(LatenessHistogram.bucketOf(300)));
+        assertEquals(1, histogram.percentileUs(0.5));
+        assertEquals(512, histogram.percentileUs(0.99));
+        assertEquals(8192, histogram.percentileUs(1));
+        assertEquals(5_000, histogram.getMaxUs());
+    }
+
+    @Test
+    public void testAwaitNeverWakesEarly() throws Exception {
+        FrameClock clock = new FrameClock(() -> -1, 2_000);
+        long start = System.nanoTime();
+        clock.start();
+        for (int i = 0; i < 20; i++)
+            clock.awaitNextFrame();
+
+        assertTrue(System.nanoTime() - start >= 20 * 2_000_000L);
+        assertEquals(20, clock.getLateness().getCount());
+    }
+}
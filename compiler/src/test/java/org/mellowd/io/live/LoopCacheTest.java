@@ -0,0 +1,123 @@
+package org.mellowd.io.live;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mellowd.compiler.*;
+import org.mellowd.intermediate.Closure;
+import org.mellowd.intermediate.QualifiedName;
+import org.mellowd.intermediate.executable.expressions.Abstraction;
+import org.mellowd.intermediate.executable.statements.Statement;
+import org.mellowd.intermediate.functions.Parameter;
+import org.mellowd.intermediate.functions.Parameters;
+import org.mellowd.intermediate.variables.NullMemory;
+import org.mellowd.io.Compiler;
+import org.mellowd.io.DirectorySourceFinder;
+import org.mellowd.midi.MIDIChannel;
+import org.mellowd.midi.MIDITrack;
+import org.mellowd.midi.TimingEnvironment;
+import org.mellowd.primitives.Beat;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoopCacheTest {
+    private MellowD mellowD;
+    private long measure;
+
+    @BeforeEach
+    public void setUp() {
+        this.mellowD = new MellowD(new DirectorySourceFinder(new File("."), Compiler.FILE_EXTENSION),
+                new TimingEnvironment(4, 4, 120));
+        this.measure = this.mellowD.getTimingEnvironment().ticksInBeat(Beat.WHOLE());
+
+        Parameter<Object> param = Parameter.newRequiredParameter("value");
+        this.mellowD.getGlobals().set(QualifiedName.ofUnqualified("noisy"), new Closure(NullMemory.getInstance(),
+                new Abstraction(new Parameters(param), false, Statement.lift((env, out) -> { }))));
+    }
+
+    private Statement[] compile(String code) {
+        new MellowDCompiler(this.mellowD).visitSong(new MellowDParser(new CommonTokenStream(
+                new MellowDLexer(CharStreams.fromString(code)))).song());
+        MellowDBlock block = this.mellowD.getBlock("myblock");
+        Statement[] statements = block.getCode();
+        block.clearCode();
+        return statements;
+    }
+
+    // The same steps the scheduler takes to execute a block
+    private MIDITrack render(LoopCache cache, Statement[] code, long start) {
+        MellowDBlock block = this.mellowD.getBlock("myblock");
+        Object[] values = cache.captureValues(block);
+        MIDITrack replay = cache.replay(values, start);
+        if (replay != null) return replay;
+
+        MIDITrack track = new MIDITrack(block.getName());
+        MIDIChannel channel = block.getMIDIChannel();
+        channel.setTrack(track);
+        channel.stepIntoFuture(start - channel.getStateTime());
+        for (Statement statement : code)
+            statement.execute(block, block);
+        channel.finalizeEOT(Beat.ZERO);
+        track.seal();
+
+        cache.rendered(values, track, start);
+        return track;
+    }
+
+    @Test
+    public void replaysAfterTwoIdenticalRenders() {
+        Statement[] code = compile("def block myblock\nmyblock { [a, b, c, d]*<q> }");
+        LoopCache cache = LoopCache.analyze(code);
+        assertTrue(cache.isCacheable());
+
+        MellowDBlock block = this.mellowD.getBlock("myblock");
+        assertNull(cache.replay(cache.captureValues(block), 0));
+
+        MIDITrack first = render(cache, code, 0);
+        assertNull(cache.replay(cache.captureValues(block), measure));
+        MIDITrack second = render(cache, code, measure);
+        assertTrue(second.isShiftOf(first, measure));
+
+        MIDITrack replay = cache.replay(cache.captureValues(block), 2 * measure);
+        assertNotNull(replay);
+        assertTrue(replay.isShiftOf(second, measure));
+    }
+
+    @Test
+    public void changedFreeVariableIsExecutedAgain() {
+        Statement[] code = compile("def block myblock\ntune -> [a, b]\nmyblock { tune*<q> }");
+        LoopCache cache = LoopCache.analyze(code);
+        render(cache, code, 0);
+        render(cache, code, measure);
+
+        MellowDBlock block = this.mellowD.getBlock("myblock");
+        assertNotNull(cache.replay(cache.captureValues(block), 2 * measure));
+
+        compile("tune -> [c, d]");
+        assertNull(cache.replay(cache.captureValues(block), 2 * measure));
+    }
+
+    @Test
+    public void onceIsNotCacheable() {
+        Statement[] code = compile("def block myblock\nmyblock { once { [a]*<q> } [b]*<q> }");
+        assertFalse(LoopCache.analyze(code).isCacheable());
+    }
+
+    @Test
+    public void pluginFunctionsAreNotCacheableByDefault() {
+        Statement[] code = compile("def block myblock\nmyblock { do { 1 => noisy } [a]*<q> }");
+        LoopCache cache = LoopCache.analyze(code);
+        assertTrue(cache.isCacheable());
+        assertNull(cache.captureValues(this.mellowD.getBlock("myblock")));
+    }
+
+    @Test
+    public void defaultFunctionsAreCacheable() {
+        Statement[] code = compile("def block myblock\nmyblock { do { 5 => octave } [a]*<q> }");
+        LoopCache cache = LoopCache.analyze(code);
+        assertNotNull(cache.captureValues(this.mellowD.getBlock("myblock")));
+    }
+}
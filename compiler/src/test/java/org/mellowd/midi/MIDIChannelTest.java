@@ -0,0 +1,155 @@
+package org.mellowd.midi;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mellowd.primitives.Beat;
+import org.mellowd.primitives.Pitch;
+import org.mellowd.primitives.Rhythm;
+
+import javax.sound.midi.ShortMessage;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MIDIChannelTest {
+    private MIDITrack track;
+    private MIDIChannel channel;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        this.track = new MIDITrack("test");
+        this.channel = new MIDIChannel(track, false, 0, new TimingEnvironment(4, 4, 120));
+    }
+
+    private List<String> events() {
+        track.seal();
+        List<String> events = new ArrayList<>();
+        track.forEach(e -> {
+            if (e.getMessage() instanceof ShortMessage msg
+                    && (msg.getCommand() == ShortMessage.NOTE_ON || msg.getCommand() == ShortMessage.NOTE_OFF))
+                events.add(e.getTick() + (msg.getCommand() == ShortMessage.NOTE_ON ? " on " : " off ") + msg.getData1());
+        });
+        return events;
+    }
+
+    @Test
+    public void testNoteOffsInterleaveWithScheduledActions() throws Exception {
+        channel.doLater(10, () -> channel.playNote(Pitch.D, 0, 10, MIDIChannel.DEFAULT_OFF_VELOCITY));
+        channel.playNote(Pitch.C, 0, 10, MIDIChannel.DEFAULT_OFF_VELOCITY);
+        channel.doLater(10, () -> channel.playNote(Pitch.C, 0, 10, MIDIChannel.DEFAULT_OFF_VELOCITY));
+        channel.stepIntoFuture(30);
+
+        int c = Pitch.C.getMidiNum();
+        int d = Pitch.D.getMidiNum();
+        assertEquals(List.of(
+                "0 on " + c,
+                "10 on " + d,
+                "10 off " + c,
+                "10 on " + c,
+                "20 off " + d,
+                "20 off " + c
+        ), events());
+    }
+
+    @Test
+    public void testSlurRemovesPreviousNoteOff() throws Exception {
+        channel.setSlurred(true);
+        channel.playNote(Pitch.C, 0, 10, MIDIChannel.DEFAULT_OFF_VELOCITY);
+        channel.stepIntoFuture(10);
+        channel.playNote(Pitch.C, 0, 10, MIDIChannel.DEFAULT_OFF_VELOCITY);
+        channel.stepIntoFuture(10);
+
+        int c = Pitch.C.getMidiNum();
+        assertEquals(List.of("0 on " + c, "10 on " + c, "20 off " + c), events());
+    }
+
+    @Test
+    public void testActionsBeyondTheWheelRunInOrder() throws Exception {
+        List<Long> ran = new ArrayList<>();
+        for (long offset : new long[]{ 20_000, 10, 5_000, 20_000, 4_095, 4_096 })
+            channel.doLater(offset, () -> ran.add(channel.getStateTime()));
+
+        channel.stepIntoFuture(4_096);
+        assertEquals(List.of(10L, 4_095L, 4_096L), ran);
+
+        channel.stepIntoFuture(30_000);
+        assertEquals(List.of(10L, 4_095L, 4_096L, 5_000L, 20_000L, 20_000L), ran);
+    }
+
+    @Test
+    public void testReplaceTrackRollsBackPendingActions() throws Exception {
+        List<Long> ran = new ArrayList<>();
+        channel.stepIntoFuture(1_000);
+        channel.doLater(50, () -> ran.add(channel.getStateTime()));
+        channel.doLater(9_000, () -> ran.add(channel.getStateTime()));
+
+        channel.replaceTrack(new MIDITrack("replacement"));
+        assertEquals(0, channel.getStateTime());
+
+        channel.stepIntoFuture(10_000);
+        assertEquals(List.of(50L, 9_000L), ran);
+    }
+
+    @Test
+    public void testOutOfRangeNotesAreReported() throws Exception {
+        MidiRuntimeException e = assertThrows(MidiRuntimeException.class,
+                () -> channel.playNote(Pitch.C, 0, 10, 200));
+        assertEquals("Cannot turn note off (" + Pitch.C.getMidiNum() + ") with dynamic of 200.", e.getMessage());
+    }
+
+    @Test
+    public void testTupletsDoNotDrift() throws Exception {
+        Beat septuplet = Beat.QUARTER().tuplet(7, 4);
+        int ppq = channel.getTimingEnvironment().getPPQ();
+
+        // 960 * 4/7 is not a whole number of ticks but 7 of them are 4 quarter notes
+        for (int bar = 1; bar <= 10; bar++) {
+            for (int i = 0; i < 7; i++)
+                channel.stepIntoFuture(septuplet);
+            assertEquals(bar * 4L * ppq, channel.getStateTime());
+        }
+
+        assertEquals(8L * ppq, channel.getTimingEnvironment().ticksInBeats(new Rhythm(septuplet), 14));
+        assertEquals(5L * ppq, channel.getTimingEnvironment().ticksInBeats(new Rhythm(Beat.EIGHTH().tuplet(3)), 15));
+    }
+
+    @Test
+    public void testCoPrimeTupletsDoNotDrift() throws Exception {
+        Beat[] tuplets = { Beat.QUARTER().tuplet(7, 4), Beat.EIGHTH().tuplet(11, 8), Beat.EIGHTH().tuplet(13, 8) };
+        long ppq = channel.getTimingEnvironment().getPPQ();
+
+        // Each round is 4/7 + 4/11 + 4/13 = 1244/1001 quarter notes
+        for (long round = 1; round <= 7 * 11 * 13; round++) {
+            for (Beat tuplet : tuplets)
+                channel.stepIntoFuture(tuplet);
+            assertEquals(round * 1244 * ppq / 1001, channel.getStateTime(), "round " + round);
+        }
+        assertEquals(1244 * ppq, channel.getStateTime());
+    }
+
+    @Test
+    public void testHugeCoPrimeDenominatorsStayWithinATick() throws Exception {
+        // Large primes, the carried fraction can't be kept exactly across all three
+        long[] primes = { 2147483647L, 2147483629L, 2147483587L };
+        long numerator = 123456789L;
+        BigInteger ppq = BigInteger.valueOf(channel.getTimingEnvironment().getPPQ());
+        BigInteger denominator = BigInteger.ONE;
+        for (long prime : primes)
+            denominator = denominator.multiply(BigInteger.valueOf(prime));
+
+        BigInteger exactTicks = BigInteger.ZERO;
+        for (int step = 0; step < 3000; step++) {
+            long prime = primes[step % primes.length];
+            channel.stepIntoFuture(Beat.of(numerator, prime));
+            exactTicks = exactTicks.add(ppq.multiply(BigInteger.valueOf(numerator)).multiply(denominator.divide(BigInteger.valueOf(prime))));
+
+            long expected = exactTicks.divide(denominator).longValueExact();
+            assertTrue(Math.abs(channel.getStateTime() - expected) <= 1,
+                    "step " + step + " at " + channel.getStateTime() + " instead of " + expected);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package org.mellowd.midi;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ObjLongConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Mimics the live scheduler: one thread compiles into a track while another flushes
+// frames out of it. The reader should never wait on the writer and must only ever see
+// a sorted, fully written view of the track.
+public class MIDITrackContentionTest {
+    private static final int EVENTS_PER_SEAL = 1_000;
+    private static final long FRAME = 480;
+
+    // The parts of a track the scheduler uses while it is being written
+    private interface ContendedTrack {
+        void add(long tick, int packedShortMessage);
+
+        void seal();
+
+        long endTimeStamp();
+
+        void forEachInRange(long start, long stop, ObjLongConsumer<MidiMessage> consumer);
+
+        int size();
+    }
+
+    private static ContendedTrack lockFree(MIDITrack track) {
+        return new ContendedTrack() {
+            @Override
+            public void add(long tick, int packedShortMessage) {
+                track.add(tick, packedShortMessage);
+            }
+
+            @Override
+            public void seal() {
+                track.seal();
+            }
+
+            @Override
+            public long endTimeStamp() {
+                return track.endTimeStamp();
+            }
+
+            @Override
+            public void forEachInRange(long start, long stop, ObjLongConsumer<MidiMessage> consumer) {
+                track.forEachInRange(start, stop, consumer);
+            }
+
+            @Override
+            public int size() {
+                return track.size();
+            }
+        };
+    }
+
+    // The original track: every method holds the track's lock and the messages are
+    // decoded on every read. This benchmark only appends in order so the copy leaves out
+    // sorting, there is nothing to seal.
+    private static final class LockedTrack implements ContendedTrack {
+        private long[] ticks = new long[16];
+        private int[] messages = new int[16];
+        private int size;
+
+        @Override
+        public synchronized void add(long tick, int packedShortMessage) {
+            if (this.size == this.ticks.length) {
+                int newCapacity = this.size + (this.size >> 1) + 1;
+                this.ticks = Arrays.copyOf(this.ticks, newCapacity);
+                this.messages = Arrays.copyOf(this.messages, newCapacity);
+            }
+            this.ticks[this.size] = tick;
+            this.messages[this.size] = packedShortMessage;
+            this.size++;
+        }
+
+        @Override
+        public synchronized void seal() {
+        }
+
+        @Override
+        public synchronized long endTimeStamp() {
+            return this.size == 0 ? 0 : this.ticks[this.size - 1];
+        }
+
+        @Override
+        public synchronized void forEachInRange(long start, long stop, ObjLongConsumer<MidiMessage> consumer) {
+            long trackDuration = this.endTimeStamp();
+            if (trackDuration == 0)
+                return;
+
+            long virtualStart = start % trackDuration;
+            long virtualStop = stop % trackDuration;
+            long virtualTrackStart = (start / trackDuration) * trackDuration;
+
+            if (virtualStart + (stop - start) < trackDuration) {
+                forEachIndex(lowerBound(virtualStart), lowerBound(virtualStop), virtualTrackStart, consumer);
+                return;
+            }
+
+            forEachIndex(lowerBound(virtualStart), this.size, virtualTrackStart, consumer);
+            int loops = (int) ((stop - start) / trackDuration);
+            for (int loop = 1; loop <= loops; loop++)
+                forEachIndex(0, this.size, virtualTrackStart + (loop * trackDuration), consumer);
+            forEachIndex(0, lowerBound(virtualStop), virtualTrackStart + ((1 + loops) * trackDuration), consumer);
+        }
+
+        private void forEachIndex(int from, int to, long offset, ObjLongConsumer<MidiMessage> consumer) {
+            for (int i = from; i < to; i++)
+                consumer.accept(MIDITrack.unpackShortMessage(this.messages[i]), offset + this.ticks[i]);
+        }
+
+        private int lowerBound(long tick) {
+            int lo = 0;
+            int hi = this.size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (this.ticks[mid] < tick) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        @Override
+        public synchronized int size() {
+            return this.size;
+        }
+    }
+
+    // flushes, events seen, worst flush in ns and the writer's time in ns
+    private static long[] flushWhileWriting(ContendedTrack track, int events, boolean sharesMessages) throws Exception {
+        int noteOn = MIDITrack.packShortMessage(ShortMessage.NOTE_ON, 60, 64, 3);
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> problem = new AtomicReference<>();
+        CountDownLatch ready = new CountDownLatch(1);
+
+        long[] stats = new long[4];
+        Thread reader = new Thread(() -> {
+            ready.countDown();
+            long frameStart = 0;
+            long[] last = new long[1];
+            // Every event is the same message, the frames should flush the one decoded copy of it
+            MidiMessage[] seen = new MidiMessage[1];
+            while (writing.get()) {
+                long end = track.endTimeStamp();
+                long start = end <= FRAME ? 0 : frameStart % (end - FRAME);
+                last[0] = Long.MIN_VALUE;
+
+                long before = System.nanoTime();
+                track.forEachInRange(start, start + FRAME, (msg, time) -> {
+                    if (time < last[0]) problem.compareAndSet(null, "Unsorted frame at " + time);
+                    if (seen[0] == null) seen[0] = msg;
+                    else if (sharesMessages && seen[0] != msg) problem.compareAndSet(null, "Message decoded again at " + time);
+                    last[0] = time;
+                    stats[1]++;
+                });
+                long took = System.nanoTime() - before;
+
+                stats[0]++;
+                stats[2] = Math.max(stats[2], took);
+                frameStart += FRAME;
+            }
+        }, "contention-reader");
+        reader.start();
+        ready.await();
+
+        long writeStart = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            track.add(i * 10L, noteOn);
+            if (i % EVENTS_PER_SEAL == 0)
+                track.seal();
+        }
+        track.seal();
+        stats[3] = System.nanoTime() - writeStart;
+
+        writing.set(false);
+        reader.join();
+
+        assertNull(problem.get());
+        assertEquals(events, track.size());
+        return stats;
+    }
+
+    @Test
+    public void testFlushWhileWriting() throws Exception {
+        flushWhileWriting(lockFree(new MIDITrack("contention")), 50_000, true);
+    }
+
+    // Compares the original locked track with the lock free track while a frame is
+    // flushed out of it as fast as possible
+    @Test
+    @Tag("benchmark")
+    public void benchmarkFlushWhileWriting() throws Exception {
+        int events = 500_000;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            flushWhileWriting(new LockedTrack(), events / 10, false);
+            flushWhileWriting(lockFree(new MIDITrack("warmup")), events / 10, true);
+        }
+
+        long[] locked = flushWhileWriting(new LockedTrack(), events, false);
+        long[] lockFree = flushWhileWriting(lockFree(new MIDITrack("contention")), events, true);
+
+        System.out.printf("Writer, %d events: locked %.2f ms, lock free %.2f ms%n",
+                events, locked[3] / 1e6, lockFree[3] / 1e6);
+        System.out.printf("Reader flushes: locked %d (%d events), lock free %d (%d events)%n",
+                locked[0], locked[1], lockFree[0], lockFree[1]);
+        System.out.printf("Worst flush: locked %.1f us, lock free %.1f us%n",
+                locked[2] / 1e3, lockFree[2] / 1e3);
+    }
+}
@@ -0,0 +1,172 @@
+package org.mellowd.midi;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MIDITrackTest {
+    private MIDITrack track;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        this.track = new MIDITrack("test");
+    }
+
+    private static ShortMessage on(int pitch) throws InvalidMidiDataException {
+        return new ShortMessage(ShortMessage.NOTE_ON, 0, pitch, 64);
+    }
+
+    private static List<Long> ticks(MIDITrack track) {
+        List<Long> ticks = new ArrayList<>();
+        track.forEach(e -> ticks.add(e.getTick()));
+        return ticks;
+    }
+
+    @Test
+    public void testOutOfOrderAppendIsSortedStably() throws Exception {
+        track.add(new MidiEvent(on(60), 20));
+        track.add(new MidiEvent(on(61), 10));
+        track.add(new MidiEvent(on(62), 20));
+        track.add(new MidiEvent(on(63), 0));
+        track.seal();
+
+        assertEquals(List.of(0L, 10L, 20L, 20L), ticks(track));
+
+        List<Integer> pitches = new ArrayList<>();
+        track.forEach(e -> pitches.add(((ShortMessage) e.getMessage()).getData1()));
+        assertEquals(List.of(63, 61, 60, 62), pitches);
+
+        assertEquals(0, track.startTimeStamp());
+        assertEquals(20, track.endTimeStamp());
+    }
+
+    @Test
+    public void testReadersOnlySeePublishedEvents() throws Exception {
+        track.add(new MidiEvent(on(60), 10));
+        track.seal();
+        track.add(new MidiEvent(on(61), 5));
+        track.remove(new MidiEvent(on(60), 10));
+
+        assertEquals(List.of(10L), ticks(track));
+
+        track.seal();
+        assertEquals(List.of(5L), ticks(track));
+    }
+
+    @Test
+    public void testMessagesRoundTrip() throws Exception {
+        ShortMessage program = new ShortMessage(ShortMessage.PROGRAM_CHANGE, 3, 42, 0);
+        MetaMessage meta = new MetaMessage(0x2F, new byte[0], 0);
+        track.add(new MidiEvent(program, 0));
+        track.add(new MidiEvent(meta, 5));
+        track.seal();
+
+        List<MidiMessage> messages = new ArrayList<>();
+        track.forEach(e -> messages.add(e.getMessage()));
+
+        assertEquals(2, messages.get(0).getLength());
+        assertArrayEquals(program.getMessage(), messages.get(0).getMessage());
+        assertTrue(messages.get(1) == meta);
+        assertEquals(0, track.lastNonMetaEventTime());
+    }
+
+    @Test
+    public void testMessagesAreDecodedOnceWhenSealed() throws Exception {
+        track.add(new MidiEvent(on(60), 0));
+        track.add(new MidiEvent(on(61), 5));
+        track.add(new MidiEvent(on(60), 10));
+        track.seal();
+
+        List<MidiMessage> first = new ArrayList<>();
+        track.forEach(e -> first.add(e.getMessage()));
+        assertSame(first.get(0), first.get(2));
+
+        // Reading again, in a range or after more events are published reuses the same messages
+        track.add(new MidiEvent(on(62), 15));
+        track.seal();
+        List<MidiMessage> second = new ArrayList<>();
+        track.forEach(e -> second.add(e.getMessage()));
+        List<MidiMessage> inRange = new ArrayList<>();
+        track.forEachInRange(16, 29, (msg, time) -> inRange.add(msg));
+        List<MidiMessage> shifted = new ArrayList<>();
+        track.shifted(20).forEach(e -> shifted.add(e.getMessage()));
+
+        assertEquals(4, second.size());
+        for (int i = 0; i < first.size(); i++)
+            assertSame(first.get(i), second.get(i));
+        assertEquals(List.of(second.get(1), second.get(2)), inRange);
+        assertEquals(second, shifted);
+    }
+
+    @Test
+    public void testRemoveByContent() throws Exception {
+        track.add(new MidiEvent(on(60), 10));
+        track.add(new MidiEvent(on(61), 10));
+        track.add(new MidiEvent(on(62), 30));
+
+        track.remove(new MidiEvent(on(62), 30));
+        track.seal();
+        assertEquals(List.of(10L, 10L), ticks(track));
+        assertEquals(10, track.lastNonMetaEventTime());
+
+        track.remove(new MidiEvent(on(60), 10));
+        track.seal();
+        assertEquals(1, track.size());
+    }
+
+    @Test
+    public void testForEachInRangeWrapsAroundTrack() throws Exception {
+        track.add(new MidiEvent(on(60), 0));
+        track.add(new MidiEvent(on(61), 5));
+        track.add(new MidiEvent(on(62), 10));
+        track.seal();
+
+        List<Long> times = new ArrayList<>();
+        track.forEachInRange(12, 18, (msg, time) -> times.add(time));
+        assertEquals(List.of(15L), times);
+    }
+
+    @Test
+    public void testShiftedCopiesPublishedEvents() throws Exception {
+        MetaMessage meta = new MetaMessage(0x2F, new byte[0], 0);
+        track.add(new MidiEvent(on(60), 0));
+        track.add(new MidiEvent(on(61), 5));
+        track.add(new MidiEvent(meta, 10));
+        track.seal();
+        track.add(new MidiEvent(on(62), 20));
+
+        MIDITrack shifted = track.shifted(100);
+        assertEquals(List.of(100L, 105L, 110L), ticks(shifted));
+        assertEquals(105, shifted.lastNonMetaEventTime());
+
+        List<MidiMessage> messages = new ArrayList<>();
+        shifted.forEach(e -> messages.add(e.getMessage()));
+        assertTrue(messages.get(2) == meta);
+        assertEquals(List.of(0L, 5L, 10L), ticks(track));
+    }
+
+    @Test
+    public void testIsShiftOf() throws Exception {
+        track.add(new MidiEvent(on(60), 0));
+        track.add(new MidiEvent(new MetaMessage(0x2F, new byte[0], 0), 10));
+        track.seal();
+
+        assertTrue(track.shifted(40).isShiftOf(track, 40));
+        assertFalse(track.shifted(40).isShiftOf(track, 20));
+
+        MIDITrack other = new MIDITrack("other");
+        other.add(new MidiEvent(on(61), 40));
+        other.add(new MidiEvent(new MetaMessage(0x2F, new byte[0], 0), 50));
+        other.seal();
+        assertFalse(other.isShiftOf(track, 40));
+    }
+}
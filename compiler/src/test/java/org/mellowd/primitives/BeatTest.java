@@ -0,0 +1,48 @@
+package org.mellowd.primitives;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BeatTest {
+    @Test
+    public void commonBeatsAreInterned() {
+        assertSame(Beat.QUARTER(), Beat.QUARTER());
+        assertSame(Beat.QUARTER(), Beat.EIGHTH().add(Beat.EIGHTH()));
+        assertSame(Beat.QUARTER(), Beat.of(4, 4));
+        assertSame(Beat.EIGHTH().tuplet(3), Beat.EIGHTH().tuplet(3));
+        assertSame(Beat.HALF().toggleSlur(), Beat.HALF().toggleSlur());
+        assertSame(Beat.HALF(), Beat.HALF().toggleSlur().toggleSlur());
+        assertNotEquals(Beat.HALF(), Beat.HALF().toggleSlur());
+    }
+
+    @Test
+    public void durationsAreExact() {
+        Beat triplet = Beat.EIGHTH().tuplet(3);
+        assertEquals(1, triplet.getNumerator());
+        assertEquals(3, triplet.getDenominator());
+        assertEquals(Beat.QUARTER(), triplet.add(triplet).add(triplet));
+
+        Beat septuplet = Beat.QUARTER().tuplet(7, 4);
+        assertEquals(Beat.WHOLE(), septuplet.times(7));
+
+        // Every dot adds half of the undotted beat
+        assertEquals(Beat.of(3, 2), Beat.QUARTER().dot(1));
+        assertEquals(Beat.of(5, 2), Beat.QUARTER().dot(3));
+    }
+
+    @Test
+    public void compareFractionsOfAQuarter() {
+        assertTrue(Beat.compare(Beat.EIGHTH(), Beat.QUARTER()) < 0);
+        assertTrue(Beat.compare(Beat.QUARTER(), Beat.EIGHTH().tuplet(3).times(2)) > 0);
+        assertTrue(Beat.compare(Beat.HALF(), Beat.QUARTER().dot(1)) > 0);
+        assertEquals(0, Beat.compare(Beat.QUARTER(), Beat.SIXTEENTH().times(4)));
+    }
+
+    @Test
+    public void toStringNamesTheCommonBeats() {
+        assertEquals("q", Beat.EIGHTH().times(2).toString());
+        assertEquals("h_", Beat.HALF().toggleSlur().toString());
+        assertEquals("r{0.33}", Beat.EIGHTH().tuplet(3).toString());
+    }
+}
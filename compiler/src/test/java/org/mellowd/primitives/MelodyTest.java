@@ -0,0 +1,197 @@
+package org.mellowd.primitives;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MelodyTest {
+    private static final Pitch[] PITCHES = { Pitch.A, Pitch.B, Pitch.C, Pitch.D, Pitch.E, Pitch.F, Pitch.G };
+
+    private static Articulated randomSound(Random random) {
+        Pitch pitch = PITCHES[random.nextInt(PITCHES.length)].shiftOctave(random.nextInt(3) - 1);
+        if (random.nextInt(8) == 0)
+            return new ArticulatedChord(Chord.major(pitch));
+        return new ArticulatedPitch(pitch);
+    }
+
+    // Builds the same melody as a rope of appends and concatenations and as a plain list
+    private static Melody randomMelody(Random random, List<Articulated> expected, int operations) {
+        Melody melody = new Melody();
+        for (int i = 0; i < operations; i++) {
+            if (random.nextInt(4) == 0) {
+                int size = random.nextInt(40);
+                List<Articulated> part = new ArrayList<>();
+                for (int j = 0; j < size; j++) part.add(randomSound(random));
+                melody = melody.append(new Melody(part));
+                expected.addAll(part);
+            } else {
+                Articulated sound = randomSound(random);
+                melody = melody.append(sound);
+                expected.add(sound);
+            }
+        }
+        return melody;
+    }
+
+    @Test
+    public void appendLeavesTheOriginalUnchanged() {
+        Melody melody = new Melody(new ArticulatedPitch(Pitch.A));
+        Melody longer = melody.append(Pitch.B).append(Chord.major(Pitch.C));
+
+        assertEquals(1, melody.size());
+        assertEquals(3, longer.size());
+        assertEquals(new Melody(new ArticulatedPitch(Pitch.A)), melody);
+        assertEquals(new ArticulatedChord(Chord.major(Pitch.C)), longer.getAtIndex(-1));
+
+        Chord chord = new Chord(Pitch.C);
+        Chord triad = chord.append(Pitch.E).append(new ArticulatedPitch(Pitch.G));
+        assertEquals(1, chord.size());
+        assertEquals(Chord.major(Pitch.C), triad);
+    }
+
+    @Test
+    public void matchesAList() {
+        Random random = new Random(3);
+        for (int run = 0; run < 20; run++) {
+            List<Articulated> expected = new ArrayList<>();
+            Melody melody = randomMelody(random, expected, random.nextInt(200));
+
+            Melody copy = new Melody(expected);
+            assertEquals(copy, melody);
+            assertEquals(copy.hashCode(), melody.hashCode());
+            assertEquals(copy.toString(), melody.toString());
+            assertEquals(0, Melody.compare(copy, melody));
+            for (int i = 0; i < expected.size(); i++)
+                assertEquals(expected.get(i), melody.getElementAtIndex(i));
+        }
+    }
+
+    @Test
+    public void rangesMatchElementByElement() {
+        Random random = new Random(5);
+        List<Articulated> expected = new ArrayList<>();
+        Melody melody = randomMelody(random, expected, 300);
+        int size = melody.size();
+
+        for (int run = 0; run < 500; run++) {
+            int lower = random.nextInt(size * 2) - size;
+            int upper = random.nextInt(size * 2) - size;
+            Melody range = melody.getAtRange(lower, upper);
+
+            List<Articulated> elements = new ArrayList<>();
+            for (int i = lower; ; i += lower <= upper ? 1 : -1) {
+                elements.add(melody.getAtIndex(i));
+                if (i == upper) break;
+            }
+            assertEquals(new Melody(elements), range);
+
+            // Ranges of ranges share the same elements too
+            if (range.size() > 2)
+                assertEquals(new Melody(elements.subList(1, elements.size() - 1)), range.getAtRange(1, range.size() - 2));
+        }
+    }
+
+    @Test
+    public void shiftedMelodiesMatchShiftedSounds() {
+        Random random = new Random(7);
+        List<Articulated> expected = new ArrayList<>();
+        Melody melody = randomMelody(random, expected, 100);
+
+        List<Articulated> shifted = new ArrayList<>();
+        for (Articulated sound : expected) shifted.add(sound.shiftOctave(1));
+
+        assertEquals(new Melody(shifted), melody.shiftOctave(1));
+        assertEquals(new Melody(shifted).getAtRange(10, 40), melody.shiftOctave(1).getAtRange(10, 40));
+        assertEquals(melody, melody.shiftOctave(0));
+    }
+
+    @Test
+    public void rhythmsShareBeats() {
+        Rhythm rhythm = new Rhythm(Beat.QUARTER(), Beat.EIGHTH());
+        Rhythm longer = rhythm.append(Beat.HALF()).append(rhythm);
+
+        assertEquals(2, rhythm.size());
+        assertEquals("<q, e, h, q, e>", longer.toString());
+        assertEquals(5.0, longer.getDuration().getNumQuarters());
+        assertEquals("<e, h, q>", longer.getAtRange(1, 3).toString());
+        assertEquals("<q, h, e>", longer.getAtRange(3, 1).toString());
+
+        Rhythm slurred = longer.toggleSlur();
+        for (int i = 0; i < slurred.size(); i++) {
+            assertTrue(slurred.isSlurred(i));
+            assertFalse(longer.isSlurred(i));
+        }
+    }
+
+    // A loop that reassigns a melody to a shifted copy of itself must not build a view
+    // for every shift that is too deep to read
+    @Test
+    public void longShiftChainsCanBeRead() {
+        Melody original = new Melody(new ArticulatedPitch(Pitch.C), new ArticulatedPitch(Pitch.E));
+        Melody melody = original;
+        for (int i = 0; i < 20_000; i++)
+            melody = melody.shiftOctave(i % 2 == 0 ? 1 : -1);
+
+        assertEquals(original.getElementAtIndex(0), melody.getElementAtIndex(0));
+        assertEquals(original, melody);
+
+        Rhythm rhythm = new Rhythm(Beat.QUARTER(), Beat.EIGHTH());
+        Rhythm slurred = rhythm;
+        for (int i = 0; i < 20_001; i++)
+            slurred = slurred.toggleSlur();
+
+        assertTrue(slurred.isSlurred(0));
+        assertEquals(rhythm.toggleSlur().toString(), slurred.toString());
+    }
+
+    // Compares building a long melody by repeatedly concatenating a phrase to it, which
+    // copied the whole melody on each concatenation before melodies shared their sounds.
+    @Test
+    @Tag("benchmark")
+    public void benchmarkRepeatedConcatenation() {
+        int repetitions = 5_000;
+        Random random = new Random(11);
+        List<Articulated> phraseSounds = new ArrayList<>();
+        for (int i = 0; i < 16; i++) phraseSounds.add(randomSound(random));
+        Melody phrase = new Melody(phraseSounds);
+
+        for (int warmup = 0; warmup < 2; warmup++) {
+            copyingConcatenation(phraseSounds, repetitions / 10);
+            sharingConcatenation(phrase, repetitions / 10);
+        }
+
+        long start = System.nanoTime();
+        List<Articulated> copied = copyingConcatenation(phraseSounds, repetitions);
+        long copyTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Melody shared = sharingConcatenation(phrase, repetitions);
+        long shareTime = System.nanoTime() - start;
+
+        assertEquals(new Melody(copied), shared);
+        System.out.printf("Concatenate %d phrases: copying %.1f ms, sharing %.1f ms%n",
+                repetitions, copyTime / 1e6, shareTime / 1e6);
+    }
+
+    private static List<Articulated> copyingConcatenation(List<Articulated> phrase, int repetitions) {
+        List<Articulated> melody = new ArrayList<>();
+        for (int i = 0; i < repetitions; i++) {
+            List<Articulated> next = new ArrayList<>(melody);
+            next.addAll(phrase);
+            melody = next;
+        }
+        return melody;
+    }
+
+    private static Melody sharingConcatenation(Melody phrase, int repetitions) {
+        Melody melody = new Melody();
+        for (int i = 0; i < repetitions; i++)
+            melody = melody.append(phrase);
+        return melody;
+    }
+}
@@ -7,7 +7,9 @@ import io.github.spencerpark.jupyter.messages.Header;
 import org.mellowd.compiler.MellowD;
 import org.mellowd.io.Compiler;
 import org.mellowd.io.ResourceSourceFinder;
+import org.mellowd.io.SoundbankCache;
 import org.mellowd.io.SourceFinder;
+import org.mellowd.io.SynthPool;
 import org.mellowd.io.live.MellowDSession;
 import org.mellowd.jupyter.IMellowD;
 import org.mellowd.midi.TimingEnvironment;
@@ -15,7 +17,6 @@ import org.mellowd.plugin.PluginLoadException;
 import org.mellowd.plugin.PluginManager;
 
 import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MidiSystem;
 import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.Soundbank;
 import javax.sound.midi.Synthesizer;
@@ -28,15 +29,13 @@ import java.util.List;
 
 public class IMellowDLiveKernel extends BaseKernel {
     private static Synthesizer loadSynth(Path sfPath) throws MidiUnavailableException {
-        Synthesizer synth = MidiSystem.getSynthesizer();
+        Synthesizer synth = SynthPool.getInstance().borrow();
 
         System.out.println(synth.getDeviceInfo().getDescription());
         System.out.println(synth.getDeviceInfo().getName());
         System.out.println(synth.getDeviceInfo().getVendor());
         System.out.println(synth.getDeviceInfo().getVersion());
 
-        if (!synth.isOpen()) synth.open();
-
         if (sfPath == null)
             return synth;
 
@@ -47,11 +46,13 @@ public class IMellowDLiveKernel extends BaseKernel {
             return synth;
         }
 
-        System.out.printf("Loading sound font '%s'...\n", sfPath);
+        SoundbankCache soundbanks = SoundbankCache.getInstance();
+        if (!soundbanks.contains(soundFontFile))
+            System.out.printf("Loading sound font '%s'...\n", sfPath);
 
         Soundbank soundbank;
         try {
-            soundbank = MidiSystem.getSoundbank(soundFontFile);
+            soundbank = soundbanks.get(soundFontFile);
         } catch (InvalidMidiDataException e) {
             System.err.printf("Invalid sound font '%s'. Problem: %s\n",
                     soundFontFile.getName(), e.getLocalizedMessage());